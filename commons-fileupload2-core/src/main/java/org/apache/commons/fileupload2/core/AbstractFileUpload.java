@@ -17,17 +17,23 @@
 package org.apache.commons.fileupload2.core;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.zip.ZipInputStream;
 
 import org.apache.commons.fileupload2.core.FileItemFactory.AbstractFileItemBuilder;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 /**
  * High level API for processing file uploads.
@@ -46,21 +52,6 @@ import org.apache.commons.io.IOUtils;
  */
 public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends FileItemFactory<I>> {
 
-    /**
-     * Boundary parameter key.
-     */
-    private static final String BOUNDARY_KEY = "boundary";
-
-    /**
-     * Name parameter key.
-     */
-    private static final String NAME_KEY = "name";
-
-    /**
-     * File name parameter key.
-     */
-    private static final String FILENAME_KEY = "filename";
-
     /**
      * Constant for HTTP POST method.
      */
@@ -91,6 +82,48 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      */
     public static final String CONTENT_LENGTH = "Content-length";
 
+    /**
+     * HTTP content encoding header name.
+     *
+     * @since 2.0.0
+     */
+    public static final String CONTENT_ENCODING = "Content-encoding";
+
+    /**
+     * MIME content transfer encoding header name.
+     *
+     * @since 2.0.0
+     */
+    public static final String CONTENT_TRANSFER_ENCODING = "Content-transfer-encoding";
+
+    /**
+     * The default value of {@link #setMaxZipCompressionRatio(long)}.
+     *
+     * @since 2.0.0
+     */
+    public static final long DEFAULT_MAX_ZIP_COMPRESSION_RATIO = 100;
+
+    /**
+     * The number of bytes, which may be expanded from a ZIP archive, before the compression ratio is checked. Small archives of highly compressible data
+     * are harmless, and would otherwise be rejected.
+     */
+    private static final long ZIP_COMPRESSION_RATIO_THRESHOLD = 1_048_576;
+
+    /**
+     * Content type of ZIP archives, which are expanded, if {@link #setExpandZipArchives(boolean)} is enabled.
+     */
+    private static final String APPLICATION_ZIP = "application/zip";
+
+    /**
+     * Nonstandard content type of ZIP archives, which is sent by some clients.
+     */
+    private static final String APPLICATION_X_ZIP_COMPRESSED = "application/x-zip-compressed";
+
+    /**
+     * Content type of expanded entries, if no better content type can be derived from the entries name.
+     */
+    private static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+
     /**
      * Content-disposition value for form data.
      */
@@ -116,6 +149,57 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      */
     public static final String MULTIPART_MIXED = "multipart/mixed";
 
+    /**
+     * Tests, whether the given part is a ZIP archive, which may be expanded.
+     *
+     * @param fileItemInput The part.
+     * @return True, if the part is a file, with the content type {@code application/zip}.
+     */
+    private static boolean isZipArchive(final FileItemInput fileItemInput) {
+        if (fileItemInput.isFormField() || fileItemInput.getHeaders() == null) {
+            return false;
+        }
+        final var contentType = fileItemInput.getHeaders().getParsedContentType();
+        return contentType != null && (APPLICATION_ZIP.equals(contentType.getMimeType()) || APPLICATION_X_ZIP_COMPRESSED.equals(contentType.getMimeType()));
+    }
+
+    /**
+     * Closes the output stream of an item. If the data has been copied completely, then the stream is closed normally, which commits the item, for example,
+     * by renaming it to its destination. Otherwise, the stream is aborted, so that a partial, or vetoed part never replaces an existing file.
+     *
+     * @param outputStream The items output stream.
+     * @param complete     True, if the data has been copied completely, false, if copying failed.
+     * @throws IOException Closing the stream failed.
+     */
+    private static void close(final OutputStream outputStream, final boolean complete) throws IOException {
+        if (complete) {
+            outputStream.close();
+        } else if (outputStream instanceof DeferrableOutputStream) {
+            try {
+                ((DeferrableOutputStream) outputStream).abort();
+            } catch (final IOException e) {
+                // Don't hide the original failure.
+            }
+        } else {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Deletes the given file items, ignoring any exceptions. Used for cleaning up, if a request could not be processed successfully.
+     *
+     * @param fileItems The file items, which are being deleted.
+     */
+    static void deleteQuietly(final Iterable<? extends FileItem<?>> fileItems) {
+        for (final FileItem<?> fileItem : fileItems) {
+            try {
+                fileItem.delete();
+            } catch (final Exception ignored) {
+                // ignored TODO perhaps add to tracker delete failure list somehow?
+            }
+        }
+    }
+
     /**
      * Utility method that determines whether the request contains multipart content.
      * <p>
@@ -127,11 +211,8 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      * @return {@code true} if the request is multipart; {@code false} otherwise.
      */
     public static final boolean isMultipartContent(final RequestContext ctx) {
-        final var contentType = ctx.getContentType();
-        if (contentType == null) {
-            return false;
-        }
-        return contentType.toLowerCase(Locale.ROOT).startsWith(MULTIPART);
+        final var contentType = ctx.getParsedContentType();
+        return contentType != null && contentType.isMultipart();
     }
 
     /**
@@ -180,6 +261,46 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      */
     private F fileItemFactory;
 
+    /**
+     * Whether parts with a {@code Content-Encoding} header are decoded while streaming.
+     */
+    private boolean decodeContentEncoding;
+
+    /**
+     * Whether parts with a {@code Content-Transfer-Encoding} header are decoded while streaming.
+     */
+    private boolean decodeContentTransferEncoding;
+
+    /**
+     * Whether file parts of type {@code application/zip} are expanded into one item per entry.
+     */
+    private boolean expandZipArchives;
+
+    /**
+     * The maximum permitted ratio of expanded, and compressed bytes of a ZIP archive. A value of -1 indicates no maximum.
+     */
+    private long maxZipCompressionRatio = DEFAULT_MAX_ZIP_COMPRESSION_RATIO;
+
+    /**
+     * The executor, which deletes the items of an {@link UploadResult}, or null.
+     */
+    private Executor cleanupExecutor;
+
+    /**
+     * The suppliers of part inspectors.
+     */
+    private final List<Supplier<? extends PartInspector>> partInspectors = new ArrayList<>();
+
+    /**
+     * The rules, which allow, or deny parts.
+     */
+    private final List<PartRule> partRules = new ArrayList<>();
+
+    /**
+     * The storage, and size policies.
+     */
+    private final List<PartPolicy<? extends F>> partPolicies = new ArrayList<>();
+
     /**
      * Constructs a new instance for subclasses.
      */
@@ -187,6 +308,128 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         // empty
     }
 
+    /**
+     * Registers a {@link PartInspector}, which inspects the body of every part while it is being streamed. The supplier is invoked once per part, so an
+     * inspector needn't be thread safe, or reusable. Inspectors are invoked in the order of registration. If an inspector vetoes a part by throwing a
+     * {@link FileUploadInspectionException}, then the part is aborted, and {@link #parseRequest(RequestContext)} fails, deleting the items, which have been
+     * created so far.
+     *
+     * @param partInspector The supplier of part inspectors.
+     * @since 2.0.0
+     */
+    public void addPartInspector(final Supplier<? extends PartInspector> partInspector) {
+        partInspectors.add(Objects.requireNonNull(partInspector, "partInspector"));
+    }
+
+    /**
+     * Registers a {@link PartPolicy}, which chooses the factory, and the size limit for the parts with given field names, or content types. Policies are
+     * evaluated in the order of registration, and the first matching policy applies.
+     *
+     * @param partPolicy The policy.
+     * @since 2.0.0
+     */
+    public void addPartPolicy(final PartPolicy<? extends F> partPolicy) {
+        partPolicies.add(Objects.requireNonNull(partPolicy, "partPolicy"));
+    }
+
+    /**
+     * Registers a {@link PartRule}, which allows, or denies parts by field name, file name, or content type. Parts, which are rejected by the rules, are
+     * skipped by scanning for the next boundary, before an item is created, so they don't count towards {@link #setMaxFileCount(long)}, and are never stored.
+     *
+     * @param partRule The rule.
+     * @since 2.0.0
+     */
+    public void addPartRule(final PartRule partRule) {
+        partRules.add(Objects.requireNonNull(partRule, "partRule"));
+    }
+
+    /**
+     * Checks, whether another item may be created.
+     *
+     * @param size The number of items, which have been created so far.
+     * @throws FileUploadFileCountLimitException The next item would exceed the limit.
+     */
+    private void checkFileCount(final int size) throws FileUploadFileCountLimitException {
+        if (size == maxFileCount) {
+            // The next item will exceed the limit.
+            throw new FileUploadFileCountLimitException(
+                    String.format("Request '%s' failed: Maximum file count %,d exceeded.", MULTIPART_FORM_DATA, Long.valueOf(maxFileCount)),
+                    getMaxFileCount(), size);
+        }
+    }
+
+    /**
+     * Expands the given ZIP archive, while it is being streamed, creating an item for every file entry. Directory entries are skipped.
+     *
+     * @param fileItemInput   The part, which holds the archive.
+     * @param fileItemFactory The factory, which creates the items.
+     * @param maxEntrySize    The maximum size of an entry, or -1.
+     * @param itemList        The list, to which the items are added.
+     * @param buffer          The copy buffer.
+     * @throws FileUploadException A limit is exceeded.
+     * @throws IOException         Reading the archive, or writing an item failed.
+     */
+    private void expandZipArchive(final FileItemInput fileItemInput, final F fileItemFactory, final long maxEntrySize, final List<I> itemList,
+            final byte[] buffer) throws FileUploadException, IOException {
+        final var fieldName = fileItemInput.getFieldName();
+        // Counts the compressed bytes.
+        final var compressed = BoundedInputStream.builder().setInputStream(fileItemInput.getInputStream()).get();
+        var expanded = 0L;
+        try (var zipInputStream = new ZipInputStream(compressed)) {
+            for (var entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                checkFileCount(itemList.size());
+                final var fileName = entry.getName();
+                final var contentType = Objects.toString(URLConnection.guessContentTypeFromName(fileName), APPLICATION_OCTET_STREAM);
+                final var headers = newFileItemHeaders();
+                final var disposition = ContentDisposition.formData(fieldName, fileName);
+                if (headers instanceof FileItemHeadersImpl) {
+                    ((FileItemHeadersImpl) headers).addContentDisposition(disposition);
+                } else {
+                    headers.addHeader(CONTENT_DISPOSITION, disposition.toString());
+                }
+                headers.addHeader(CONTENT_TYPE, contentType);
+                // @formatter:off
+                final var fileItem = fileItemFactory.fileItemBuilder()
+                    .setFieldName(fieldName)
+                    .setContentType(contentType)
+                    .setFormField(false)
+                    .setFileName(fileName)
+                    .setFileItemHeaders(headers)
+                    .get();
+                // @formatter:on
+                itemList.add(fileItem);
+                final var outputStream = fileItem.getOutputStream();
+                var complete = false;
+                try {
+                    var size = 0L;
+                    int n;
+                    while ((n = zipInputStream.read(buffer)) != -1) {
+                        size += n;
+                        expanded += n;
+                        if (maxEntrySize != -1 && size > maxEntrySize) {
+                            throw new FileUploadByteCountLimitException(String.format("The entry %s of field %s exceeds its maximum permitted size of %s bytes.",
+                                    fileName, fieldName, maxEntrySize), size, maxEntrySize, fileName, fieldName);
+                        }
+                        final var count = Math.max(1, compressed.getCount());
+                        if (maxZipCompressionRatio != -1 && expanded > ZIP_COMPRESSION_RATIO_THRESHOLD && expanded / count > maxZipCompressionRatio) {
+                            throw new FileUploadSizeException(String.format("The archive of field %s exceeds its maximum permitted compression ratio of %s.",
+                                    fieldName, maxZipCompressionRatio), maxZipCompressionRatio, expanded / count);
+                        }
+                        outputStream.write(buffer, 0, n);
+                    }
+                    complete = true;
+                } finally {
+                    close(outputStream, complete);
+                }
+            }
+            // Read the central directory, too, so that the part is consumed completely.
+            IOUtils.consume(compressed);
+        }
+    }
+
     /**
      * Gets the boundary from the {@code Content-type} header.
      *
@@ -194,43 +437,40 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      * @return The boundary, as a byte array.
      */
     public byte[] getBoundary(final String contentType) {
-        final var parser = new ParameterParser();
-        parser.setLowerCaseNames(true);
-        // Parameter parser can handle null input
-        final var params = parser.parse(contentType, new char[] { ';', ',' });
-        final var boundaryStr = params.get(BOUNDARY_KEY);
+        return getBoundary(ContentType.parse(contentType));
+    }
+
+    /**
+     * Gets the boundary from the parsed {@code Content-type} header.
+     *
+     * @param contentType The parsed content type, or null.
+     * @return The boundary, as a byte array, or null.
+     */
+    byte[] getBoundary(final ContentType contentType) {
+        final var boundaryStr = contentType == null ? null : contentType.getBoundary();
         return boundaryStr != null ? boundaryStr.getBytes(StandardCharsets.ISO_8859_1) : null;
     }
 
     /**
-     * Gets the field name from the {@code Content-disposition} header.
+     * Gets the executor, which deletes the items of an {@link UploadResult}, when it is closed.
      *
-     * @param headers A {@code Map} containing the HTTP request headers.
-     * @return The field name for the current {@code encapsulation}.
+     * @return The executor, or null (default), if the items are deleted on the closing thread.
+     * @see #setCleanupExecutor(Executor)
+     * @since 2.0.0
      */
-    public String getFieldName(final FileItemHeaders headers) {
-        return getFieldName(headers.getHeader(CONTENT_DISPOSITION));
+    public Executor getCleanupExecutor() {
+        return cleanupExecutor;
     }
 
     /**
-     * Gets the field name, which is given by the content-disposition header.
+     * Gets the field name from the {@code Content-disposition} header.
      *
-     * @param contentDisposition The content-dispositions header value.
-     * @return The field name.
+     * @param headers A {@code Map} containing the HTTP request headers.
+     * @return The field name for the current {@code encapsulation}.
      */
-    private String getFieldName(final String contentDisposition) {
-        String fieldName = null;
-        if (contentDisposition != null && contentDisposition.toLowerCase(Locale.ROOT).startsWith(FORM_DATA)) {
-            final var parser = new ParameterParser();
-            parser.setLowerCaseNames(true);
-            // Parameter parser can handle null input
-            final var params = parser.parse(contentDisposition, ';');
-            fieldName = params.get(NAME_KEY);
-            if (fieldName != null) {
-                fieldName = fieldName.trim();
-            }
-        }
-        return fieldName;
+    public String getFieldName(final FileItemHeaders headers) {
+        final var contentDisposition = headers.getContentDisposition();
+        return contentDisposition == null ? null : contentDisposition.getName();
     }
 
     /**
@@ -249,38 +489,8 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
      * @return The file name for the current {@code encapsulation}.
      */
     public String getFileName(final FileItemHeaders headers) {
-        return getFileName(headers.getHeader(CONTENT_DISPOSITION));
-    }
-
-    /**
-     * Gets the given content-disposition headers file name.
-     *
-     * @param contentDisposition The content-disposition headers value.
-     * @return The file name
-     */
-    private String getFileName(final String contentDisposition) {
-        String fileName = null;
-        if (contentDisposition != null) {
-            final var cdl = contentDisposition.toLowerCase(Locale.ROOT);
-            if (cdl.startsWith(FORM_DATA) || cdl.startsWith(ATTACHMENT)) {
-                final var parser = new ParameterParser();
-                parser.setLowerCaseNames(true);
-                // Parameter parser can handle null input
-                final var params = parser.parse(contentDisposition, ';');
-                if (params.containsKey(FILENAME_KEY)) {
-                    fileName = params.get(FILENAME_KEY);
-                    if (fileName != null) {
-                        fileName = fileName.trim();
-                    } else {
-                        // Even if there is no value, the parameter is present,
-                        // so we return an empty file name rather than no file
-                        // name.
-                        fileName = "";
-                    }
-                }
-            }
-        }
-        return fileName;
+        final var contentDisposition = headers.getContentDisposition();
+        return contentDisposition == null ? null : contentDisposition.getFileName();
     }
 
     /**
@@ -357,6 +567,34 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         return maxSize;
     }
 
+    /**
+     * Gets the maximum permitted compression ratio of expanded ZIP archives.
+     *
+     * @return The maximum permitted ratio of expanded, and compressed bytes, or -1 for no limit.
+     * @see #setMaxZipCompressionRatio(long)
+     * @since 2.0.0
+     */
+    public long getMaxZipCompressionRatio() {
+        return maxZipCompressionRatio;
+    }
+
+    /**
+     * Parses the raw {@code header-part}, and returns the headers. If the header charset is ASCII compatible, like UTF-8, or ISO-8859-1, then the headers
+     * keep the raw bytes, and names, and values are converted into strings only, when they are requested. Otherwise, the bytes are decoded, and passed to
+     * {@link #getParsedHeaders(String)}.
+     *
+     * @param headerPart The {@code header-part} of the current {@code encapsulation}, including the terminating empty line.
+     * @param charset    The header charset.
+     * @return The parsed headers.
+     * @since 2.0.0
+     */
+    public FileItemHeaders getParsedHeaders(final byte[] headerPart, final Charset charset) {
+        if (ByteFileItemHeaders.isSupported(charset)) {
+            return new ByteFileItemHeaders(headerPart, headerPart.length, charset);
+        }
+        return getParsedHeaders(new String(headerPart, charset));
+    }
+
     /**
      * Parses the {@code header-part} and returns as key/value pairs.
      * <p>
@@ -399,6 +637,56 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         return headers;
     }
 
+    /**
+     * Gets the suppliers of part inspectors.
+     *
+     * @return An unmodifiable list of the suppliers, which have been registered with {@link #addPartInspector(Supplier)}.
+     * @since 2.0.0
+     */
+    public List<Supplier<? extends PartInspector>> getPartInspectors() {
+        return Collections.unmodifiableList(partInspectors);
+    }
+
+    /**
+     * Returns the storage, and size policies.
+     *
+     * @return An unmodifiable list of the policies, which have been registered with {@link #addPartPolicy(PartPolicy)}.
+     * @since 2.0.0
+     */
+    public List<PartPolicy<? extends F>> getPartPolicies() {
+        return Collections.unmodifiableList(partPolicies);
+    }
+
+    /**
+     * Returns the policy, which applies to a part.
+     *
+     * @param fieldName The parts field name, or null.
+     * @param headers   The parts headers, or null.
+     * @return The first matching policy, or null, if no policy matches.
+     */
+    PartPolicy<? extends F> getPartPolicy(final String fieldName, final FileItemHeaders headers) {
+        if (partPolicies.isEmpty()) {
+            return null;
+        }
+        final var contentType = headers == null ? null : headers.getParsedContentType();
+        for (final PartPolicy<? extends F> partPolicy : partPolicies) {
+            if (partPolicy.matches(fieldName, contentType)) {
+                return partPolicy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the rules, which allow, or deny parts.
+     *
+     * @return An unmodifiable list of the rules, which have been registered with {@link #addPartRule(PartRule)}.
+     * @since 2.0.0
+     */
+    public List<PartRule> getPartRules() {
+        return Collections.unmodifiableList(partRules);
+    }
+
     /**
      * Gets the progress listener.
      *
@@ -408,6 +696,51 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         return progressListener;
     }
 
+    /**
+     * Tests, whether a part is accepted by the rules, which have been registered with {@link #addPartRule(PartRule)}.
+     *
+     * @param fieldName   The parts field name, or null.
+     * @param fileName    The parts file name, or null, if the part is a form field.
+     * @param contentType The parts content type, or null.
+     * @return True, if the part is accepted, false, if it is to be skipped.
+     */
+    boolean isAccepted(final String fieldName, final String fileName, final ContentType contentType) {
+        return PartRule.isAccepted(partRules, fieldName, fileName, contentType);
+    }
+
+    /**
+     * Tests, whether parts with a {@code Content-Encoding} header are decoded while streaming.
+     *
+     * @return True, if parts are decoded, otherwise false (default).
+     * @see #setDecodeContentEncoding(boolean)
+     * @since 2.0.0
+     */
+    public boolean isDecodeContentEncoding() {
+        return decodeContentEncoding;
+    }
+
+    /**
+     * Tests, whether parts with a {@code Content-Transfer-Encoding} header are decoded while streaming.
+     *
+     * @return True, if parts are decoded, otherwise false (default).
+     * @see #setDecodeContentTransferEncoding(boolean)
+     * @since 2.0.0
+     */
+    public boolean isDecodeContentTransferEncoding() {
+        return decodeContentTransferEncoding;
+    }
+
+    /**
+     * Tests, whether file parts of type {@code application/zip} are expanded into one item per entry.
+     *
+     * @return True, if ZIP archives are expanded, otherwise false (default).
+     * @see #setExpandZipArchives(boolean)
+     * @since 2.0.0
+     */
+    public boolean isExpandZipArchives() {
+        return expandZipArchives;
+    }
+
     /**
      * Creates a new instance of {@link FileItemHeaders}.
      *
@@ -455,6 +788,75 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         headers.addHeader(headerName, headerValue);
     }
 
+    /**
+     * Converts the given part into one item, or, if it is an expanded ZIP archive, one item per entry, and adds the items to the given list.
+     *
+     * @param fileItemInput   The part.
+     * @param fileItemFactory The factory, which creates the items, unless a {@link PartPolicy} chooses another one.
+     * @param itemList        The list, which receives the items.
+     * @param buffer          The buffer, which is used for copying the data.
+     * @throws FileUploadException Reading, or storing the part failed.
+     * @throws IOException         Creating an item failed.
+     */
+    void parseItem(final FileItemInput fileItemInput, final F fileItemFactory, final List<I> itemList, final byte[] buffer) throws IOException {
+        final var partPolicy = getPartPolicy(fileItemInput.getFieldName(), fileItemInput.getHeaders());
+        final F factory = partPolicy == null || partPolicy.getFileItemFactory() == null ? fileItemFactory : partPolicy.getFileItemFactory();
+        if (expandZipArchives && isZipArchive(fileItemInput)) {
+            try {
+                expandZipArchive(fileItemInput, factory, partPolicy == null || partPolicy.getMaxFileSize() == -1 ? maxFileSize : partPolicy.getMaxFileSize(),
+                        itemList, buffer);
+            } catch (final FileUploadException e) {
+                throw e;
+            } catch (final IOException e) {
+                throw new FileUploadException(String.format("Request '%s' failed: %s", MULTIPART_FORM_DATA, e.getMessage()), e);
+            }
+            return;
+        }
+        checkFileCount(itemList.size());
+        // Don't use getName() here to prevent an InvalidFileNameException.
+        // @formatter:off
+        final var fileItem = factory.fileItemBuilder()
+            .setFieldName(fileItemInput.getFieldName())
+            .setContentType(fileItemInput.getContentType())
+            .setFormField(fileItemInput.isFormField())
+            .setFileName(fileItemInput.getName())
+            .setFileItemHeaders(fileItemInput.getHeaders())
+            .get();
+        // @formatter:on
+        itemList.add(fileItem);
+        final var outputStream = fileItem.getOutputStream();
+        var complete = false;
+        try {
+            try (var inputStream = fileItemInput.getInputStream()) {
+                IOUtils.copyLarge(inputStream, outputStream, buffer);
+                complete = true;
+            } finally {
+                close(outputStream, complete);
+            }
+        } catch (final FileUploadException e) {
+            throw e;
+        } catch (final IOException e) {
+            throw new FileUploadException(String.format("Request '%s' failed: %s", MULTIPART_FORM_DATA, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into a {@link LazyParameterMap},
+     * which parses only as far, as necessary for answering a query, and deletes all items, when it is closed.
+     *
+     * @param requestContext The context for the request to be parsed.
+     * @return A map of {@code FileItem} instances, which are parsed from the request on demand.
+     * @throws FileUploadException if there are problems reading/parsing the request.
+     * @throws IOException         An I/O error occurred.
+     * @since 2.0.0
+     */
+    public LazyParameterMap<I> parseLazyParameterMap(final RequestContext requestContext) throws IOException {
+        final var fileItemFactory = Objects.requireNonNull(getFileItemFactory(), "No FileItemFactory has been set.");
+        final var buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        return new LazyParameterMap<>(getItemIterator(requestContext), (fileItemInput, itemList) -> parseItem(fileItemInput, fileItemFactory, itemList, buffer),
+                cleanupExecutor);
+    }
+
     /**
      * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream.
      *
@@ -506,33 +908,7 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         try {
             final var fileItemFactory = Objects.requireNonNull(getFileItemFactory(), "No FileItemFactory has been set.");
             final var buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
-            getItemIterator(requestContext).forEachRemaining(fileItemInput -> {
-                final int size = itemList.size();
-                if (size == maxFileCount) {
-                    // The next item will exceed the limit.
-                    throw new FileUploadFileCountLimitException(
-                            String.format("Request '%s' failed: Maximum file count %,d exceeded.", MULTIPART_FORM_DATA, Long.valueOf(maxFileCount)),
-                            getMaxFileCount(), size);
-                }
-                // Don't use getName() here to prevent an InvalidFileNameException.
-                // @formatter:off
-                final var fileItem = fileItemFactory.fileItemBuilder()
-                    .setFieldName(fileItemInput.getFieldName())
-                    .setContentType(fileItemInput.getContentType())
-                    .setFormField(fileItemInput.isFormField())
-                    .setFileName(fileItemInput.getName())
-                    .setFileItemHeaders(fileItemInput.getHeaders())
-                    .get();
-                // @formatter:on
-                itemList.add(fileItem);
-                try (var inputStream = fileItemInput.getInputStream(); var outputStream = fileItem.getOutputStream()) {
-                    IOUtils.copyLarge(inputStream, outputStream, buffer);
-                } catch (final FileUploadException e) {
-                    throw e;
-                } catch (final IOException e) {
-                    throw new FileUploadException(String.format("Request '%s' failed: %s", MULTIPART_FORM_DATA, e.getMessage()), e);
-                }
-            });
+            getItemIterator(requestContext).forEachRemaining(fileItemInput -> parseItem(fileItemInput, fileItemFactory, itemList, buffer));
             successful = true;
             return itemList;
         } catch (final FileUploadException e) {
@@ -541,17 +917,81 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
             throw new FileUploadException(e.getMessage(), e);
         } finally {
             if (!successful) {
-                for (final I fileItem : itemList) {
-                    try {
-                        fileItem.delete();
-                    } catch (final Exception ignored) {
-                        // ignored TODO perhaps add to tracker delete failure list somehow?
-                    }
-                }
+                deleteQuietly(itemList);
             }
         }
     }
 
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into an {@link UploadResult},
+     * which deletes all items, when it is closed.
+     *
+     * @param requestContext The context for the request to be parsed.
+     * @return The items parsed from the request, in the order that they were transmitted.
+     * @throws FileUploadException if there are problems reading/parsing the request or storing files.
+     * @since 2.0.0
+     */
+    public UploadResult<I> parseUploadResult(final RequestContext requestContext) throws FileUploadException {
+        return new UploadResult<>(parseRequest(requestContext), cleanupExecutor);
+    }
+
+    /**
+     * Sets the executor, which deletes the items of an {@link UploadResult}, when it is closed. Deleting many temporary files may take a while, so this
+     * allows to release the request thread early.
+     *
+     * @param cleanupExecutor The executor, or null (default) to delete the items on the closing thread.
+     * @see UploadResult#close()
+     * @since 2.0.0
+     */
+    public void setCleanupExecutor(final Executor cleanupExecutor) {
+        this.cleanupExecutor = cleanupExecutor;
+    }
+
+    /**
+     * Sets, whether parts with a {@code Content-Encoding} header (for example, {@code gzip}, or {@code deflate}) are decoded while streaming, so that the
+     * items hold the decoded data. The limit of {@link #setMaxFileSize(long)} is enforced on both the encoded, and the decoded data, which guards against
+     * decompression bombs. Parts with an unsupported content coding are passed unchanged. The headers of a decoded item don't contain the {@code Content-Encoding},
+     * {@code Content-Length}, and {@code Content-MD5} headers, which describe the encoded data, so the item isn't decoded twice, or verified against the
+     * wrong digest.
+     *
+     * @param decodeContentEncoding True to decode parts, false (default) to pass them unchanged.
+     * @since 2.0.0
+     */
+    public void setDecodeContentEncoding(final boolean decodeContentEncoding) {
+        this.decodeContentEncoding = decodeContentEncoding;
+    }
+
+    /**
+     * Sets, whether parts with a {@code Content-Transfer-Encoding} header of {@code base64}, or {@code quoted-printable} are decoded while streaming, so
+     * that the items hold the decoded data. Such parts are typically found in {@code multipart/related}, or mail-derived payloads. The limit of
+     * {@link #setMaxFileSize(long)} is enforced on both the encoded, and the decoded data. Other transfer encodings ({@code 7bit}, {@code 8bit}, and
+     * {@code binary}) are passed unchanged. If {@link #setDecodeContentEncoding(boolean) content decoding} is enabled, too, then the transfer encoding is
+     * decoded first. The headers of a decoded item don't contain the {@code Content-Transfer-Encoding}, and {@code Content-Length} headers.
+     *
+     * @param decodeContentTransferEncoding True to decode parts, false (default) to pass them unchanged.
+     * @since 2.0.0
+     */
+    public void setDecodeContentTransferEncoding(final boolean decodeContentTransferEncoding) {
+        this.decodeContentTransferEncoding = decodeContentTransferEncoding;
+    }
+
+    /**
+     * Sets, whether file parts of type {@code application/zip} are expanded by {@link #parseRequest(RequestContext)} while streaming, so that the archive
+     * is never stored. Every file entry becomes an item of its own, with the parts field name, and the entries name as the file name. Directory entries are
+     * skipped. The limits of {@link #setMaxFileCount(long)}, and {@link #setMaxFileSize(long)} are enforced on the entries, in addition to the archive, and
+     * the expanded data is guarded by {@link #setMaxZipCompressionRatio(long)}.
+     * <p>
+     * <strong>Note:</strong> Entry names are taken from the archive unchecked. Like file names, which are sent by the client, they may contain path
+     * separators, or {@code ..} segments, and must not be used for building a path.
+     * </p>
+     *
+     * @param expandZipArchives True to expand ZIP archives, false (default) to store them as a single item.
+     * @since 2.0.0
+     */
+    public void setExpandZipArchives(final boolean expandZipArchives) {
+        this.expandZipArchives = expandZipArchives;
+    }
+
     /**
      * Sets the factory class to use when creating file items.
      *
@@ -611,6 +1051,18 @@ public abstract class AbstractFileUpload<R, I extends FileItem<I>, F extends Fil
         this.maxSize = sizeMax;
     }
 
+    /**
+     * Sets the maximum permitted ratio of expanded, and compressed bytes of a ZIP archive, which is expanded (see {@link #setExpandZipArchives(boolean)}).
+     * The ratio is checked continuously, once more than 1 MiB has been expanded, so that a decompression bomb is detected early. Typical documents compress
+     * by a factor of less than 10.
+     *
+     * @param maxZipCompressionRatio The maximum ratio, or -1 for no limit. Defaults to {@value #DEFAULT_MAX_ZIP_COMPRESSION_RATIO}.
+     * @since 2.0.0
+     */
+    public void setMaxZipCompressionRatio(final long maxZipCompressionRatio) {
+        this.maxZipCompressionRatio = maxZipCompressionRatio;
+    }
+
     /**
      * Sets the progress listener.
      *
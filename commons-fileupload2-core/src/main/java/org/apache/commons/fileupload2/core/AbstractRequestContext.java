@@ -20,7 +20,6 @@ package org.apache.commons.fileupload2.core;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
-import java.util.regex.Pattern;
 
 /**
  * Abstracts a RequestContext for implementations.
@@ -30,10 +29,9 @@ import java.util.regex.Pattern;
 public abstract class AbstractRequestContext<T> implements RequestContext {
 
     /**
-     * The Content-Type Pattern for multipart/related Requests.
+     * The MIME type of multipart/related Requests.
      */
-    private static final Pattern MULTIPART_RELATED =
-            Pattern.compile("^\\s*multipart/related.*", Pattern.CASE_INSENSITIVE);
+    private static final String MULTIPART_RELATED = "multipart/related";
 
     /**
      * Supplies the content length default.
@@ -50,6 +48,11 @@ public abstract class AbstractRequestContext<T> implements RequestContext {
      */
     private final T request;
 
+    /**
+     * The parsed content type, if it has been requested already, otherwise null.
+     */
+    private ContentType parsedContentType;
+
     /**
      * Constructs a new instance.
      *
@@ -77,6 +80,23 @@ public abstract class AbstractRequestContext<T> implements RequestContext {
         }
     }
 
+    /**
+     * Gets the parsed content type of the request. The content type is parsed once, and shared by the multipart detection, the boundary lookup, and
+     * {@link #isMultipartRelated()}.
+     *
+     * @return The parsed content type of the request, or null, if the request has no content type.
+     * @since 2.0.0
+     */
+    @Override
+    public ContentType getParsedContentType() {
+        var result = parsedContentType;
+        if (result == null) {
+            result = RequestContext.super.getParsedContentType();
+            parsedContentType = result;
+        }
+        return result;
+    }
+
     /**
      * Gets the request.
      *
@@ -94,7 +114,8 @@ public abstract class AbstractRequestContext<T> implements RequestContext {
      */
     @Override
     public boolean isMultipartRelated() {
-        return MULTIPART_RELATED.matcher(getContentType()).matches();
+        final var contentType = getParsedContentType();
+        return contentType != null && contentType.getMimeType().startsWith(MULTIPART_RELATED);
     }
 
     /**
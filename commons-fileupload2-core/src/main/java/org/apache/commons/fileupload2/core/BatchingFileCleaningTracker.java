@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.File;
+import java.lang.ref.Cleaner;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileCleaningTracker;
+import org.apache.commons.io.FileDeleteStrategy;
+
+/**
+ * A {@link FileCleaningTracker}, which scales to a large number of tracked files.
+ * <p>
+ * The {@link FileCleaningTracker} keeps a phantom reference per tracked file, and deletes the files one by one, on the same thread, which polls the reference
+ * queue. If many files are spilled, then the queue lags, and the temporary files accumulate. This tracker registers the files with a
+ * {@link java.lang.ref.Cleaner}, whose thread merely queues the files, when their markers become unreachable. The files are deleted asynchronously, in
+ * batches of up to {@link #getBatchSize()} files, by a separate thread, which is started, and stopped automatically, like the reaper thread of the
+ * {@link FileCleaningTracker}.
+ * </p>
+ * <p>
+ * The backlog, and the deletion latency (the time between queueing, and deleting a file) are exposed for monitoring. Use
+ * {@link #exitWhenFinished()}, for example, when a web application is destroyed: Queued files are deleted immediately, on the calling thread, and the
+ * deletion thread terminates, once the remaining tracked files have been deleted.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public class BatchingFileCleaningTracker extends FileCleaningTracker {
+
+    /**
+     * A tracked file, which is queued for deletion.
+     */
+    private static final class Entry {
+
+        /**
+         * The file, which is being deleted.
+         */
+        private final String path;
+
+        /**
+         * The strategy, which deletes the file.
+         */
+        private final FileDeleteStrategy deleteStrategy;
+
+        /**
+         * The time, when the file has been queued, as returned by {@link System#nanoTime()}.
+         */
+        private long queued;
+
+        private Entry(final String path, final FileDeleteStrategy deleteStrategy) {
+            this.path = path;
+            this.deleteStrategy = deleteStrategy;
+        }
+    }
+
+    /**
+     * The default number of files, which are deleted in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * The maximum number of files, which are deleted in a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The files, which are queued for deletion.
+     */
+    private final LinkedBlockingQueue<Entry> backlog = new LinkedBlockingQueue<>();
+
+    /**
+     * The paths of files, which could not be deleted.
+     */
+    private final List<String> deleteFailures = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of tracked files, whose markers are still reachable.
+     */
+    private final AtomicInteger registered = new AtomicInteger();
+
+    /**
+     * The number of files, which have been deleted, or could not be deleted.
+     */
+    private final AtomicLong deletedCount = new AtomicLong();
+
+    /**
+     * The sum of all deletion latencies, in nanoseconds.
+     */
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    /**
+     * The maximum deletion latency, in nanoseconds.
+     */
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * True, if {@link #exitWhenFinished()} has been called.
+     */
+    private volatile boolean exiting;
+
+    /**
+     * The cleaner, which detects unreachable markers, or null, if no file has been tracked yet. Guarded by {@code this}.
+     */
+    private Cleaner cleaner;
+
+    /**
+     * The thread, which deletes the queued files, or null. Guarded by {@code this}.
+     */
+    private Thread deleter;
+
+    /**
+     * Constructs a new instance, which deletes up to {@value #DEFAULT_BATCH_SIZE} files in a batch.
+     */
+    public BatchingFileCleaningTracker() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param batchSize The maximum number of files, which are deleted in a batch.
+     * @throws IllegalArgumentException The batch size is less than 1.
+     */
+    public BatchingFileCleaningTracker(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Deletes the given files, and updates the metrics.
+     *
+     * @param entries The files, which are being deleted.
+     */
+    private void delete(final List<Entry> entries) {
+        for (final Entry entry : entries) {
+            if (!entry.deleteStrategy.deleteQuietly(new File(entry.path))) {
+                deleteFailures.add(entry.path);
+            }
+            final var latency = System.nanoTime() - entry.queued;
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+            deletedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Deletes the queued files in batches, until {@link #exitWhenFinished()} has been called, and no tracked files remain.
+     */
+    private void deleteQueued() {
+        final List<Entry> batch = new ArrayList<>(batchSize);
+        while (!exiting || registered.get() > 0 || !backlog.isEmpty()) {
+            try {
+                final var entry = backlog.poll(1, TimeUnit.SECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                batch.add(entry);
+                backlog.drainTo(batch, batchSize - 1);
+                delete(batch);
+                batch.clear();
+            } catch (final InterruptedException e) {
+                // Check the loop condition again.
+            }
+        }
+        synchronized (this) {
+            deleter = null;
+        }
+    }
+
+    /**
+     * Queues the given file for deletion. Called by the cleaners thread, when the files marker has become unreachable.
+     *
+     * @param entry The file, which is being queued.
+     */
+    private void enqueue(final Entry entry) {
+        entry.queued = System.nanoTime();
+        backlog.add(entry);
+        registered.decrementAndGet();
+    }
+
+    /**
+     * Deletes the queued files immediately, on the calling thread, and lets the deletion thread terminate, once the remaining tracked files have been
+     * deleted. Files, which are tracked afterwards, are rejected.
+     */
+    @Override
+    public synchronized void exitWhenFinished() {
+        super.exitWhenFinished();
+        exiting = true;
+        final List<Entry> entries = new ArrayList<>();
+        backlog.drainTo(entries);
+        delete(entries);
+        if (deleter != null) {
+            deleter.interrupt();
+        }
+    }
+
+    /**
+     * Returns the average time between queueing, and deleting a file.
+     *
+     * @return The average deletion latency, or {@link Duration#ZERO}, if no file has been deleted yet.
+     */
+    public Duration getAverageDeletionLatency() {
+        final var count = deletedCount.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatency.get() / count);
+    }
+
+    /**
+     * Returns the number of files, which are queued for deletion, because their markers have become unreachable.
+     *
+     * @return The number of files, which are queued for deletion.
+     */
+    public int getBacklog() {
+        return backlog.size();
+    }
+
+    /**
+     * Returns the maximum number of files, which are deleted in a batch.
+     *
+     * @return The maximum number of files, which are deleted in a batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the paths of the files, which could not be deleted.
+     *
+     * @return An unmodifiable list of the paths of the files, which could not be deleted.
+     */
+    @Override
+    public List<String> getDeleteFailures() {
+        return Collections.unmodifiableList(deleteFailures);
+    }
+
+    /**
+     * Returns the number of files, which have been deleted, including failed attempts.
+     *
+     * @return The number of files, which have been deleted.
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * Returns the maximum time between queueing, and deleting a file.
+     *
+     * @return The maximum deletion latency, or {@link Duration#ZERO}, if no file has been deleted yet.
+     */
+    public Duration getMaxDeletionLatency() {
+        return Duration.ofNanos(maxLatency.get());
+    }
+
+    /**
+     * Returns the number of files, which are still waiting for deletion, because their markers are reachable, or because they are queued.
+     *
+     * @return The number of files, which are still waiting for deletion.
+     */
+    @Override
+    public int getTrackCount() {
+        return registered.get() + backlog.size();
+    }
+
+    @Override
+    public void track(final File file, final Object marker) {
+        track(file, marker, null);
+    }
+
+    @Override
+    public void track(final File file, final Object marker, final FileDeleteStrategy deleteStrategy) {
+        Objects.requireNonNull(file, "file");
+        track(file.getPath(), marker, deleteStrategy);
+    }
+
+    @Override
+    public void track(final Path file, final Object marker) {
+        track(file, marker, null);
+    }
+
+    @Override
+    public void track(final Path file, final Object marker, final FileDeleteStrategy deleteStrategy) {
+        Objects.requireNonNull(file, "file");
+        track(file.toAbsolutePath().toString(), marker, deleteStrategy);
+    }
+
+    @Override
+    public void track(final String path, final Object marker) {
+        track(path, marker, null);
+    }
+
+    @Override
+    public void track(final String path, final Object marker, final FileDeleteStrategy deleteStrategy) {
+        Objects.requireNonNull(path, "path");
+        Objects.requireNonNull(marker, "marker");
+        final Cleaner markerCleaner;
+        synchronized (this) {
+            if (exiting) {
+                throw new IllegalStateException("No new trackers can be added once exitWhenFinished() is called");
+            }
+            if (deleter == null) {
+                deleter = new Thread(this::deleteQueued, "File Cleaner");
+                deleter.setPriority(Thread.MAX_PRIORITY);
+                deleter.setDaemon(true);
+                deleter.start();
+            }
+            if (cleaner == null) {
+                cleaner = Cleaner.create();
+            }
+            markerCleaner = cleaner;
+            registered.incrementAndGet();
+        }
+        // The cleaning action must not reference the marker.
+        final var entry = new Entry(path, deleteStrategy == null ? FileDeleteStrategy.NORMAL : deleteStrategy);
+        markerCleaner.register(marker, () -> enqueue(entry));
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * An implementation of {@link FileItemHeaders}, which keeps the raw bytes of a {@code header-part}, and an index of the header lines. Names, and values
+ * are converted into strings only, when they are requested. Well-known headers, like {@code Content-Disposition}, are resolved through fixed slots, and other
+ * names are compared case-insensitively without creating strings.
+ * <p>
+ * The header charset must be ASCII compatible, see {@link #isSupported(Charset)}.
+ * </p>
+ */
+final class ByteFileItemHeaders implements FileItemHeaders {
+
+    /**
+     * The lower case names of the headers, which are resolved through fixed slots.
+     */
+    private static final String[] WELL_KNOWN_NAMES = { AbstractFileUpload.CONTENT_DISPOSITION.toLowerCase(Locale.ROOT),
+            AbstractFileUpload.CONTENT_TYPE.toLowerCase(Locale.ROOT), AbstractFileUpload.CONTENT_LENGTH.toLowerCase(Locale.ROOT),
+            AbstractFileUpload.CONTENT_ENCODING.toLowerCase(Locale.ROOT), AbstractFileUpload.CONTENT_TRANSFER_ENCODING.toLowerCase(Locale.ROOT) };
+
+    /**
+     * The slot of the {@code Content-Disposition} header.
+     */
+    private static final int CONTENT_DISPOSITION_SLOT = 0;
+
+    /**
+     * The slot of the {@code Content-Type} header.
+     */
+    private static final int CONTENT_TYPE_SLOT = 1;
+
+    /**
+     * The number of entries in {@link #lines} per header.
+     */
+    private static final int LINE_SIZE = 4;
+
+    /**
+     * A text, which must be encoded identically in US-ASCII, and in a supported charset.
+     */
+    private static final String PROBE = "Content-Type: text/plain\r\n\t";
+
+    /**
+     * Tests, whether the given charset can be used for the header bytes. That is the case, if the charset encodes header names, and the separators
+     * ({@code ':'}, {@code CR}, {@code LF}, space, and tab) like US-ASCII.
+     *
+     * @param charset The header charset.
+     * @return True, if the charset is supported.
+     */
+    static boolean isSupported(final Charset charset) {
+        return Arrays.equals(PROBE.getBytes(StandardCharsets.US_ASCII), PROBE.getBytes(charset));
+    }
+
+    /**
+     * Tests, whether the given byte is white space, which is removed by {@link String#trim()}.
+     *
+     * @param b The byte.
+     * @return True, if the byte is white space.
+     */
+    private static boolean isWhitespace(final byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * Returns the slot of the given header name.
+     *
+     * @param name The header name.
+     * @return The slot, or -1, if the header isn't well-known.
+     */
+    private static int slotOf(final String name) {
+        for (var i = 0; i < WELL_KNOWN_NAMES.length; i++) {
+            if (WELL_KNOWN_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The header bytes.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The header charset.
+     */
+    private final Charset charset;
+
+    /**
+     * The start, and end of the name, and the start, and end of the value of every header. Ranges may span continuation lines.
+     */
+    private int[] lines = new int[LINE_SIZE * 8];
+
+    /**
+     * The number of headers in {@link #lines}.
+     */
+    private int size;
+
+    /**
+     * True, if all names consist of ASCII characters on a single line, so that they can be compared without creating strings.
+     */
+    private boolean simpleNames = true;
+
+    /**
+     * The index of the first header per well-known name, or -1.
+     */
+    private final int[] slots = new int[WELL_KNOWN_NAMES.length];
+
+    /**
+     * The values, which have been converted into strings already, or null.
+     */
+    private String[] values;
+
+    /**
+     * The headers, which have been added by {@link #addHeader(String, String)}, or null.
+     */
+    private FileItemHeadersImpl addedHeaders;
+
+    /**
+     * The parsed {@code Content-Disposition} header, if it has been requested already, otherwise null.
+     */
+    private volatile ContentDisposition contentDisposition;
+
+    /**
+     * The parsed {@code Content-Type} header, if it has been requested already, otherwise null.
+     */
+    private volatile ContentType contentType;
+
+    /**
+     * Creates a new instance, and indexes the given {@code header-part}.
+     *
+     * @param bytes   The {@code header-part}, including the terminating empty line. The array is not copied.
+     * @param length  The number of bytes.
+     * @param charset The header charset, which must be supported, see {@link #isSupported(Charset)}.
+     * @throws IllegalStateException The headers are not terminated by an empty line.
+     */
+    ByteFileItemHeaders(final byte[] bytes, final int length, final Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+        Arrays.fill(slots, -1);
+        var start = 0;
+        for (;;) {
+            var end = endOfLine(start, length);
+            if (start == end) {
+                break;
+            }
+            final var lineStart = start;
+            start = end + 2;
+            // Continuation lines start with white space.
+            while (start < length && (bytes[start] == ' ' || bytes[start] == '\t')) {
+                end = endOfLine(start, length);
+                start = end + 2;
+            }
+            addLine(lineStart, end);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addHeader(final String name, final String value) {
+        if (addedHeaders == null) {
+            addedHeaders = new FileItemHeadersImpl();
+        }
+        addedHeaders.addHeader(name, value);
+        final var slot = slotOf(name);
+        if (slot == CONTENT_DISPOSITION_SLOT) {
+            contentDisposition = null;
+        } else if (slot == CONTENT_TYPE_SLOT) {
+            contentType = null;
+        }
+    }
+
+    /**
+     * Indexes a header line, including its continuation lines. Malformed lines without a colon are skipped.
+     *
+     * @param start The start of the line.
+     * @param end   The end of the last continuation line.
+     */
+    private void addLine(final int start, final int end) {
+        var colon = start;
+        while (colon < end && bytes[colon] != ':') {
+            colon++;
+        }
+        if (colon == end) {
+            // This header line is malformed, skip it.
+            return;
+        }
+        var nameStart = start;
+        var nameEnd = colon;
+        while (nameStart < nameEnd && isWhitespace(bytes[nameStart])) {
+            nameStart++;
+        }
+        while (nameEnd > nameStart && isWhitespace(bytes[nameEnd - 1])) {
+            nameEnd--;
+        }
+        var valueStart = colon + 1;
+        var valueEnd = end;
+        while (valueStart < valueEnd && isWhitespace(bytes[valueStart])) {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && isWhitespace(bytes[valueEnd - 1])) {
+            valueEnd--;
+        }
+        for (var i = nameStart; i < nameEnd; i++) {
+            if (bytes[i] < 0 || bytes[i] == '\r') {
+                simpleNames = false;
+                break;
+            }
+        }
+        final var offset = size * LINE_SIZE;
+        if (offset == lines.length) {
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        lines[offset] = nameStart;
+        lines[offset + 1] = nameEnd;
+        lines[offset + 2] = valueStart;
+        lines[offset + 3] = valueEnd;
+        for (var slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] == -1 && isName(size, WELL_KNOWN_NAMES[slot])) {
+                slots[slot] = size;
+                break;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Returns the index of the next {@code CRLF} sequence.
+     *
+     * @param start  The index, where the search starts.
+     * @param length The number of bytes.
+     * @return The index of the {@code CR} byte.
+     * @throws IllegalStateException There is no {@code CRLF} sequence.
+     */
+    private int endOfLine(final int start, final int length) {
+        for (var i = start; i + 1 < length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Expected headers to be terminated by an empty line.");
+    }
+
+    /**
+     * Returns the headers, which have been added by {@link #addHeader(String, String)}.
+     *
+     * @return The added headers, or null.
+     */
+    private synchronized FileItemHeadersImpl getAddedHeaders() {
+        return addedHeaders;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentDisposition getContentDisposition() {
+        var result = contentDisposition;
+        if (result == null) {
+            result = FileItemHeaders.super.getContentDisposition();
+            contentDisposition = result;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentType getParsedContentType() {
+        var result = contentType;
+        if (result == null) {
+            result = FileItemHeaders.super.getParsedContentType();
+            contentType = result;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getHeader(final String name) {
+        final var slot = slotOf(name);
+        final var index = slot == -1 ? indexOf(name, 0) : slots[slot];
+        if (index != -1) {
+            return getValue(index);
+        }
+        final var added = getAddedHeaders();
+        return added == null ? null : added.getHeader(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<String> getHeaderNames() {
+        final var names = new LinkedHashSet<String>();
+        for (var i = 0; i < size; i++) {
+            names.add(getName(i));
+        }
+        final var added = getAddedHeaders();
+        if (added != null) {
+            added.getHeaderNames().forEachRemaining(names::add);
+        }
+        return names.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<String> getHeaders(final String name) {
+        final var slot = slotOf(name);
+        var index = indexOf(name, slot == -1 ? 0 : slots[slot] == -1 ? size : slots[slot]);
+        final var added = getAddedHeaders();
+        if (index == -1 && added == null) {
+            return Collections.emptyIterator();
+        }
+        final var list = new ArrayList<String>();
+        while (index != -1) {
+            list.add(getValue(index));
+            index = indexOf(name, index + 1);
+        }
+        if (added != null) {
+            added.getHeaders(name).forEachRemaining(list::add);
+        }
+        return list.iterator();
+    }
+
+    /**
+     * Returns the lower case name of the given header.
+     *
+     * @param index The headers index.
+     * @return The name.
+     */
+    private String getName(final int index) {
+        return getString(lines[index * LINE_SIZE], lines[index * LINE_SIZE + 1]).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Converts the given range of the header bytes into a string. Continuation lines are joined with a single space.
+     *
+     * @param start The start of the range.
+     * @param end   The end of the range.
+     * @return The string.
+     */
+    private String getString(final int start, final int end) {
+        final var string = new String(bytes, start, end - start, charset);
+        if (string.indexOf('\r') == -1) {
+            return string;
+        }
+        final var sb = new StringBuilder(string.length());
+        var i = 0;
+        while (i < string.length()) {
+            final var c = string.charAt(i++);
+            if (c == '\r' && i < string.length() && string.charAt(i) == '\n') {
+                i++;
+                while (i < string.length() && (string.charAt(i) == ' ' || string.charAt(i) == '\t')) {
+                    i++;
+                }
+                sb.append(' ');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the value of the given header.
+     *
+     * @param index The headers index.
+     * @return The value.
+     */
+    private String getValue(final int index) {
+        var cache = values;
+        if (cache == null) {
+            cache = new String[size];
+            values = cache;
+        }
+        var value = cache[index];
+        if (value == null) {
+            value = getString(lines[index * LINE_SIZE + 2], lines[index * LINE_SIZE + 3]);
+            cache[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the index of the first header with the given name, starting at the given index.
+     *
+     * @param name  The header name.
+     * @param start The index, where the search starts.
+     * @return The headers index, or -1.
+     */
+    private int indexOf(final String name, final int start) {
+        for (var i = start; i < size; i++) {
+            if (isName(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests, whether the given header has the given name. The comparison is case-insensitive.
+     *
+     * @param index The headers index.
+     * @param name  The name.
+     * @return True, if the header has the given name.
+     */
+    private boolean isName(final int index, final String name) {
+        if (!simpleNames) {
+            return getName(index).equals(name.toLowerCase(Locale.ROOT));
+        }
+        final var start = lines[index * LINE_SIZE];
+        final var length = lines[index * LINE_SIZE + 1] - start;
+        if (length != name.length()) {
+            return false;
+        }
+        for (var i = 0; i < length; i++) {
+            if (Character.toLowerCase((char) bytes[start + i]) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.apache.commons.io.build.AbstractOrigin;
+import org.apache.commons.io.build.AbstractStreamBuilder;
+import org.apache.commons.io.file.PathUtils;
+
+/**
+ * A content-addressed, deduplicating store for spilled parts.
+ * <p>
+ * If a content-addressed store is configured (see {@link DiskFileItemFactory.Builder#setContentAddressedStore(ContentAddressedStore)}), then the digest of
+ * every part is computed while it is being written. When a spilled part is complete, its temporary file is moved into the store, under a name, which is
+ * derived from the digest. If the store already contains a file with the same digest, then the temporary file is deleted, and the existing file is shared.
+ * Files in the store are reference-counted: A file is deleted, when the last {@link DiskFileItem} referencing it is deleted, or written to its destination.
+ * </p>
+ * <p>
+ * Reference counts are maintained per store instance, so a store should be shared by all factories, which use the same directory. Concurrent uploads of the
+ * same content are safe: Files are moved into the store atomically, and the reference counts are updated under a lock. If the store resides on another
+ * file store than the temporary files, then the files are copied outside the lock, so that concurrent uploads aren't serialized.
+ * </p>
+ *
+ * @see Builder
+ * @since 2.0.0
+ */
+public final class ContentAddressedStore {
+
+    /**
+     * Builds a new {@link ContentAddressedStore} instance.
+     * <p>
+     * For example:
+     * </p>
+     *
+     * <pre>{@code
+     * ContentAddressedStore store = ContentAddressedStore.builder().setPath(repository.resolve("cas")).get();
+     * }
+     * </pre>
+     */
+    public static class Builder extends AbstractStreamBuilder<ContentAddressedStore, Builder> {
+
+        /**
+         * The digest algorithm.
+         */
+        private String algorithm = DEFAULT_ALGORITHM;
+
+        /**
+         * Constructs a new instance. The default path is a new, unique directory below {@code java.io.tmpdir}, so that stores, which are using the
+         * default, don't share their directory.
+         */
+        public Builder() {
+            // Reference counts are kept per store, so the default directory must not be shared with other stores.
+            setPath(PathUtils.getTempDirectory().resolve(String.format("fileupload-cas_%s_%08d", UID, COUNTER.getAndIncrement())));
+        }
+
+        /**
+         * Constructs a new instance.
+         * <p>
+         * This builder uses the aspects Path, and algorithm.
+         * </p>
+         *
+         * @return A new instance.
+         * @throws IllegalArgumentException The algorithm isn't supported.
+         * @throws UnsupportedOperationException if the origin cannot provide a Path.
+         * @see AbstractOrigin#getReader(Charset)
+         */
+        @Override
+        public ContentAddressedStore get() {
+            return new ContentAddressedStore(this);
+        }
+
+        /**
+         * Returns the digest algorithm.
+         * @return The digest algorithm.
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * Sets the digest algorithm, which is used for addressing the content. Must be a {@link MessageDigest} algorithm.
+         * @param algorithm The digest algorithm. Defaults to {@value ContentAddressedStore#DEFAULT_ALGORITHM}.
+         * @return This builder.
+         */
+        public Builder setAlgorithm(final String algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+    }
+
+    /**
+     * A reference to a content file, which is held by a single item.
+     */
+    final class Reference {
+
+        /**
+         * The content file.
+         */
+        private final Path path;
+
+        /**
+         * True, if this reference has been released.
+         */
+        private boolean released;
+
+        private Reference(final Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns a {@link FileDeleteStrategy}, which releases this reference, rather than deleting the content file. Used for registering the content file
+         * with a {@link org.apache.commons.io.FileCleaningTracker}.
+         * @return A strategy, which releases this reference.
+         */
+        FileDeleteStrategy getDeleteStrategy() {
+            return new FileDeleteStrategy("ContentAddressedStore") {
+                @Override
+                protected boolean doDelete(final File file) throws IOException {
+                    release();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Returns the content file.
+         * @return The content file.
+         */
+        Path getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the store, which is holding the content file.
+         * @return The store, which is holding the content file.
+         */
+        ContentAddressedStore getStore() {
+            return ContentAddressedStore.this;
+        }
+
+        /**
+         * Writes the content to the given file, and releases this reference. If this is the last reference to the content
+         * file, then the content file is moved. Otherwise, it is copied, so that the other items are not affected by
+         * later modifications of the given file.
+         * @param target The file, which is being created, or replaced.
+         * @throws IOException Writing the file failed.
+         */
+        void moveTo(final Path target) throws IOException {
+            final Path temp;
+            synchronized (ContentAddressedStore.this) {
+                if (released) {
+                    throw new IllegalStateException("The reference to " + path + " has already been released.");
+                }
+                if (references.getOrDefault(path, 0) == 1) {
+                    // Take the content file out of the store, so that it can be moved outside the lock.
+                    temp = newTempFile(path);
+                    rename(path, temp);
+                    references.remove(path);
+                    released = true;
+                } else {
+                    temp = null;
+                }
+            }
+            if (temp != null) {
+                DiskFileItem.move(temp, target);
+                return;
+            }
+            // Copy outside the lock: This reference keeps the content file alive, until it is released.
+            try {
+                DiskFileItem.copy(path, target);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases this reference. Does nothing, if the reference has already been released.
+         * @throws IOException Deleting the content file failed.
+         */
+        void release() throws IOException {
+            synchronized (ContentAddressedStore.this) {
+                if (!released) {
+                    released = true;
+                    ContentAddressedStore.this.release(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * The default digest algorithm.
+     */
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    /**
+     * UID used in unique file name generation.
+     */
+    private static final String UID = UUID.randomUUID().toString().replace('-', '_');
+
+    /**
+     * Counter used in unique identifier generation.
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructs a new {@link Builder}.
+     *
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Converts the given digest into a hexadecimal string.
+     * @param digest The digest.
+     * @return The hexadecimal string.
+     */
+    private static String toHex(final byte[] digest) {
+        final char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns a new, unique, temporary file name in the directory of the given content file.
+     * @param target The content file.
+     * @return The temporary file name.
+     */
+    private static Path newTempFile(final Path target) {
+        return target.resolveSibling(String.format(".%s_%08d.tmp", UID, COUNTER.getAndIncrement()));
+    }
+
+    /**
+     * Renames the source file to the target file, atomically, if possible.
+     * @param source The file, which is being renamed.
+     * @param target The new name.
+     * @throws IOException Renaming the file failed.
+     */
+    private static void rename(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The directory, in which the content files are stored.
+     */
+    private final Path repository;
+
+    /**
+     * The digest algorithm.
+     */
+    private final String algorithm;
+
+    /**
+     * The number of references per content file. Guarded by {@code this}.
+     */
+    private final Map<Path, Integer> references = new HashMap<>();
+
+    private ContentAddressedStore(final Builder builder) {
+        this.repository = builder.getPath();
+        this.algorithm = builder.algorithm;
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+
+    /**
+     * Moves the given file into the store, or, if the store already contains a file with the same digest, deletes the given file.
+     * @param file The file, which is being stored.
+     * @param digest The files digest.
+     * @return A reference to the content file, which is holding the data.
+     * @throws IOException Moving the file failed.
+     */
+    Reference add(final Path file, final byte[] digest) throws IOException {
+        final var hex = toHex(digest);
+        final var target = repository.resolve(hex.substring(0, 2)).resolve(hex);
+        if (addReference(target, null)) {
+            Files.delete(file);
+            return new Reference(target);
+        }
+        Files.createDirectories(target.getParent());
+        if (DiskFileItem.isSameFileStore(file, target)) {
+            if (addReference(target, file)) {
+                Files.delete(file);
+            }
+            return new Reference(target);
+        }
+        // Copy outside the lock, to a temporary name, so that a partially copied file is never exposed under its content address.
+        final var temp = newTempFile(target);
+        try {
+            DiskFileItem.copy(file, temp);
+            if (addReference(target, temp)) {
+                Files.delete(temp);
+            }
+        } catch (final IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        Files.delete(file);
+        return new Reference(target);
+    }
+
+    /**
+     * Adds a reference to the given content file. If the store doesn't contain the content file yet, then the given file is renamed to the content file.
+     * @param target The content file.
+     * @param file The file, which is renamed to the content file, if the store doesn't contain it yet, or null to add a reference only, if the store
+     *   contains the content file.
+     * @return True, if the store already contained the content file, and the given file hasn't been used. False, if the given file has been renamed to
+     *   the content file, or if the store doesn't contain the content file, and the given file is null.
+     * @throws IOException Renaming the file failed.
+     */
+    private synchronized boolean addReference(final Path target, final Path file) throws IOException {
+        final Integer count = references.get(target);
+        final boolean present = count != null || Files.exists(target);
+        if (!present) {
+            if (file == null) {
+                return false;
+            }
+            rename(file, target);
+        }
+        references.put(target, count == null ? 1 : count + 1);
+        return present;
+    }
+
+    /**
+     * Returns the digest algorithm, which is used for addressing the content.
+     * @return The digest algorithm.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the number of references to the given content file.
+     * @param file The content file.
+     * @return The number of references, or 0, if the file isn't referenced.
+     */
+    synchronized int getReferenceCount(final Path file) {
+        return references.getOrDefault(file, 0);
+    }
+
+    /**
+     * Returns the directory, in which the content files are stored.
+     * @return The directory, in which the content files are stored.
+     */
+    public Path getRepository() {
+        return repository;
+    }
+
+    /**
+     * Releases a reference to the given content file, and deletes the file, if it is no longer referenced.
+     * @param file The content file.
+     * @throws IOException Deleting the content file failed.
+     */
+    private synchronized void release(final Path file) throws IOException {
+        final Integer count = references.get(file);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(file, count - 1);
+        } else {
+            references.remove(file);
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.util.Locale;
+
+/**
+ * The parsed value of a {@code Content-Disposition} header. The header is parsed once. Only the field name, and the file name are decoded (RFC 2231, and
+ * RFC 2047) up front. Other parameters are decoded on demand, and at most once, so repeated calls of the accessors are cheap. Instances are immutable,
+ * and thread-safe.
+ *
+ * @see FileItemHeaders#getContentDisposition()
+ * @since 2.0.0
+ */
+public final class ContentDisposition {
+
+    /**
+     * Name parameter key.
+     */
+    private static final String NAME_KEY = "name";
+
+    /**
+     * File name parameter key.
+     */
+    private static final String FILENAME_KEY = "filename";
+
+    /**
+     * Creates a {@code form-data} disposition with the given field name, and file name. The names are quoted, and escaped, in the header value, so that
+     * they can't inject further parameters. The accessors return the names unchanged.
+     *
+     * @param name     The field name.
+     * @param fileName The file name.
+     * @return The disposition.
+     */
+    static ContentDisposition formData(final String name, final String fileName) {
+        final var value = String.format("%s; %s=%s; %s=%s", AbstractFileUpload.FORM_DATA, NAME_KEY, quote(name), FILENAME_KEY, quote(fileName));
+        return new ContentDisposition(value, AbstractFileUpload.FORM_DATA, null, name, fileName);
+    }
+
+    /**
+     * Parses the given {@code Content-Disposition} header value.
+     *
+     * @param value The header value, or null.
+     * @return The parsed header value, or null, if the value is null.
+     */
+    public static ContentDisposition parse(final String value) {
+        return value == null ? null : new ContentDisposition(value);
+    }
+
+    /**
+     * Returns the given value as a quoted string, escaping quotation marks, and backslashes.
+     *
+     * @param value The value.
+     * @return The quoted string.
+     */
+    private static String quote(final String value) {
+        final var sb = new StringBuilder(value.length() + 2).append('"');
+        for (var i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Returns the given value, without its parameters, in lower case.
+     *
+     * @param value The header value.
+     * @return The value, without its parameters.
+     */
+    static String stripParameters(final String value) {
+        final var semicolon = value.indexOf(';');
+        return (semicolon == -1 ? value : value.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The header value.
+     */
+    private final String value;
+
+    /**
+     * The disposition type, in lower case.
+     */
+    private final String type;
+
+    /**
+     * The parameters, which are decoded on demand, or null, if the disposition has been created from its names. Guarded by itself.
+     */
+    private final ParameterParser.Parameters parameters;
+
+    /**
+     * The field name, or null.
+     */
+    private final String name;
+
+    /**
+     * The file name, or null.
+     */
+    private final String fileName;
+
+    private ContentDisposition(final String value) {
+        this.value = value;
+        this.type = stripParameters(value);
+        final var parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        this.parameters = parser.parseParameters(value, ';');
+        final var formData = value.regionMatches(true, 0, AbstractFileUpload.FORM_DATA, 0, AbstractFileUpload.FORM_DATA.length());
+        final var fieldName = formData ? parameters.get(NAME_KEY) : null;
+        this.name = fieldName == null ? null : fieldName.trim();
+        if ((formData || value.regionMatches(true, 0, AbstractFileUpload.ATTACHMENT, 0, AbstractFileUpload.ATTACHMENT.length()))
+                && parameters.containsKey(FILENAME_KEY)) {
+            final var file = parameters.get(FILENAME_KEY);
+            // Even if there is no value, the parameter is present, so we return an empty file name rather than no file name.
+            this.fileName = file == null ? "" : file.trim();
+        } else {
+            this.fileName = null;
+        }
+    }
+
+    private ContentDisposition(final String value, final String type, final ParameterParser.Parameters parameters, final String name,
+            final String fileName) {
+        this.value = value;
+        this.type = type;
+        this.parameters = parameters;
+        this.name = name;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Returns the file name, which is given by the {@code filename} parameter of a {@code form-data}, or {@code attachment} disposition.
+     *
+     * @return The file name, as sent by the client, or null, if there is no {@code filename} parameter. An empty string, if the parameter has no value.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the field name, which is given by the {@code name} parameter of a {@code form-data} disposition.
+     *
+     * @return The field name, or null.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the decoded value of the given parameter.
+     *
+     * @param name The parameter name, in lower case.
+     * @return The decoded value, or null, if the parameter is absent, or has no value.
+     */
+    public String getParameter(final String name) {
+        if (parameters == null) {
+            return NAME_KEY.equals(name) ? this.name : FILENAME_KEY.equals(name) ? fileName : null;
+        }
+        synchronized (parameters) {
+            return parameters.get(name);
+        }
+    }
+
+    /**
+     * Returns the disposition type, for example {@code form-data}.
+     *
+     * @return The disposition type, in lower case.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the header value.
+     *
+     * @return The header value.
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import org.apache.commons.io.Charsets;
+
+/**
+ * The parsed value of a {@code Content-Type} header. The header is parsed once. Only the boundary, and the charset are decoded up front. Other
+ * parameters are decoded on demand, and at most once, so repeated calls of the accessors are cheap. Instances are immutable, and thread-safe.
+ *
+ * @see FileItemHeaders#getParsedContentType()
+ * @see RequestContext#getParsedContentType()
+ * @since 2.0.0
+ */
+public final class ContentType {
+
+    /**
+     * Charset parameter key.
+     */
+    private static final String CHARSET_KEY = "charset";
+
+    /**
+     * Boundary parameter key.
+     */
+    private static final String BOUNDARY_KEY = "boundary";
+
+    /**
+     * The top-level type of multipart content.
+     */
+    private static final String MULTIPART = "multipart";
+
+    /**
+     * Parses the given {@code Content-Type} header value.
+     *
+     * @param value The header value, or null.
+     * @return The parsed header value, or null, if the value is null.
+     */
+    public static ContentType parse(final String value) {
+        return value == null ? null : new ContentType(value);
+    }
+
+    /**
+     * The header value.
+     */
+    private final String value;
+
+    /**
+     * The MIME type, without parameters, in lower case.
+     */
+    private final String mimeType;
+
+    /**
+     * The parameters, which are decoded on demand. Guarded by itself.
+     */
+    private final ParameterParser.Parameters parameters;
+
+    /**
+     * The top-level type, in lower case.
+     */
+    private final String type;
+
+    /**
+     * The subtype, in lower case, or null.
+     */
+    private final String subtype;
+
+    /**
+     * The boundary, or null.
+     */
+    private final String boundary;
+
+    /**
+     * The charset name, or null.
+     */
+    private final String charsetName;
+
+    private ContentType(final String value) {
+        this.value = value;
+        // The parameters may be separated by a comma, too. The earliest separator is used.
+        final var comma = value.indexOf(',');
+        final var semicolon = value.indexOf(';');
+        final var commaSeparated = comma != -1 && (semicolon == -1 || comma < semicolon);
+        this.mimeType = commaSeparated ? value.substring(0, comma).trim().toLowerCase(Locale.ROOT) : ContentDisposition.stripParameters(value);
+        final var slash = mimeType.indexOf('/');
+        this.type = slash == -1 ? mimeType : mimeType.substring(0, slash);
+        this.subtype = slash == -1 ? null : mimeType.substring(slash + 1);
+        final var parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        this.parameters = parser.parseParameters(value, ';');
+        this.boundary = commaSeparated ? parser.parseParameters(value, ',').get(BOUNDARY_KEY) : parameters.get(BOUNDARY_KEY);
+        this.charsetName = parameters.get(CHARSET_KEY);
+    }
+
+    /**
+     * Returns the value of the {@code boundary} parameter, which separates the parts of multipart content. The parameters may be separated by semicolons,
+     * or commas.
+     *
+     * @return The boundary, or null.
+     */
+    public String getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Returns the charset, which is given by the {@code charset} parameter.
+     *
+     * @param defaultCharset The charset, which is returned, if there is no {@code charset} parameter.
+     * @return The charset.
+     * @throws java.nio.charset.UnsupportedCharsetException The charset isn't supported.
+     */
+    public Charset getCharset(final Charset defaultCharset) {
+        return Charsets.toCharset(getCharsetName(), defaultCharset);
+    }
+
+    /**
+     * Returns the value of the {@code charset} parameter.
+     *
+     * @return The charset name, or null.
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    /**
+     * Returns the MIME type, for example {@code text/plain}.
+     *
+     * @return The MIME type, without parameters, in lower case.
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Returns the decoded value of the given parameter.
+     *
+     * @param name The parameter name, in lower case.
+     * @return The decoded value, or null, if the parameter is absent, or has no value.
+     */
+    public String getParameter(final String name) {
+        synchronized (parameters) {
+            return parameters.get(name);
+        }
+    }
+
+    /**
+     * Returns the subtype, for example {@code plain}.
+     *
+     * @return The subtype, in lower case, or null, if the MIME type has no subtype.
+     */
+    public String getSubtype() {
+        return subtype;
+    }
+
+    /**
+     * Returns the top-level type, for example {@code text}.
+     *
+     * @return The top-level type, in lower case.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Tests, whether this is multipart content, for example {@code multipart/form-data}.
+     *
+     * @return True, if the top-level type is {@code multipart}.
+     */
+    public boolean isMultipart() {
+        return MULTIPART.equals(type) && subtype != null;
+    }
+
+    /**
+     * Returns the header value.
+     *
+     * @return The header value.
+     */
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.function.IOFunction;
+
+/**
+ * An {@link InputStream}, which is decoding the data of a part, for example, a gzipped part. The decoder is created lazily, when the data is read for the
+ * first time. Decoders, like {@link java.util.zip.GZIPInputStream}, read a header, when they are created, so this ensures, that an item, which is skipped,
+ * or empty, doesn't fail.
+ */
+final class DecodingInputStream extends InputStream {
+
+    /**
+     * The stream, which is reading the encoded data.
+     */
+    private final InputStream in;
+
+    /**
+     * The function, which creates the decoder.
+     */
+    private final IOFunction<InputStream, InputStream> decoderFactory;
+
+    /**
+     * The decoder, if it has been created, or null.
+     */
+    private InputStream decoder;
+
+    /**
+     * True, if the stream has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param in The stream, which is reading the encoded data.
+     * @param decoderFactory The function, which creates the decoder.
+     */
+    DecodingInputStream(final InputStream in, final IOFunction<InputStream, InputStream> decoderFactory) {
+        this.in = in;
+        this.decoderFactory = decoderFactory;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return decoder == null ? 0 : decoder.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (decoder == null) {
+            in.close();
+        } else {
+            decoder.close();
+        }
+    }
+
+    /**
+     * Returns the decoder, creating it, if necessary.
+     * @return The decoder.
+     * @throws IOException Creating the decoder failed, or the stream has been closed.
+     */
+    private InputStream decoder() throws IOException {
+        if (closed) {
+            throw new IOException("This stream has already been closed.");
+        }
+        if (decoder == null) {
+            decoder = decoderFactory.apply(in);
+        }
+        return decoder;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return decoder().read();
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        return decoder().read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        return decoder().skip(n);
+    }
+}
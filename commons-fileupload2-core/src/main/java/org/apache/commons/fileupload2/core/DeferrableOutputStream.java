@@ -22,13 +22,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 
+import org.apache.commons.fileupload2.core.SegmentFileStore.Slice;
+import org.apache.commons.io.build.AbstractStreamBuilder;
+
 /**
  * An {@link OutputStream} which keeps its data in memory until a configured threshold is reached. Once the threshold is reached, a temporary file is created,
  * and the in-memory data is transferred to that file. Follow up data is then appended to that file.
@@ -52,6 +65,265 @@ import java.util.function.Supplier;
  */
 public class DeferrableOutputStream extends OutputStream {
 
+    /**
+     * Builds a new {@link DeferrableOutputStream} instance.
+     * <p>
+     * For example:
+     * </p>
+     *
+     * <pre>{@code
+     * DeferrableOutputStream dos = DeferrableOutputStream.builder().setThreshold(threshold).setPathSupplier(pathSupplier).get();
+     * }
+     * </pre>
+     */
+    public static class Builder extends AbstractStreamBuilder<DeferrableOutputStream, Builder> {
+
+        /**
+         * The threshold. We do maintain this separate from the {@link #getBufferSize()},
+         * because the parent class might change the value in {@link #setBufferSize(int)}.
+         */
+        private int threshold;
+
+        /**
+         * The supplier for the temporary files path.
+         */
+        private Supplier<Path> pathSupplier;
+
+        /**
+         * The listener, if any, or null.
+         */
+        private Listener listener;
+
+        /**
+         * The segment store, if any, or null.
+         */
+        private SegmentFileStore segmentFileStore;
+
+        /**
+         * The spill tiers, which are used before the repository.
+         */
+        private List<SpillTier> spillTiers = List.of();
+
+        /**
+         * The size, above which the output file is written with direct I/O, or -1.
+         */
+        private long directIoThreshold = -1;
+
+        /**
+         * The path, to which the output file is renamed, when the stream is closed, or null.
+         */
+        private Path targetPath;
+
+        /**
+         * The digest algorithms, which are computed while writing.
+         */
+        private List<String> digestAlgorithms = List.of();
+
+        /**
+         * The algorithm of the expected digest, if any, or null.
+         */
+        private String expectedDigestAlgorithm;
+
+        /**
+         * The expected digest, if any, or null.
+         */
+        private byte[] expectedDigest;
+
+        /**
+         * The content-addressed store, if any, or null.
+         */
+        private ContentAddressedStore contentAddressedStore;
+
+        /**
+         * True, if the output file is being compressed.
+         */
+        private boolean spillCompression;
+
+        /**
+         * True, if the output file is being encrypted.
+         */
+        private boolean spillEncryption;
+
+        /**
+         * Constructs a new instance.
+         */
+        public Builder() {
+            // empty
+        }
+
+        /**
+         * Constructs a new instance.
+         * <p>
+         * This builder uses the aspects threshold, path supplier, listener, segment store, spill tiers, direct I/O threshold, target path,
+         * digest algorithms, expected digest, content-addressed store, spill compression, and spill encryption.
+         * </p>
+         *
+         * @return A new instance.
+         * @throws IOException Creating the temporary file (in the case of threshold -1) has failed.
+         */
+        @Override
+        public DeferrableOutputStream get() throws IOException {
+            return new DeferrableOutputStream(this);
+        }
+
+        /**
+         * Sets the content-addressed store. If a content-addressed store is configured, then the output file is moved
+         * into the store, when the stream is closed, or deleted, if the store already contains the same content. The
+         * stores digest algorithm is added to the {@link #setDigestAlgorithms(String...) digest algorithms}, if necessary.
+         * @param contentAddressedStore The content-addressed store, or null (default).
+         * @return This builder.
+         */
+        public Builder setContentAddressedStore(final ContentAddressedStore contentAddressedStore) {
+            this.contentAddressedStore = contentAddressedStore;
+            return this;
+        }
+
+        /**
+         * Sets the digest algorithms, which are computed, while the data is being written. Supported are the
+         * {@link MessageDigest} algorithms (for example, {@code SHA-256}, or {@code MD5}), and the checksum algorithms
+         * {@code CRC32}, {@code CRC32C}, and {@code Adler32}.
+         * @param digestAlgorithms The digest algorithms. By default, no digests are computed.
+         * @return This builder.
+         * @see DeferrableOutputStream#getDigests()
+         */
+        public Builder setDigestAlgorithms(final String... digestAlgorithms) {
+            this.digestAlgorithms = List.of(digestAlgorithms);
+            return this;
+        }
+
+        /**
+         * Sets the size, above which the output file is written with direct I/O, bypassing the operating systems page
+         * cache. This prevents very large uploads from evicting other data from the page cache. If the JVM, or the file
+         * system, doesn't support direct I/O (for example, tmpfs), then the output file is written as usual.
+         * @param directIoThreshold The size, in bytes, above which direct I/O is being used, or -1 (default) to disable
+         *   direct I/O.
+         * @return This builder.
+         */
+        public Builder setDirectIoThreshold(final long directIoThreshold) {
+            this.directIoThreshold = directIoThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the expected digest. When the stream is closed, the digest is compared with the computed digest, and a
+         * {@link FileUploadDigestException} is thrown, if they don't match. The algorithm is added to the
+         * {@link #setDigestAlgorithms(String...) digest algorithms}, if necessary.
+         * @param algorithm The digest algorithm, for example {@code MD5}.
+         * @param expectedDigest The expected digest.
+         * @return This builder.
+         */
+        public Builder setExpectedDigest(final String algorithm, final byte[] expectedDigest) {
+            this.expectedDigestAlgorithm = algorithm;
+            this.expectedDigest = expectedDigest == null ? null : expectedDigest.clone();
+            return this;
+        }
+
+        /**
+         * Sets the listener, which is being notified about important state changes.
+         * @param listener The listener, or null.
+         * @return This builder.
+         */
+        public Builder setListener(final Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Sets the supplier for the temporary files path. The supplier must not return null.
+         * @param pathSupplier The supplier for the temporary files path.
+         * @return This builder.
+         */
+        public Builder setPathSupplier(final Supplier<Path> pathSupplier) {
+            this.pathSupplier = pathSupplier;
+            return this;
+        }
+
+        /**
+         * Sets the segment store. If a segment store is configured, then data, which exceeds the threshold, but not the
+         * stores {@link SegmentFileStore#getPartSizeMax() maximum part size}, is kept in memory, until the stream is closed,
+         * and then appended to a shared segment file. The segment store is ignored, if {@link #setSpillEncryption(boolean)
+         * spill encryption} is enabled, because segment files hold the original data.
+         * @param segmentFileStore The segment store, or null (default) to create a temporary file for every persisted stream.
+         * @return This builder.
+         */
+        public Builder setSegmentFileStore(final SegmentFileStore segmentFileStore) {
+            this.segmentFileStore = segmentFileStore;
+            return this;
+        }
+
+        /**
+         * Sets, whether the output file is being compressed. If so, then the first chunk of the data is probed: Data, which
+         * is already compressed (for example, ZIP, or JPEG), is written unchanged. Otherwise, the data is deflated. In either
+         * case, {@link DeferrableOutputStream#getInputStream()} returns the original data, and
+         * {@link DeferrableOutputStream#getSize()} returns the original size, but the output file can only be read by
+         * {@link DeferrableOutputStream#getInputStream()}. Spill compression is ignored, if a
+         * {@link #setTargetPath(Path) target path}, or a {@link #setContentAddressedStore(ContentAddressedStore)
+         * content-addressed store} is configured, because their files must hold the original data.
+         * @param spillCompression True to compress the output file, false (default) to write the data unchanged.
+         * @return This builder.
+         * @see DeferrableOutputStream#isCompressed()
+         */
+        public Builder setSpillCompression(final boolean spillCompression) {
+            this.spillCompression = spillCompression;
+            return this;
+        }
+
+        /**
+         * Sets, whether the output file is being encrypted. If so, then the data is encrypted with AES in counter mode, under
+         * a random key, which is generated for this stream, and held in memory only. {@link DeferrableOutputStream#getInputStream()}
+         * returns the original data, but the output file can't be read otherwise. If spill compression is enabled, too, then the
+         * data is compressed first. Spill encryption is ignored, if a {@link #setTargetPath(Path) target path}, or a
+         * {@link #setContentAddressedStore(ContentAddressedStore) content-addressed store} is configured, because their files
+         * must hold the original data. If spill encryption is enabled, then a {@link #setSegmentFileStore(SegmentFileStore)
+         * segment store} is ignored, so that the data is never written unencrypted.
+         * @param spillEncryption True to encrypt the output file, false (default) to write the data unencrypted.
+         * @return This builder.
+         * @see DeferrableOutputStream#isEncrypted()
+         */
+        public Builder setSpillEncryption(final boolean spillEncryption) {
+            this.spillEncryption = spillEncryption;
+            return this;
+        }
+
+        /**
+         * Sets the spill tiers. Data, which exceeds the threshold, is written to the first tier, which accepts it, and promoted to
+         * the next tier, if it outgrows the current tier. The file name of the path, which is returned by the path supplier, is
+         * used in the tiers directory. Data, which outgrows the last tier, is written to the path, which is returned by the path
+         * supplier.
+         * @param spillTiers The spill tiers, in the order of preference. By default, there are no spill tiers.
+         * @return This builder.
+         */
+        public Builder setSpillTiers(final SpillTier... spillTiers) {
+            this.spillTiers = List.of(spillTiers);
+            return this;
+        }
+
+        /**
+         * Sets the path, to which the output file is renamed (atomically, if the file system supports it), when the stream is
+         * closed. This allows writing to a temporary sibling of the final destination, so that readers never observe a
+         * partially written file. After closing, {@link DeferrableOutputStream#getPath()} returns the target path. If the
+         * stream is aborted (see {@link DeferrableOutputStream#abort()}) instead, then the sibling is deleted, and the target
+         * path is left untouched.
+         * @param targetPath The target path, or null (default) to keep the output file at the supplied path.
+         * @return This builder.
+         */
+        public Builder setTargetPath(final Path targetPath) {
+            this.targetPath = targetPath;
+            return this;
+        }
+
+        /**
+         * Sets the threshold. See {@link DeferrableOutputStream#DeferrableOutputStream(int, Supplier, Listener)}
+         * for the possible values.
+         * @param threshold The threshold.
+         * @return This builder.
+         */
+        public Builder setThreshold(final int threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+    }
+
     /**
      * Interface of a listener object, that wishes to be notified about
      * state changes.
@@ -59,13 +331,31 @@ public class DeferrableOutputStream extends OutputStream {
     public interface Listener {
 
         /**
-         * Called, after {@link #persist()} has been invoked,
+         * Called, after {@link #persist()} has been invoked, or after the data has
+         * been promoted to another {@link SpillTier},
          *   and the temporary file has been created.
          * @param path Path of the temporary file, that has been
          *   created. All in-memory data has been transferred to
          *   that file, but it is still opened.
          */
          default void persisted(final Path path) { }
+
+        /**
+         * Called, after the stream has been closed, and the in-memory
+         * data has been appended to a segment file.
+         * @param slice The slice of the segment file, which is holding the data.
+         * @see Builder#setSegmentFileStore(SegmentFileStore)
+         */
+        default void appended(final Slice slice) { }
+
+        /**
+         * Called, after the stream has been closed, and the output file
+         * has been moved into a {@link ContentAddressedStore} (or deleted,
+         * because the store already contained the same content).
+         * @param path The content file, which is holding the data.
+         * @see Builder#setContentAddressedStore(ContentAddressedStore)
+         */
+        default void stored(final Path path) { }
     }
 
     /**
@@ -96,6 +386,9 @@ public class DeferrableOutputStream extends OutputStream {
          * </ol>
          * In either case, a temporary file has been created, and all data has been
          * written to the temporary file, erasing all existing data from memory.
+         * (If a {@link SegmentFileStore} is configured, then small streams may
+         * skip this state, and remain in state {@link #opened} until they
+         * are being closed.)
          */
         persisted,
 
@@ -155,6 +448,35 @@ public class DeferrableOutputStream extends OutputStream {
      */
     private OutputStream out;
 
+    /**
+     * If a temporary file has been created: The open stream, which
+     * is writing to that file. This is the same as {@link #out}, unless
+     * the output file is being compressed, or encrypted. Otherwise null.
+     */
+    private OutputStream sink;
+
+    /**
+     * True, if the output file is being compressed.
+     */
+    private final boolean spillCompression;
+
+    /**
+     * If the output file is being compressed: The stream, which is
+     * compressing the data. Otherwise null.
+     */
+    private SpillCompression.CompressingOutputStream compressor;
+
+    /**
+     * True, if the output file is being encrypted.
+     */
+    private final boolean spillEncryption;
+
+    /**
+     * If the output file is being encrypted: The stream, which
+     * is encrypting the data. Otherwise null.
+     */
+    private SpillEncryption.EncryptingOutputStream encryptor;
+
     /**
      * The streams current state.
      */
@@ -166,6 +488,11 @@ public class DeferrableOutputStream extends OutputStream {
      */
     private boolean wasPersisted;
 
+    /**
+     * True, if the output file has been renamed to the {@link #targetPath}.
+     */
+    private boolean committed;
+
     /**
      * Number of bytes, that have been written to this stream so far.
      */
@@ -176,6 +503,100 @@ public class DeferrableOutputStream extends OutputStream {
      */
     private final Listener listener;
 
+    /**
+     * The configured {@link SegmentFileStore}, if any, or null.
+     */
+    private final SegmentFileStore segmentFileStore;
+
+    /**
+     * If the data has been appended to a segment file: The slice,
+     * which is holding the data. Otherwise null.
+     */
+    private Slice slice;
+
+    /**
+     * The configured spill tiers.
+     */
+    private final List<SpillTier> spillTiers;
+
+    /**
+     * If a temporary file has been created in a spill tier: The spill tier.
+     * Otherwise null.
+     */
+    private SpillTier spillTier;
+
+    /**
+     * If a temporary file has been created in a spill tier: The index of the
+     * spill tier. Otherwise -1.
+     */
+    private int spillTierIndex = -1;
+
+    /**
+     * The size, above which the output file is written with direct I/O, or -1.
+     */
+    private final long directIoThreshold;
+
+    /**
+     * True, if switching the current output file to direct I/O has already
+     * been attempted.
+     */
+    private boolean directIoAttempted;
+
+    /**
+     * The path, to which the output file is renamed, when the stream is closed, or null.
+     */
+    private final Path targetPath;
+
+    /**
+     * The digests, which are computed while writing, or null.
+     */
+    private final StreamDigests digests;
+
+    /**
+     * The algorithm of the expected digest, if any, or null.
+     */
+    private final String expectedDigestAlgorithm;
+
+    /**
+     * The expected digest, if any, or null.
+     */
+    private final byte[] expectedDigest;
+
+    /**
+     * The configured {@link ContentAddressedStore}, if any, or null.
+     */
+    private final ContentAddressedStore contentAddressedStore;
+
+    /**
+     * If the output file has been moved into the content-addressed store:
+     * The reference to the content file. Otherwise null.
+     */
+    private ContentAddressedStore.Reference contentReference;
+
+    /**
+     * Returns a new {@link Builder}.
+     *
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a new file, and opens a channel for writing to it. Restricts the file to its owner, where the file system supports it. The default repository
+     * is the shared system temporary directory, so creating the file with default permissions would expose the uploaded data to other local users.
+     * @param path The file, which is being created.
+     * @param options The options for opening the file.
+     * @return A channel for writing to the file.
+     * @throws IOException Creating the file failed.
+     */
+    static FileChannel newFileChannel(final Path path, final Set<? extends OpenOption> options) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return FileChannel.open(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return FileChannel.open(path, options);
+    }
+
     /**
      * Creates a new instance with the given threshold, and the given supplier for a
      * temporary files path.
@@ -200,17 +621,81 @@ public class DeferrableOutputStream extends OutputStream {
      *   has failed.
      */
     public DeferrableOutputStream(final int threshold, final Supplier<Path> pathSupplier, final Listener listener) throws IOException {
-        if (threshold < 0) {
+        this(builder().setThreshold(threshold).setPathSupplier(pathSupplier).setListener(listener));
+    }
+
+    /**
+     * Creates a new instance from the given builder.
+     *
+     * @param builder The builder, which is providing the configuration.
+     * @throws IOException Creating the temporary file (in the case of threshold -1)
+     *   has failed.
+     */
+    private DeferrableOutputStream(final Builder builder) throws IOException {
+        if (builder.threshold < 0) {
             this.threshold = -1;
         } else {
-            this.threshold = threshold;
+            this.threshold = builder.threshold;
+        }
+        longThreshold = builder.threshold;
+        this.pathSupplier = builder.pathSupplier;
+        this.listener = builder.listener;
+        this.spillTiers = builder.spillTiers;
+        this.directIoThreshold = builder.directIoThreshold;
+        this.targetPath = builder.targetPath;
+        final List<String> algorithms = new ArrayList<>(builder.digestAlgorithms);
+        if (builder.expectedDigest != null && algorithms.stream().noneMatch(builder.expectedDigestAlgorithm::equalsIgnoreCase)) {
+            algorithms.add(builder.expectedDigestAlgorithm);
         }
-        longThreshold = threshold;
-        this.pathSupplier = pathSupplier;
-        this.listener = listener;
+        this.contentAddressedStore = builder.contentAddressedStore;
+        if (contentAddressedStore != null && algorithms.stream().noneMatch(contentAddressedStore.getAlgorithm()::equalsIgnoreCase)) {
+            algorithms.add(contentAddressedStore.getAlgorithm());
+        }
+        this.digests = algorithms.isEmpty() ? null : new StreamDigests(algorithms);
+        this.expectedDigestAlgorithm = builder.expectedDigestAlgorithm;
+        this.expectedDigest = builder.expectedDigest;
+        this.spillCompression = builder.spillCompression && targetPath == null && contentAddressedStore == null;
+        this.spillEncryption = builder.spillEncryption && targetPath == null && contentAddressedStore == null;
+        // Segment files are shared, and can't be encrypted under the streams key, so an encrypted stream spills to a file of its own.
+        this.segmentFileStore = spillEncryption ? null : builder.segmentFileStore;
         checkThreshold(0);
     }
 
+    /**
+     * Closes the stream, and discards the data, that has been written. Used instead of {@link #close()}, if writing the data failed, for example, because
+     * the part exceeded a limit, was vetoed, or the client disconnected. The output file, if any, is deleted. In particular, it is neither renamed to the
+     * target path, nor added to a segment file, or the content-addressed store. Does nothing, if the stream has already been closed.
+     * @throws IOException Closing, or deleting the output file, failed.
+     */
+    public void abort() throws IOException {
+        switch (state) {
+        case initialized:
+        case opened:
+            baos = null;
+            bytes = null;
+            break;
+        case persisted:
+            final Path p = path;
+            path = null;
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(p);
+                if (spillTier != null) {
+                    spillTier.release(p);
+                    spillTier = null;
+                }
+            }
+            break;
+        case closed:
+            // Already closed, do nothing.
+            return;
+        default:
+            throw illegalStateError();
+        }
+        state = State.closed;
+    }
+
     /**
      * Called to check, whether the threshold will be exceeded, if the given number
      * of bytes are written to the stream. If so, persists the in-memory data by
@@ -238,15 +723,32 @@ public class DeferrableOutputStream extends OutputStream {
         switch (state) {
         case initialized:
         case opened:
-            final int bytesWritten = baos.size();
-            if ((long) bytesWritten + (long) numberOfIncomingBytes >= longThreshold) {
-                return persist();
+            final long bytesWritten = (long) baos.size() + (long) numberOfIncomingBytes;
+            if (bytesWritten >= longThreshold && (segmentFileStore == null || bytesWritten > segmentFileStore.getPartSizeMax())) {
+                persist();
+                return checkThreshold(numberOfIncomingBytes);
             }
             if (numberOfIncomingBytes > 0) {
                 state = State.opened;
             }
             return baos;
         case persisted:
+            if (spillTier != null && numberOfIncomingBytes > 0) {
+                final long required = size + numberOfIncomingBytes;
+                if (required > spillTier.getPartSizeMax() || !spillTier.reserve(path, numberOfIncomingBytes)) {
+                    // The part has outgrown the current tier, promote it.
+                    return spill(required, spillTierIndex + 1);
+                }
+            }
+            if (directIoThreshold >= 0 && !directIoAttempted && size + numberOfIncomingBytes > directIoThreshold) {
+                directIoAttempted = true;
+                sink.flush();
+                final OutputStream directOut = DirectFileOutputStream.open(path);
+                if (directOut != null) {
+                    sink.close();
+                    setSink(directOut);
+                }
+            }
             // Do nothing, we're staying in the current state.
             return out;
         case closed:
@@ -257,11 +759,63 @@ public class DeferrableOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Compares the expected digest, if any, with the computed digest.
+     * @throws FileUploadDigestException The digests don't match.
+     */
+    private void checkDigest() throws FileUploadDigestException {
+        if (expectedDigest != null) {
+            final byte[] actual = digests.finish().get(expectedDigestAlgorithm);
+            if (!MessageDigest.isEqual(expectedDigest, actual)) {
+                throw new FileUploadDigestException(String.format("%s digest mismatch: expected %s, got %s", expectedDigestAlgorithm,
+                        Base64.getEncoder().encodeToString(expectedDigest), Base64.getEncoder().encodeToString(actual)), expectedDigestAlgorithm);
+            }
+        }
+    }
+
+    /**
+     * Closes the stream. If an expected digest has been configured, then the data is verified first: If the digests don't match, then the stream is
+     * aborted (see {@link #abort()}), so that corrupt data is never renamed to the target path, appended to a segment file, or added to the
+     * content-addressed store.
+     * @throws FileUploadDigestException The digests don't match.
+     * @throws IOException Closing the output file, renaming, or storing it, failed.
+     */
     @Override
     public void close() throws IOException {
+        if (state != State.closed) {
+            try {
+                checkDigest();
+            } catch (final FileUploadDigestException e) {
+                try {
+                    abort();
+                } catch (final IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+        close0();
+    }
+
+    /**
+     * Closes the stream, and changes the state to {@code closed}.
+     * @throws IOException Closing the output file, or appending the data to a segment file, failed.
+     */
+    private void close0() throws IOException {
         switch (state) {
         case initialized:
         case opened:
+            if (segmentFileStore != null && size > 0 && size >= longThreshold) {
+                slice = segmentFileStore.append(baos);
+                wasPersisted = true;
+                bytes = null;
+                baos = null;
+                state = State.closed;
+                if (listener != null) {
+                    listener.appended(slice);
+                }
+                break;
+            }
             bytes = baos.toByteArray();
             baos = null;
             state = State.closed;
@@ -269,7 +823,31 @@ public class DeferrableOutputStream extends OutputStream {
         case persisted:
             bytes = null;
             out.close();
+            if (targetPath != null) {
+                try {
+                    Files.move(path, targetPath, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (spillTier != null) {
+                    spillTier.release(path);
+                    spillTier = null;
+                }
+                path = targetPath;
+                committed = true;
+            } else if (contentAddressedStore != null) {
+                final Path p = path;
+                contentReference = contentAddressedStore.add(p, digests.finish().get(contentAddressedStore.getAlgorithm()));
+                if (spillTier != null) {
+                    spillTier.release(p);
+                    spillTier = null;
+                }
+                path = contentReference.getPath();
+            }
             state = State.closed;
+            if (contentReference != null && listener != null) {
+                listener.stored(path);
+            }
             break;
         case closed:
             // Already closed, do nothing.
@@ -309,20 +887,77 @@ public class DeferrableOutputStream extends OutputStream {
         }
         if (bytes != null) {
             return new ByteArrayInputStream(bytes);
+        } else if (slice != null) {
+            return slice.getInputStream();
         } else {
-            return Files.newInputStream(path);
+            InputStream in = Files.newInputStream(path);
+            if (encryptor != null) {
+                in = encryptor.newInputStream(in);
+            }
+            if (compressor != null) {
+                in = SpillCompression.newInputStream(in);
+            }
+            return in;
+        }
+    }
+
+    /**
+     * Returns the reference to the content file, if the output file has
+     * been moved into a content-addressed store. Otherwise, returns null.
+     * @return The reference to the content file, if any, or null.
+     */
+    ContentAddressedStore.Reference getContentReference() {
+        return contentReference;
+    }
+
+    /**
+     * Returns the digests, which have been computed, if the stream has
+     * been closed. Otherwise, or if no digest algorithms have been configured,
+     * returns an empty map.
+     * @return The digests, keyed by algorithm name (case-insensitive).
+     * @see Builder#setDigestAlgorithms(String...)
+     */
+    public Map<String, byte[]> getDigests() {
+        if (digests == null || state != State.closed) {
+            return Map.of();
         }
+        return digests.finish();
     }
 
     /**
      * Returns the output file, that has been created, if any, or null.
-     * The latter is the case, if {@link #isInMemory()} returns true.
+     * The latter is the case, if {@link #isInMemory()} returns true,
+     * or if the data has been appended to a segment file.
      * @return The output file, that has been created, if any, or null.
+     * @see #getSlice()
+     * @see #getSpillTier()
      */
     public Path getPath() {
         return path;
     }
 
+    /**
+     * Returns the slice of a segment file, which is holding the data, if
+     * the stream has been closed, and the data has been appended to a
+     * segment file. Otherwise, returns null.
+     * @return The slice, which is holding the data, if any, or null.
+     * @see Builder#setSegmentFileStore(SegmentFileStore)
+     */
+    public Slice getSlice() {
+        return slice;
+    }
+
+    /**
+     * Returns the spill tier, which is holding the output file, if any, or
+     * null. The latter is the case, if no output file has been created, or
+     * if the output file has been created in the repository.
+     * @return The spill tier, which is holding the output file, if any, or null.
+     * @see Builder#setSpillTiers(SpillTier...)
+     */
+    public SpillTier getSpillTier() {
+        return spillTier;
+    }
+
     /**
      * Returns the number of bytes, that have been written to this stream.
      * @return The number of bytes, that have been written to this stream.
@@ -357,6 +992,45 @@ public class DeferrableOutputStream extends OutputStream {
         throw new IllegalStateException("Expected state initialized|opened|persisted|closed, got " + state.name());
     }
 
+    /**
+     * Returns true, if the output file has been renamed to the target path, when the stream was closed. If so, then the output file is no longer a
+     * temporary file, but the final destination, which must not be deleted by the owner of the stream.
+     * @return True, if the output file has been renamed to the target path, otherwise false.
+     * @see Builder#setTargetPath(Path)
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * Returns true, if the output file is being written in the compressed spill format. If so, then the output file
+     * must be read with {@link #getInputStream()}, rather than directly.
+     * @return True, if the output file is compressed, otherwise false.
+     * @see Builder#setSpillCompression(boolean)
+     */
+    public boolean isCompressed() {
+        return compressor != null;
+    }
+
+    /**
+     * Tests, whether the output file is being written with direct I/O.
+     * @return True, if the output file has been switched to direct I/O, and no fallback to buffered writes has occurred.
+     * @see Builder#setDirectIoThreshold(long)
+     */
+    boolean isDirectIo() {
+        return sink instanceof DirectFileOutputStream && ((DirectFileOutputStream) sink).isDirect();
+    }
+
+    /**
+     * Returns true, if the output file is being encrypted. If so, then the output file must be read with
+     * {@link #getInputStream()}, rather than directly.
+     * @return True, if the output file is encrypted, otherwise false.
+     * @see Builder#setSpillEncryption(boolean)
+     */
+    public boolean isEncrypted() {
+        return encryptor != null;
+    }
+
     /**
      * Returns true, if this stream was never persisted,
      * and no output file has been created.
@@ -385,22 +1059,82 @@ public class DeferrableOutputStream extends OutputStream {
      * @throws IOException Creating the temporary file has failed.
      */
     protected OutputStream persist() throws IOException {
-        final Path p = pathSupplier.get();
-        final Path dir = p.getParent();
-        if (dir != null) {
-            Files.createDirectories(dir);
-        }
-        // Restrict the temporary file to its owner where the file system supports it. The default repository is the shared system temporary directory, so
-        // creating the file with default permissions would expose the uploaded data to other local users.
-        final EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return spill(size, 0);
+    }
+
+    /**
+     * Creates an output file in the first spill tier (starting at the given index),
+     * which accepts the given number of bytes, or in the repository, if there is no
+     * such tier. Copies the data, that has been written so far, from memory, or from
+     * the current output file, to the new output file, and changes the state to
+     * {@code persisted}.
+     * @param required The number of bytes, which the spill tier must accept.
+     * @param firstTier Index of the first spill tier, which is being considered.
+     * @return The {@link OutputStream}, which is writing to the created,
+     * temporary file.
+     * @throws IOException Creating the temporary file, or copying the data, has failed.
+     */
+    private OutputStream spill(final long required, final int firstTier) throws IOException {
+        Path p = pathSupplier.get();
+        SpillTier tier = null;
+        int tierIndex = -1;
+        for (int i = firstTier; i < spillTiers.size(); i++) {
+            final SpillTier t = spillTiers.get(i);
+            final Path tierPath = t.getPath().resolve(p.getFileName().toString());
+            if (required <= t.getPartSizeMax() && t.reserve(tierPath, required)) {
+                p = tierPath;
+                tier = t;
+                tierIndex = i;
+                break;
+            }
+        }
         final OutputStream os;
-        if (p.getFileSystem().supportedFileAttributeViews().contains("posix")) {
-            os = Channels.newOutputStream(Files.newByteChannel(p, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))));
-        } else {
-            os = Channels.newOutputStream(Files.newByteChannel(p, options));
+        SpillEncryption.EncryptingOutputStream newEncryptor = null;
+        SpillCompression.CompressingOutputStream newCompressor = null;
+        try {
+            final Path dir = p.getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            final EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            os = Channels.newOutputStream(newFileChannel(p, options));
+            try {
+                if (path == null) {
+                    // Compress first, then encrypt.
+                    OutputStream chain = os;
+                    if (spillEncryption) {
+                        newEncryptor = new SpillEncryption.EncryptingOutputStream(chain);
+                        chain = newEncryptor;
+                    }
+                    if (spillCompression) {
+                        newCompressor = new SpillCompression.CompressingOutputStream(chain);
+                        chain = newCompressor;
+                    }
+                    if (baos != null) {
+                        baos.writeTo(chain);
+                    }
+                } else {
+                    // The compressor, and the encryptor are kept, so the encoded data is copied unchanged.
+                    sink.close();
+                    Files.copy(path, os);
+                }
+            } catch (final IOException e) {
+                os.close();
+                Files.deleteIfExists(p);
+                throw e;
+            }
+        } catch (final IOException e) {
+            if (tier != null) {
+                tier.release(p);
+            }
+            throw e;
         }
-        if (baos != null) {
-            baos.writeTo(os);
+        if (path != null) {
+            // The data has been promoted, remove the previous output file.
+            Files.deleteIfExists(path);
+            if (spillTier != null) {
+                spillTier.release(path);
+            }
         }
         /**
          * At this point, the output file has been successfully created, and we can safely switch state.
@@ -408,13 +1142,40 @@ public class DeferrableOutputStream extends OutputStream {
         state = State.persisted;
         wasPersisted = true;
         path = p;
-        out = os;
+        spillTier = tier;
+        spillTierIndex = tierIndex;
+        directIoAttempted = false;
+        if (newEncryptor != null) {
+            encryptor = newEncryptor;
+        }
+        if (newCompressor != null) {
+            compressor = newCompressor;
+        }
+        setSink(os);
         baos = null;
         bytes = null;
         if (listener != null) {
             listener.persisted(p);
         }
-        return os;
+        return out;
+    }
+
+    /**
+     * Sets the stream, which is writing to the output file.
+     * @param os The stream, which is writing to the output file.
+     */
+    private void setSink(final OutputStream os) {
+        sink = os;
+        OutputStream chain = os;
+        if (encryptor != null) {
+            encryptor.setTarget(chain);
+            chain = encryptor;
+        }
+        if (compressor != null) {
+            compressor.setTarget(chain);
+            chain = compressor;
+        }
+        out = chain;
     }
 
     @Override
@@ -431,6 +1192,9 @@ public class DeferrableOutputStream extends OutputStream {
             }
             bytes = null;
             os.write(buffer, offset, len);
+            if (digests != null) {
+                digests.update(buffer, offset, len);
+            }
             size += len;
         }
     }
@@ -443,6 +1207,9 @@ public class DeferrableOutputStream extends OutputStream {
         }
         bytes = null;
         os.write(b);
+        if (digests != null) {
+            digests.update(b);
+        }
         size++;
     }
 }
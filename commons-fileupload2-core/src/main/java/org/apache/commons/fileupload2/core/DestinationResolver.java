@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.nio.file.Path;
+
+/**
+ * Resolves the final destination of a part from its metadata, so that the part can be streamed straight to its destination, rather than to a temporary file.
+ *
+ * @see DiskFileItemFactory.Builder#setDestinationResolver(DestinationResolver)
+ * @since 2.0.0
+ */
+@FunctionalInterface
+public interface DestinationResolver {
+
+    /**
+     * Resolves the final destination of a part.
+     * <p>
+     * <strong>Note:</strong> The file name is sent by the client, and is passed unchecked. It may contain path separators, or other characters, which must
+     * not be used for building a path.
+     * </p>
+     *
+     * @param fieldName The parts field name.
+     * @param fileName  The parts file name, as sent by the client, or null.
+     * @param headers   The parts headers.
+     * @return The final destination, or null to handle the part as usual (in memory, or in a temporary file). The destination's parent directory is created,
+     *         if necessary. An existing file is replaced, once the part is complete.
+     */
+    Path resolve(String fieldName, String fileName, FileItemHeaders headers);
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link OutputStream}, which is writing to a file, bypassing the operating systems page cache. Used by {@link DeferrableOutputStream} for very large
+ * parts, so that spilling multi-GB uploads doesn't evict other data from the page cache.
+ * <p>
+ * The file is opened with {@code com.sun.nio.file.ExtendedOpenOption.DIRECT}. Direct I/O requires, that the file position, the buffer address, and the
+ * number of bytes are aligned to the file stores block size. Therefore, the data is collected in an aligned, direct buffer, and written in multiples of
+ * the block size. The unaligned tail is written without direct I/O, when the stream is closed.
+ * </p>
+ * <p>
+ * Some file systems accept the {@code DIRECT} option, when opening the file, but reject the writes. If writing with direct I/O fails, then the file is
+ * reopened without direct I/O, and the stream continues with buffered writes.
+ * </p>
+ */
+final class DirectFileOutputStream extends OutputStream {
+
+    /**
+     * The size of the direct buffer, in bytes.
+     */
+    static final int BUFFER_SIZE = 1_048_576;
+
+    /**
+     * The {@code com.sun.nio.file.ExtendedOpenOption.DIRECT} option, if available, or null.
+     */
+    private static final OpenOption DIRECT = findDirectOption();
+
+    /**
+     * Looks up the {@code com.sun.nio.file.ExtendedOpenOption.DIRECT} option, which is not available on every JVM.
+     * @return The option, if available, or null.
+     */
+    private static OpenOption findDirectOption() {
+        try {
+            final Class<?> optionClass = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (final Object option : optionClass.getEnumConstants()) {
+                if ("DIRECT".equals(((Enum<?>) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (final ClassNotFoundException | LinkageError | SecurityException e) {
+            // Direct I/O isn't available.
+        }
+        return null;
+    }
+
+    /**
+     * Attempts to open the given file for direct I/O. The data, which has already been written to the file, is preserved, and the new data is appended.
+     * @param path The file, which is being opened. The file must exist.
+     * @return The opened stream, or null, if the JVM, or the file system, doesn't support direct I/O.
+     */
+    static DirectFileOutputStream open(final Path path) {
+        if (DIRECT == null) {
+            return null;
+        }
+        try {
+            return open(path, Math.toIntExact(Files.getFileStore(path).getBlockSize()));
+        } catch (final IOException | RuntimeException e) {
+            // The file system rejects direct I/O: Fall back silently.
+            return null;
+        }
+    }
+
+    /**
+     * Attempts to open the given file for direct I/O, assuming the given block size.
+     * @param path The file, which is being opened. The file must exist.
+     * @param blockSize The block size, to which the writes are aligned.
+     * @return The opened stream, or null, if the JVM, or the file system, doesn't support direct I/O.
+     */
+    static DirectFileOutputStream open(final Path path, final int blockSize) {
+        if (DIRECT == null) {
+            return null;
+        }
+        try {
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, DIRECT);
+            try {
+                return new DirectFileOutputStream(path, channel, blockSize);
+            } catch (final IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (final IOException | RuntimeException e) {
+            // The file system rejects direct I/O: Fall back silently.
+            return null;
+        }
+    }
+
+    /**
+     * The file, which is being written.
+     */
+    private final Path path;
+
+    /**
+     * The channel, which is writing with direct I/O, or, after a fallback, without.
+     */
+    private FileChannel channel;
+
+    /**
+     * True, if the channel is writing with direct I/O. False, after a fallback to buffered writes.
+     */
+    private boolean direct = true;
+
+    /**
+     * The file stores block size.
+     */
+    private final int blockSize;
+
+    /**
+     * The aligned, direct buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The file position, at which the buffer is being written. Always aligned to the block size.
+     */
+    private long position;
+
+    /**
+     * True, if the stream has been closed.
+     */
+    private boolean closed;
+
+    private DirectFileOutputStream(final Path path, final FileChannel channel, final int blockSize) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.blockSize = blockSize;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE + blockSize).alignedSlice(blockSize);
+        final long size = Files.size(path);
+        position = size - size % blockSize;
+        if (position < size) {
+            // Move the unaligned tail into the buffer, so that it is rewritten with the next aligned block.
+            try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (buffer.position() < size - position) {
+                    if (reader.read(buffer, position + buffer.position()) == -1) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            final int tail = direct ? buffer.position() % blockSize : 0;
+            buffer.flip();
+            buffer.limit(buffer.limit() - tail);
+            writeBuffer();
+            if (tail > 0) {
+                buffer.limit(buffer.position() + tail);
+                if (direct) {
+                    // The unaligned tail can't be written with direct I/O.
+                    reopenBuffered();
+                }
+                writeBuffer();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the full buffer.
+     * @throws IOException Writing the buffer failed.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeBuffer();
+        buffer.clear();
+    }
+
+    /**
+     * Tests, whether the stream is still writing with direct I/O.
+     * @return True, if the stream is writing with direct I/O, false, if it has fallen back to buffered writes.
+     */
+    boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Closes the direct I/O channel, and reopens the file without direct I/O.
+     * @throws IOException Closing, or reopening the file failed.
+     */
+    private void reopenBuffered() throws IOException {
+        direct = false;
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (closed) {
+            throw new IOException("This stream has already been closed.");
+        }
+        int off = offset;
+        int len = length;
+        while (len > 0) {
+            final int n = Math.min(len, buffer.remaining());
+            buffer.put(bytes, off, n);
+            off += n;
+            len -= n;
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * Writes the buffers remaining bytes to the channel, at the current position. If a direct write fails, then the file is reopened without direct I/O,
+     * and the write is retried.
+     * @throws IOException Writing the buffer failed.
+     */
+    private void writeBuffer() throws IOException {
+        while (buffer.hasRemaining()) {
+            try {
+                position += channel.write(buffer, position);
+            } catch (final IOException e) {
+                if (!direct) {
+                    throw e;
+                }
+                try {
+                    reopenBuffered();
+                } catch (final IOException reopenFailure) {
+                    reopenFailure.addSuppressed(e);
+                    throw reopenFailure;
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.commons.fileupload2.core;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -23,13 +24,17 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
@@ -37,6 +42,7 @@ import java.util.function.Supplier;
 import org.apache.commons.fileupload2.core.DeferrableOutputStream.Listener;
 import org.apache.commons.fileupload2.core.DeferrableOutputStream.State;
 import org.apache.commons.fileupload2.core.FileItemFactory.AbstractFileItemBuilder;
+import org.apache.commons.fileupload2.core.SegmentFileStore.Slice;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.FileCleaningTracker;
 import org.apache.commons.io.build.AbstractOrigin;
@@ -113,6 +119,51 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
          */
         private int threshold;
 
+        /**
+         * The segment store, if any, or null.
+         */
+        private SegmentFileStore segmentFileStore;
+
+        /**
+         * The spill tiers, which are used before the repository.
+         */
+        private SpillTier[] spillTiers = {};
+
+        /**
+         * The size, above which temporary files are written with direct I/O, or -1.
+         */
+        private long directIoThreshold = -1;
+
+        /**
+         * The resolver for the items final destination, if any, or null.
+         */
+        private DestinationResolver destinationResolver;
+
+        /**
+         * The digest algorithms, which are computed while the item is being written.
+         */
+        private String[] digestAlgorithms = {};
+
+        /**
+         * The content-addressed store, if any, or null.
+         */
+        private ContentAddressedStore contentAddressedStore;
+
+        /**
+         * True, if temporary files are being compressed.
+         */
+        private boolean spillCompression;
+
+        /**
+         * True, if temporary files are being encrypted.
+         */
+        private boolean spillEncryption;
+
+        /**
+         * True, if a {@code Content-MD5} header is being verified.
+         */
+        private boolean verifyContentMd5;
+
         /**
          * Constructs a new instance.
          */
@@ -136,7 +187,8 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
          */
         @Override
         public DiskFileItem get() {
-            final var diskFileItem = new DiskFileItem(this);
+            final var destination = destinationResolver == null ? null : destinationResolver.resolve(getFieldName(), getFileName(), getFileItemHeaders());
+            final var diskFileItem = new DiskFileItem(this, destination);
             final var tracker = getFileCleaningTracker();
             if (tracker != null) {
                 diskFileItem.setFileCleaningTracker(tracker);
@@ -155,6 +207,54 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
             return getThreshold();
         }
 
+        /**
+         * Returns the content-addressed store, if any, or null.
+         * @return The content-addressed store, if any, or null.
+         */
+        public ContentAddressedStore getContentAddressedStore() {
+            return contentAddressedStore;
+        }
+
+        /**
+         * Returns the resolver for the items final destination, if any, or null.
+         * @return The destination resolver, or null.
+         */
+        public DestinationResolver getDestinationResolver() {
+            return destinationResolver;
+        }
+
+        /**
+         * Returns the digest algorithms, which are computed while the item is being written.
+         * @return The digest algorithms.
+         */
+        public String[] getDigestAlgorithms() {
+            return digestAlgorithms.clone();
+        }
+
+        /**
+         * Returns the size, above which temporary files are written with direct I/O, or -1.
+         * @return The direct I/O threshold, in bytes, or -1, if direct I/O is disabled.
+         */
+        public long getDirectIoThreshold() {
+            return directIoThreshold;
+        }
+
+        /**
+         * Returns the segment store, if any, or null.
+         * @return The segment store, if any, or null.
+         */
+        public SegmentFileStore getSegmentFileStore() {
+            return segmentFileStore;
+        }
+
+        /**
+         * Returns the spill tiers, which are used before the repository.
+         * @return The spill tiers, in the order of preference.
+         */
+        public SpillTier[] getSpillTiers() {
+            return spillTiers.clone();
+        }
+
         /**
          * Returns the threshold.
          * @return The threshold.
@@ -163,6 +263,14 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
             return threshold;
         }
 
+        /**
+         * Returns, whether a {@code Content-MD5} header is being verified.
+         * @return True, if a {@code Content-MD5} header is being verified, otherwise false.
+         */
+        public boolean isVerifyContentMd5() {
+            return verifyContentMd5;
+        }
+
         /**
          * Equivalent to {@link #setThreshold(int)}.
          * @param bufferSize The threshold, which is being used.
@@ -175,6 +283,104 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
             return setThreshold(bufferSize);
         }
 
+        /**
+         * Sets the content-addressed store. If a content-addressed store is configured, then a temporary file is moved into
+         * the store, when the item is complete, and shared with other items with the same content.
+         * @param contentAddressedStore The content-addressed store, or null (default).
+         * @return This builder.
+         */
+        public Builder setContentAddressedStore(final ContentAddressedStore contentAddressedStore) {
+            this.contentAddressedStore = contentAddressedStore;
+            return this;
+        }
+
+        /**
+         * Sets the resolver for the items final destination. If the resolver returns a path, then the item is streamed
+         * straight to a hidden sibling of that path, regardless of the threshold, and the sibling is renamed to the path
+         * (atomically, if the file system supports it), when the item is complete.
+         * @param destinationResolver The destination resolver, or null (default) to use temporary files.
+         * @return This builder.
+         */
+        public Builder setDestinationResolver(final DestinationResolver destinationResolver) {
+            this.destinationResolver = destinationResolver;
+            return this;
+        }
+
+        /**
+         * Sets the digest algorithms, which are computed while the item is being written. See
+         * {@link DiskFileItemFactory.Builder#setDigestAlgorithms(String...)}.
+         * @param digestAlgorithms The digest algorithms. By default, no digests are computed.
+         * @return This builder.
+         */
+        public Builder setDigestAlgorithms(final String... digestAlgorithms) {
+            this.digestAlgorithms = digestAlgorithms.clone();
+            return this;
+        }
+
+        /**
+         * Sets the size, above which temporary files are written with direct I/O, bypassing the operating systems page cache.
+         * If the JVM, or the file system, doesn't support direct I/O, then temporary files are written as usual.
+         * @param directIoThreshold The size, in bytes, above which direct I/O is being used, or -1 (default) to disable direct I/O.
+         * @return This builder.
+         */
+        public Builder setDirectIoThreshold(final long directIoThreshold) {
+            this.directIoThreshold = directIoThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the segment store. If a segment store is configured, then small files, which exceed the threshold, are
+         * appended to a shared segment file, rather than being written to a temporary file of their own.
+         * @param segmentFileStore The segment store, or null (default).
+         * @return This builder.
+         */
+        public Builder setSegmentFileStore(final SegmentFileStore segmentFileStore) {
+            this.segmentFileStore = segmentFileStore;
+            return this;
+        }
+
+        /**
+         * Sets, whether temporary files are being compressed. See {@link DiskFileItemFactory.Builder#setSpillCompression(boolean)}.
+         * @param spillCompression True to compress temporary files, false (default) to write them unchanged.
+         * @return This builder.
+         */
+        public Builder setSpillCompression(final boolean spillCompression) {
+            this.spillCompression = spillCompression;
+            return this;
+        }
+
+        /**
+         * Sets, whether temporary files are being encrypted. See {@link DiskFileItemFactory.Builder#setSpillEncryption(boolean)}.
+         * @param spillEncryption True to encrypt temporary files, false (default) to write them unencrypted.
+         * @return This builder.
+         */
+        public Builder setSpillEncryption(final boolean spillEncryption) {
+            this.spillEncryption = spillEncryption;
+            return this;
+        }
+
+        /**
+         * Sets the spill tiers. If spill tiers are configured, then files, which exceed the threshold, are written to the
+         * first tier, which accepts them, and promoted to the next tier (and, finally, to the repository), if they outgrow
+         * the current tier.
+         * @param spillTiers The spill tiers, in the order of preference. By default, there are no spill tiers.
+         * @return This builder.
+         */
+        public Builder setSpillTiers(final SpillTier... spillTiers) {
+            this.spillTiers = spillTiers.clone();
+            return this;
+        }
+
+        /**
+         * Sets, whether a {@code Content-MD5} header is being verified. See {@link DiskFileItemFactory.Builder#setVerifyContentMd5(boolean)}.
+         * @param verifyContentMd5 True to verify a {@code Content-MD5} header, false (default) to ignore it.
+         * @return This builder.
+         */
+        public Builder setVerifyContentMd5(final boolean verifyContentMd5) {
+            this.verifyContentMd5 = verifyContentMd5;
+            return this;
+        }
+
         /**
          * Sets the threshold. The uploaded data is typically kept in memory, until
          * a certain number of bytes (the threshold) is reached. At this point, the
@@ -200,6 +406,22 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      */
     private static final String UID = UUID.randomUUID().toString().replace('-', '_');
 
+    /**
+     * The maximum number of bytes, which are transferred by a single invocation of {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}, when a file is copied to another file store.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 67_108_864L;
+
+    /**
+     * The name of the header, which contains the Base64 encoded MD5 digest of the items content.
+     */
+    static final String CONTENT_MD5 = "Content-MD5";
+
+    /**
+     * The length of an MD5 digest, in bytes.
+     */
+    private static final int MD5_LENGTH = 16;
+
     /**
      * Counter used in unique identifier generation.
      */
@@ -223,7 +445,7 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      * @throws InvalidPathException The file name is invalid.
      */
     public static String checkFileName(final String fileName) {
-        if (fileName != null) {
+        if (fileName != null && fileName.chars().anyMatch(Character::isISOControl)) {
             var indexOfCtrl = -1;
             final var sb = new StringBuilder();
             for (var i = 0; i < fileName.length(); i++) {
@@ -243,6 +465,86 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
         return fileName;
     }
 
+    /**
+     * Copies the source file to the target file, using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * with large chunks, so that the operating system may copy the data without moving it through the heap.
+     *
+     * @param source The file, which is being copied.
+     * @param target The file, which is being created, or replaced.
+     * @throws IOException Copying the file failed.
+     */
+    static void copy(final Path source, final Path target) throws IOException {
+        try (var in = FileChannel.open(source, StandardOpenOption.READ);
+                var out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                final long transferred = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+                if (transferred <= 0) {
+                    throw new EOFException("File " + source + " has been truncated while copying.");
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Decodes the value of a {@code Content-MD5} header.
+     *
+     * @param value The Base64 encoded MD5 digest.
+     * @return The decoded digest, or null, if the value isn't a Base64 encoded MD5 digest (for example, a hexadecimal one).
+     */
+    private static byte[] decodeContentMd5(final String value) {
+        try {
+            final byte[] digest = Base64.getDecoder().decode(value.trim());
+            return digest.length == MD5_LENGTH ? digest : null;
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns, whether the given files reside on the same file store. The target file doesn't need to exist, but its
+     * parent directory must.
+     *
+     * @param source The existing source file.
+     * @param target The target file.
+     * @return True, if both files are on the same file store. False, if they aren't, or if that can't be determined.
+     */
+    static boolean isSameFileStore(final Path source, final Path target) {
+        final var targetDir = target.toAbsolutePath().getParent();
+        if (targetDir == null) {
+            return false;
+        }
+        try {
+            return Files.getFileStore(source).equals(Files.getFileStore(targetDir));
+        } catch (final IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves the source file to the target file. If both files reside on the same file store, this is an atomic rename,
+     * if the file system supports it, or a plain rename otherwise. If the files reside on different file stores, then
+     * the source file is copied with {@link #copy(Path, Path)}, and deleted.
+     *
+     * @param source The file, which is being moved.
+     * @param target The file, which is being created, or replaced.
+     * @throws IOException Moving the file failed.
+     */
+    static void move(final Path source, final Path target) throws IOException {
+        if (isSameFileStore(source, target)) {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            copy(source, target);
+            Files.delete(source);
+        }
+    }
+
     /**
      * Gets an identifier that is unique within the class loader used to load this class, but does not have random-like appearance.
      *
@@ -271,6 +573,11 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      */
     private final String contentType;
 
+    /**
+     * The parsed content type, if it has been requested already, otherwise null.
+     */
+    private ContentType parsedContentType;
+
     /**
      * Whether or not this item is a simple form field.
      */
@@ -291,6 +598,51 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      */
     private final Path repository;
 
+    /**
+     * The segment store, if any, or null.
+     */
+    private final SegmentFileStore segmentFileStore;
+
+    /**
+     * The spill tiers, which are used before the repository.
+     */
+    private final SpillTier[] spillTiers;
+
+    /**
+     * The size, above which temporary files are written with direct I/O, or -1.
+     */
+    private final long directIoThreshold;
+
+    /**
+     * The items final destination, if any, or null.
+     */
+    private final Path destination;
+
+    /**
+     * The digest algorithms, which are computed while the item is being written.
+     */
+    private final String[] digestAlgorithms;
+
+    /**
+     * The content-addressed store, if any, or null.
+     */
+    private final ContentAddressedStore contentAddressedStore;
+
+    /**
+     * True, if temporary files are being compressed.
+     */
+    private final boolean spillCompression;
+
+    /**
+     * True, if temporary files are being encrypted.
+     */
+    private final boolean spillEncryption;
+
+    /**
+     * True, if a {@code Content-MD5} header is being verified.
+     */
+    private final boolean verifyContentMd5;
+
     /**
      * Output stream for this item.
      */
@@ -316,8 +668,9 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      * Constructs a new {@code DiskFileItem} instance.
      *
      * @param builder The DiskFileItem builder.
+     * @param destination The items final destination, if any, or null.
      */
-    private DiskFileItem(final Builder builder) {
+    private DiskFileItem(final Builder builder, final Path destination) {
         this.fieldName = builder.getFieldName();
         this.contentType = builder.getContentType();
         this.charsetDefault = builder.getCharset();
@@ -326,11 +679,24 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
         this.fileItemHeaders = builder.getFileItemHeaders();
         this.threshold = builder.getThreshold();
         this.repository = builder.getPath() != null ? builder.getPath() : PathUtils.getTempDirectory();
+        this.segmentFileStore = builder.getSegmentFileStore();
+        this.spillTiers = builder.spillTiers;
+        this.directIoThreshold = builder.directIoThreshold;
+        this.destination = destination;
+        this.digestAlgorithms = builder.digestAlgorithms;
+        this.contentAddressedStore = builder.contentAddressedStore;
+        this.spillCompression = builder.spillCompression;
+        this.spillEncryption = builder.spillEncryption;
+        this.verifyContentMd5 = builder.verifyContentMd5;
     }
 
     /**
      * Deletes the underlying storage for a file item, including deleting any associated temporary disk file. This method can be used to ensure that this is
      * done at an earlier time, thus preserving system resources.
+     * <p>
+     * If the item has been committed to the destination, which was returned by a {@link DestinationResolver} (see {@link #isCommitted()}), then the
+     * destination is the final file, rather than temporary storage, and it is kept.
+     * </p>
      *
      * @throws IOException Thrown if an error occurs.
      */
@@ -338,8 +704,23 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
     public DiskFileItem delete() throws IOException {
         if (dos != null) {
             final Path path = dos.getPath();
-            if (path != null) {
+            final var contentReference = dos.getContentReference();
+            if (dos.isCommitted()) {
+                // The destination isn't ours to delete.
+                return this;
+            }
+            if (contentReference != null) {
+                contentReference.release();
+            } else if (path != null) {
                 Files.deleteIfExists(path);
+                final SpillTier spillTier = dos.getSpillTier();
+                if (spillTier != null) {
+                    spillTier.release(path);
+                }
+            }
+            final Slice slice = dos.getSlice();
+            if (slice != null) {
+                slice.release();
             }
         }
         return this;
@@ -365,23 +746,43 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
             }
             final Path path = dos.getPath();
             if (path != null && dos.getState() == State.closed) {
+                if (dos.isCompressed() || dos.isEncrypted()) {
+                    try (var in = dos.getInputStream()) {
+                        return in.readAllBytes();
+                    }
+                }
                 return Files.readAllBytes(path);
             }
+            final Slice slice = dos.getSlice();
+            if (slice != null) {
+                return slice.get();
+            }
         }
         return null;
     }
 
+    /**
+     * Gets the digest, which has been computed with the given algorithm, while the item was being written.
+     *
+     * @param algorithm The digest algorithm, for example {@code SHA-256}, or {@code CRC32C}.
+     * @return The digest, or null, if the algorithm hasn't been configured (or, in the case of {@code MD5}, required for verifying a {@code Content-MD5}
+     *         header, see {@link DiskFileItemFactory.Builder#setVerifyContentMd5(boolean)}), or the item is not yet complete.
+     * @see DiskFileItemFactory.Builder#setDigestAlgorithms(String...)
+     * @since 2.0.0
+     */
+    public byte[] getDigest(final String algorithm) {
+        final byte[] digest = dos == null ? null : dos.getDigests().get(algorithm);
+        return digest == null ? null : digest.clone();
+    }
+
     /**
      * Gets the content charset passed by the agent or {@code null} if not defined.
      *
      * @return The content charset passed by the agent or {@code null} if not defined.
      */
     public Charset getCharset() {
-        final var parser = new ParameterParser();
-        parser.setLowerCaseNames(true);
-        // Parameter parser can handle null input
-        final var params = parser.parse(getContentType(), ';');
-        return Charsets.toCharset(params.get("charset"), charsetDefault);
+        final var parsed = getParsedContentType();
+        return parsed == null ? charsetDefault : parsed.getCharset(charsetDefault);
     }
 
     /**
@@ -403,6 +804,32 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
         return contentType;
     }
 
+    /**
+     * Gets the expected MD5 digest of the items content, if it is being verified.
+     * <p>
+     * The digest is taken from a {@code Content-MD5} header. If the header isn't a Base64 encoded MD5 digest, then it is ignored. A {@code Content-MD5}
+     * header covers the content before a {@code Content-Transfer-Encoding} has been applied (RFC 1864), so it is ignored, too, if the item still holds
+     * {@code base64}, or {@code quoted-printable} encoded data.
+     * </p>
+     *
+     * @return The expected MD5 digest, or null, if there is nothing to verify.
+     * @see DiskFileItemFactory.Builder#setVerifyContentMd5(boolean)
+     */
+    private byte[] getExpectedMd5() {
+        if (!verifyContentMd5 || fileItemHeaders == null) {
+            return null;
+        }
+        final String contentMd5 = fileItemHeaders.getHeader(CONTENT_MD5);
+        if (contentMd5 == null) {
+            return null;
+        }
+        final String transferEncoding = fileItemHeaders.getHeader(AbstractFileUpload.CONTENT_TRANSFER_ENCODING);
+        if (transferEncoding != null && FileItemInputImpl.getTransferEncoding(transferEncoding) != null) {
+            return null;
+        }
+        return decodeContentMd5(contentMd5);
+    }
+
     /**
      * Gets the name of the field in the multipart form corresponding to this file item.
      *
@@ -468,8 +895,13 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
     @Override
     public OutputStream getOutputStream() {
         if (dos == null) {
-            final Supplier<Path> pathSupplier =
-                    () -> this.repository.resolve(String.format("upload_%s_%s.tmp", UID, getUniqueId()));
+            final Supplier<Path> pathSupplier;
+            if (destination == null) {
+                pathSupplier = () -> this.repository.resolve(String.format("upload_%s_%s.tmp", UID, getUniqueId()));
+            } else {
+                // Stream straight to a hidden sibling of the destination, which is renamed on close.
+                pathSupplier = () -> destination.resolveSibling(String.format(".%s.upload_%s_%s.tmp", destination.getFileName(), UID, getUniqueId()));
+            }
             try {
                 final Listener persistenceListener = new Listener() {
                     @Override
@@ -477,11 +909,53 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
                         Listener.super.persisted(pPath);
                         final FileCleaningTracker fct = getFileCleaningTracker();
                         if (fct != null) {
-                            fct.track(getPath(), this);
+                            final SpillTier spillTier = getSpillTier(pPath);
+                            if (spillTier == null) {
+                                fct.track(pPath, this);
+                            } else {
+                                fct.track(pPath, this, spillTier.getDeleteStrategy());
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void stored(final Path pPath) {
+                        Listener.super.stored(pPath);
+                        final FileCleaningTracker fct = getFileCleaningTracker();
+                        if (fct != null) {
+                            fct.track(pPath, DiskFileItem.this, dos.getContentReference().getDeleteStrategy());
+                        }
+                    }
+
+                    @Override
+                    public void appended(final Slice slice) {
+                        Listener.super.appended(slice);
+                        final FileCleaningTracker fct = getFileCleaningTracker();
+                        if (fct != null) {
+                            fct.track(slice.getPath(), DiskFileItem.this, slice.getDeleteStrategy());
                         }
                     }
                 };
-                dos = new DeferrableOutputStream(threshold, pathSupplier, persistenceListener);
+                // @formatter:off
+                final var builder = DeferrableOutputStream.builder()
+                        .setPathSupplier(pathSupplier)
+                        .setListener(persistenceListener)
+                        .setDirectIoThreshold(directIoThreshold)
+                        .setDigestAlgorithms(digestAlgorithms);
+                // @formatter:on
+                final byte[] expectedMd5 = getExpectedMd5();
+                if (expectedMd5 != null) {
+                    // The MD5 digest is added on demand.
+                    builder.setExpectedDigest("MD5", expectedMd5);
+                }
+                if (destination == null) {
+                    builder.setThreshold(threshold).setSegmentFileStore(segmentFileStore).setSpillTiers(spillTiers)
+                            .setContentAddressedStore(contentAddressedStore).setSpillCompression(spillCompression)
+                            .setSpillEncryption(spillEncryption);
+                } else {
+                    builder.setThreshold(-1).setTargetPath(destination);
+                }
+                dos = builder.get();
             } catch (final IOException ioe) {
                 throw new UncheckedIOException(ioe);
             }
@@ -489,17 +963,74 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
         return dos;
     }
 
+    /**
+     * Gets the parsed content type passed by the agent. The content type is parsed once.
+     *
+     * @return The parsed content type passed by the agent or {@code null} if not defined.
+     * @since 2.0.0
+     */
+    @Override
+    public ContentType getParsedContentType() {
+        var result = parsedContentType;
+        if (result == null && contentType != null) {
+            result = ContentType.parse(contentType);
+            parsedContentType = result;
+        }
+        return result;
+    }
+
     /**
      * Gets the {@link Path} for the {@code FileItem}'s data's temporary location on the disk. Note that for {@code FileItem}s that have their data stored in
      * memory, this method will return {@code null}. When handling large files, you can use {@link Files#move(Path,Path,CopyOption...)} to move the file to a
      * new location without copying the data, if the source and destination locations reside within the same logical volume.
      *
-     * @return The data file, or {@code null} if the data is stored in memory.
+     * <p>
+     * If a {@link SegmentFileStore} is configured, then the data may also have been appended to a shared segment file.
+     * In that case, this method returns {@code null}, too, and {@link #isInMemory()} returns false.
+     * </p>
+     * <p>
+     * If a {@link DestinationResolver} is configured, and has returned a destination for this item, then this method returns the destination, after the
+     * item is complete.
+     * </p>
+     * <p>
+     * If spill compression, or spill encryption is enabled (see {@link DiskFileItemFactory.Builder#setSpillCompression(boolean)}, and
+     * {@link DiskFileItemFactory.Builder#setSpillEncryption(boolean)}), then the data file may be compressed, or encrypted, and must be read with
+     * {@link #getInputStream()}, or written with {@link #write(Path)}.
+     * </p>
+     *
+     * @return The data file, or {@code null} if the data is stored in memory, or in a segment file.
+     * @see #getSlice()
      */
     public Path getPath() {
         return dos == null ? null : dos.getPath();
     }
 
+    /**
+     * Gets the slice of a shared segment file, which is holding the data, if any, or null. This is only the case, if a
+     * {@link SegmentFileStore} has been configured, and the item's size exceeded the threshold, but not the stores
+     * {@link SegmentFileStore#getPartSizeMax() maximum part size}.
+     *
+     * @return The slice, which is holding the data, if any, or null.
+     * @since 2.0.0
+     */
+    public Slice getSlice() {
+        return dos == null ? null : dos.getSlice();
+    }
+
+    /**
+     * Returns the spill tier, which is holding the given file, if any, or null.
+     * @param file The file, which is being checked.
+     * @return The spill tier, which is holding the given file, if any, or null.
+     */
+    private SpillTier getSpillTier(final Path file) {
+        for (final SpillTier spillTier : spillTiers) {
+            if (spillTier.contains(file)) {
+                return spillTier;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the contents of the file as a {@link Reader}, using the specified
      * {@link #getCharset()}. If the contents are not yet available, returns null.
@@ -513,12 +1044,7 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      */
     public Reader getReader() throws IOException, UnsupportedEncodingException {
         final InputStream is = getInputStream();
-        final var parser = new ParameterParser();
-        parser.setLowerCaseNames(true);
-        // Parameter parser can handle null input
-        final var params = parser.parse(getContentType(), ';');
-        final Charset cs = Charsets.toCharset(params.get("charset"), charsetDefault);
-        return new InputStreamReader(is, cs);
+        return new InputStreamReader(is, getCharset());
     }
 
     /**
@@ -568,6 +1094,19 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
         return threshold;
     }
 
+    /**
+     * Tests, whether the item has been committed to the destination, which was returned by a {@link DestinationResolver}. That is the case, once the item
+     * has been written completely, and the hidden sibling has been renamed to the destination. A committed item is not deleted by {@link #delete()}.
+     *
+     * @return True, if the item has been committed to its destination, otherwise false.
+     * @see DiskFileItemFactory.Builder#setDestinationResolver(DestinationResolver)
+     * @since 2.0.0
+     */
+    @Override
+    public boolean isCommitted() {
+        return dos != null && dos.isCommitted();
+    }
+
     /**
      * Tests whether or not a {@code FileItem} instance represents a simple form field.
      *
@@ -664,7 +1203,9 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
      * </p>
      * <p>
      * This implementation first attempts to rename the uploaded item to the specified destination file, if the item was originally written to disk. Otherwise,
-     * the data will be copied to the specified file.
+     * the data will be copied to the specified file. The rename is atomic, if the temporary file, and the destination file, reside on the same file store, and
+     * the file system supports it. Otherwise, the data is copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, and
+     * the temporary file is deleted. See {@link DiskFileItemFactory.Builder#setDestinationPath(Path)} for placing temporary files on the destination file store.
      * </p>
      * <p>
      * This method is only guaranteed to work <em>once</em>, the first time it is invoked for a particular item. This is because, in the event that the method
@@ -682,6 +1223,12 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
             } catch (final IOException e) {
                 throw new IOException("Unexpected output data", e);
             }
+        } else if (getSlice() != null) {
+            //
+            // The uploaded file is being stored in a shared segment file, so copy it to the desired file, and release the slice.
+            //
+            getSlice().write(file);
+            getSlice().release();
         } else {
             final var outputFile = getPath();
             if (outputFile == null) {
@@ -690,10 +1237,30 @@ public final class DiskFileItem implements FileItem<DiskFileItem> {
                  */
                 throw new FileUploadException("Cannot write uploaded file to disk.");
             }
-            //
-            // The uploaded file is being stored on disk in a temporary location so move it to the desired file.
-            //
-            Files.move(outputFile, file, StandardCopyOption.REPLACE_EXISTING);
+            final var contentReference = dos.getContentReference();
+            if (contentReference != null) {
+                //
+                // The uploaded file is shared with other items, so move it only, if this is the last reference.
+                //
+                contentReference.moveTo(file);
+            } else if (dos.isCompressed() || dos.isEncrypted()) {
+                //
+                // The uploaded file is being stored compressed, or encrypted, so decode it to the desired file, and delete the temporary file.
+                //
+                try (var in = dos.getInputStream()) {
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                delete();
+            } else {
+                //
+                // The uploaded file is being stored on disk in a temporary location so move it to the desired file.
+                //
+                move(outputFile, file);
+                final SpillTier spillTier = dos.getSpillTier();
+                if (spillTier != null) {
+                    spillTier.release(outputFile);
+                }
+            }
         }
         return this;
     }
@@ -18,6 +18,7 @@ package org.apache.commons.fileupload2.core;
 
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.List;
 
 import org.apache.commons.io.FileCleaningTracker;
 import org.apache.commons.io.build.AbstractOrigin;
@@ -88,6 +89,56 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
          */
         private int threshold;
 
+        /**
+         * The segment store, if any, or null.
+         */
+        private SegmentFileStore segmentFileStore;
+
+        /**
+         * The spill tiers, which are used before the repository.
+         */
+        private SpillTier[] spillTiers = {};
+
+        /**
+         * The size, above which temporary files are written with direct I/O, or -1.
+         */
+        private long directIoThreshold = -1;
+
+        /**
+         * The directory, to which items will finally be written, if known, or null.
+         */
+        private Path destinationPath;
+
+        /**
+         * The resolver for the items final destinations, if any, or null.
+         */
+        private DestinationResolver destinationResolver;
+
+        /**
+         * The digest algorithms, which are computed while the items are being written.
+         */
+        private String[] digestAlgorithms = {};
+
+        /**
+         * The content-addressed store, if any, or null.
+         */
+        private ContentAddressedStore contentAddressedStore;
+
+        /**
+         * True, if temporary files are being compressed.
+         */
+        private boolean spillCompression;
+
+        /**
+         * True, if temporary files are being encrypted.
+         */
+        private boolean spillEncryption;
+
+        /**
+         * True, if {@code Content-MD5} headers are being verified.
+         */
+        private boolean verifyContentMd5;
+
         /**
          * Constructs a new instance.
          */
@@ -128,6 +179,62 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
             return getThreshold();
         }
 
+        /**
+         * Returns the directory, to which items will finally be written, if known, or null.
+         * @return The destination directory, or null.
+         */
+        public Path getDestinationPath() {
+            return destinationPath;
+        }
+
+        /**
+         * Returns the content-addressed store, if any, or null.
+         * @return The content-addressed store, if any, or null.
+         */
+        public ContentAddressedStore getContentAddressedStore() {
+            return contentAddressedStore;
+        }
+
+        /**
+         * Returns the resolver for the items final destinations, if any, or null.
+         * @return The destination resolver, or null.
+         */
+        public DestinationResolver getDestinationResolver() {
+            return destinationResolver;
+        }
+
+        /**
+         * Returns the digest algorithms, which are computed while the items are being written.
+         * @return The digest algorithms.
+         */
+        public String[] getDigestAlgorithms() {
+            return digestAlgorithms.clone();
+        }
+
+        /**
+         * Returns the size, above which temporary files are written with direct I/O, or -1.
+         * @return The direct I/O threshold, in bytes, or -1, if direct I/O is disabled.
+         */
+        public long getDirectIoThreshold() {
+            return directIoThreshold;
+        }
+
+        /**
+         * Returns the segment store, if any, or null.
+         * @return The segment store, if any, or null.
+         */
+        public SegmentFileStore getSegmentFileStore() {
+            return segmentFileStore;
+        }
+
+        /**
+         * Returns the spill tiers, which are used before the repository.
+         * @return The spill tiers, in the order of preference.
+         */
+        public SpillTier[] getSpillTiers() {
+            return spillTiers.clone();
+        }
+
         /**
          * Returns the threshold.
          * @return The threshold.
@@ -136,6 +243,30 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
             return threshold;
         }
 
+        /**
+         * Returns true, if temporary files are being compressed.
+         * @return True, if temporary files are being compressed.
+         */
+        public boolean isSpillCompression() {
+            return spillCompression;
+        }
+
+        /**
+         * Returns true, if temporary files are being encrypted.
+         * @return True, if temporary files are being encrypted.
+         */
+        public boolean isSpillEncryption() {
+            return spillEncryption;
+        }
+
+        /**
+         * Returns true, if {@code Content-MD5} headers are being verified.
+         * @return True, if {@code Content-MD5} headers are being verified.
+         */
+        public boolean isVerifyContentMd5() {
+            return verifyContentMd5;
+        }
+
         /**
          * Equivalent to {@link #setThreshold(int)}.
          * @param bufferSize The threshold, which is being used.
@@ -148,6 +279,85 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
             return setThreshold(bufferSize);
         }
 
+        /**
+         * Sets the directory, to which items will finally be written with {@link DiskFileItem#write(Path)}. If set, then
+         * temporary files are created in the subdirectory {@value DiskFileItemFactory#DESTINATION_TEMP_DIRECTORY} of that
+         * directory, rather than in the repository, so that they reside on the destination's file store, and writing an
+         * item is a rename, rather than a copy.
+         *
+         * @param destinationPath The destination directory, or null (default) to create temporary files in the repository.
+         * @return {@code this} instance.
+         */
+        public Builder setDestinationPath(final Path destinationPath) {
+            this.destinationPath = destinationPath;
+            return this;
+        }
+
+        /**
+         * Sets the content-addressed store. If a content-addressed store is configured, then the digest of every item is
+         * computed while it is being written, and spilled items are stored in the content-addressed store, keyed by the
+         * digest. Identical content is stored once, and reference-counted: {@link DiskFileItem#delete()} releases a
+         * reference, and {@link DiskFileItem#write(Path)} copies the content, unless the item holds the last reference.
+         *
+         * @param contentAddressedStore The content-addressed store, or null (default).
+         * @return {@code this} instance.
+         * @see ContentAddressedStore
+         */
+        public Builder setContentAddressedStore(final ContentAddressedStore contentAddressedStore) {
+            this.contentAddressedStore = contentAddressedStore;
+            return this;
+        }
+
+        /**
+         * Sets the resolver for the items final destinations. For every part, the resolver receives the field name, the
+         * file name, and the headers. If it returns a path, then the part is streamed straight to a hidden sibling of that
+         * path, and the sibling is renamed to the path (atomically, if the file system supports it), when the part is
+         * complete. Every byte is written once, rather than being written to a temporary file, and moved, or copied,
+         * later on. If the resolver returns null, then the part is handled as usual.
+         * <p>
+         * The sibling is renamed only, if the part has been copied completely, and verified. If a part fails, for example,
+         * because it exceeds a limit, or is vetoed, then only the sibling is deleted, and an existing file at the destination
+         * is left untouched. Destinations, which have been committed, are final: {@link DiskFileItem#delete()} keeps them, even
+         * if {@link AbstractFileUpload#parseRequest(RequestContext)} fails on a later part.
+         * </p>
+         *
+         * @param destinationResolver The destination resolver, or null (default) to use temporary files.
+         * @return {@code this} instance.
+         */
+        public Builder setDestinationResolver(final DestinationResolver destinationResolver) {
+            this.destinationResolver = destinationResolver;
+            return this;
+        }
+
+        /**
+         * Sets the digest algorithms, which are computed while the items are being written, so that the items don't need to be
+         * read again for hashing. Supported are the {@link java.security.MessageDigest} algorithms (for example, {@code SHA-256},
+         * or {@code MD5}), and the checksum algorithms {@code CRC32}, {@code CRC32C}, and {@code Adler32}. The results are
+         * available through {@link DiskFileItem#getDigest(String)}. Unsupported algorithms are rejected by {@link #get()} with an
+         * {@link IllegalArgumentException}. See {@link #setVerifyContentMd5(boolean)} for verifying {@code Content-MD5} headers.
+         *
+         * @param digestAlgorithms The digest algorithms. By default, no digests are computed.
+         * @return {@code this} instance.
+         */
+        public Builder setDigestAlgorithms(final String... digestAlgorithms) {
+            this.digestAlgorithms = digestAlgorithms.clone();
+            return this;
+        }
+
+        /**
+         * Sets the size, above which temporary files are written with direct I/O ({@code O_DIRECT}), bypassing the operating
+         * systems page cache. Spilling multi-GB uploads through the page cache evicts other, frequently used data. With direct
+         * I/O, the data is written in aligned blocks, and only the unaligned tail of a file is written through the page cache.
+         * If the JVM, or the file system, doesn't support direct I/O, then temporary files are written as usual.
+         *
+         * @param directIoThreshold The size, in bytes, above which direct I/O is being used, or -1 (default) to disable direct I/O.
+         * @return {@code this} instance.
+         */
+        public Builder setDirectIoThreshold(final long directIoThreshold) {
+            this.directIoThreshold = directIoThreshold;
+            return this;
+        }
+
         /**
          * Sets the tracker, which is responsible for deleting temporary files.
          *
@@ -159,6 +369,96 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
             return this;
         }
 
+        /**
+         * Sets the segment store. If a segment store is configured, then items, which exceed the threshold, but not the
+         * stores {@link SegmentFileStore#getPartSizeMax() maximum part size}, are appended to a shared segment file, rather
+         * than being written to a temporary file of their own. This reduces the number of file creations, and deletions,
+         * for uploads with many small files. The segment store is not closed by the factory. Segment files hold the original
+         * data, so the segment store isn't used, if {@link #setSpillEncryption(boolean) spill encryption} is enabled.
+         *
+         * @param segmentFileStore The segment store, or null (default) to create a temporary file for every item, which
+         *   exceeds the threshold.
+         * @return {@code this} instance.
+         */
+        public Builder setSegmentFileStore(final SegmentFileStore segmentFileStore) {
+            this.segmentFileStore = segmentFileStore;
+            return this;
+        }
+
+        /**
+         * Sets, whether temporary files are being compressed. This trades CPU for disk bandwidth, which pays off for large,
+         * compressible uploads, like CSV, JSON, or XML files. The first chunk of every item is probed: Content, which is
+         * already compressed (for example, ZIP, or JPEG), is written unchanged. {@link DiskFileItem#getSize()},
+         * {@link DiskFileItem#getInputStream()}, {@link DiskFileItem#get()}, and {@link DiskFileItem#write(Path)} are not
+         * affected, but the file, which is returned by {@link DiskFileItem#getPath()}, may be compressed. Spill compression
+         * doesn't apply to items, which are streamed to their destination (see {@link #setDestinationResolver(DestinationResolver)}),
+         * or stored in a {@link #setContentAddressedStore(ContentAddressedStore) content-addressed store}.
+         *
+         * @param spillCompression True to compress temporary files, false (default) to write them unchanged.
+         * @return {@code this} instance.
+         */
+        public Builder setSpillCompression(final boolean spillCompression) {
+            this.spillCompression = spillCompression;
+            return this;
+        }
+
+        /**
+         * Sets, whether temporary files are being encrypted. If so, then every temporary file is encrypted while it is being
+         * written, with AES in counter mode, under a random key, which is generated per item, and held in memory only. This
+         * avoids writing uploads unencrypted to disk, without a second pass over the data. {@link DiskFileItem#getInputStream()},
+         * {@link DiskFileItem#get()}, and {@link DiskFileItem#write(Path)} decrypt transparently, but the file, which is
+         * returned by {@link DiskFileItem#getPath()}, is unreadable. If spill compression is enabled, too, then the data is
+         * compressed before it is encrypted. Spill encryption doesn't apply to items, which are streamed to their destination
+         * (see {@link #setDestinationResolver(DestinationResolver)}), or stored in a
+         * {@link #setContentAddressedStore(ContentAddressedStore) content-addressed store}. If spill encryption is enabled,
+         * then a {@link #setSegmentFileStore(SegmentFileStore) segment store} isn't used, and every item, which exceeds the
+         * threshold, is written to an encrypted temporary file of its own.
+         *
+         * @param spillEncryption True to encrypt temporary files, false (default) to write them unencrypted.
+         * @return {@code this} instance.
+         */
+        public Builder setSpillEncryption(final boolean spillEncryption) {
+            this.spillEncryption = spillEncryption;
+            return this;
+        }
+
+        /**
+         * Sets the spill tiers, for example a directory on a memory backed file system. If spill tiers are configured, then
+         * items, which exceed the threshold, are written to the first tier, which accepts them. An item is promoted to the
+         * next tier mid-stream, if it outgrows the current tier, and, finally, to the repository. For example, with a
+         * threshold of 64 KB, and a tier in {@code /dev/shm} with a maximum part size of 8 MB, medium size uploads avoid
+         * both heap usage, and disk I/O.
+         *
+         * @param spillTiers The spill tiers, in the order of preference. By default, there are no spill tiers.
+         * @return {@code this} instance.
+         * @see SpillTier
+         */
+        public Builder setSpillTiers(final SpillTier... spillTiers) {
+            this.spillTiers = spillTiers.clone();
+            return this;
+        }
+
+        /**
+         * Sets, whether {@code Content-MD5} headers are being verified. If so, and a part has a {@code Content-MD5} header
+         * with a Base64 encoded MD5 digest, then the parts MD5 digest is computed while the item is being written, even if
+         * MD5 isn't one of the {@link #setDigestAlgorithms(String...) digest algorithms}. The digest is verified, before the
+         * item is renamed to its destination, or stored. If it doesn't match, then the item is discarded, a
+         * {@link FileUploadDigestException} is thrown, and the request fails.
+         * <p>
+         * A header, which isn't a Base64 encoded MD5 digest (for example, a hexadecimal one), is ignored. So is the header of
+         * a part, which still holds {@code base64}, or {@code quoted-printable} encoded data, because the digest covers the
+         * decoded data (RFC 1864). See {@link AbstractFileUpload#setDecodeContentTransferEncoding(boolean)}.
+         * </p>
+         *
+         * @param verifyContentMd5 True to verify {@code Content-MD5} headers, false (default) to ignore them.
+         * @return {@code this} instance.
+         * @since 2.0.0
+         */
+        public Builder setVerifyContentMd5(final boolean verifyContentMd5) {
+            this.verifyContentMd5 = verifyContentMd5;
+            return this;
+        }
+
         /**
          * Sets the threshold. The uploaded data is typically kept in memory, until
          * a certain number of bytes (the threshold) is reached. At this point, the
@@ -182,6 +482,13 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
      */
     public static final int DEFAULT_THRESHOLD = 10_240;
 
+    /**
+     * The name of the subdirectory of the destination directory, in which temporary files are created, if a destination
+     * directory has been configured.
+     * @see Builder#setDestinationPath(Path)
+     */
+    public static final String DESTINATION_TEMP_DIRECTORY = ".upload-tmp";
+
     /**
      * Constructs a new {@link Builder}.
      *
@@ -214,6 +521,51 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
      */
     private final Charset charsetDefault;
 
+    /**
+     * The segment store, if any, or null.
+     */
+    private final SegmentFileStore segmentFileStore;
+
+    /**
+     * The spill tiers, which are used before the repository.
+     */
+    private final SpillTier[] spillTiers;
+
+    /**
+     * The size, above which temporary files are written with direct I/O, or -1.
+     */
+    private final long directIoThreshold;
+
+    /**
+     * The resolver for the items final destinations, if any, or null.
+     */
+    private final DestinationResolver destinationResolver;
+
+    /**
+     * The digest algorithms, which are computed while the items are being written.
+     */
+    private final String[] digestAlgorithms;
+
+    /**
+     * The content-addressed store, if any, or null.
+     */
+    private final ContentAddressedStore contentAddressedStore;
+
+    /**
+     * True, if temporary files are being compressed.
+     */
+    private final boolean spillCompression;
+
+    /**
+     * True, if temporary files are being encrypted.
+     */
+    private final boolean spillEncryption;
+
+    /**
+     * True, if {@code Content-MD5} headers are being verified.
+     */
+    private final boolean verifyContentMd5;
+
     /**
      * Constructs a preconfigured instance of this class.
      *
@@ -224,9 +576,20 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
      */
     private DiskFileItemFactory(final Builder builder) {
         this.threshold = builder.threshold;
-        this.repository = builder.getPath();
+        this.repository = builder.destinationPath != null ? builder.destinationPath.resolve(DESTINATION_TEMP_DIRECTORY) : builder.getPath();
         this.charsetDefault = builder.getCharset();
         this.fileCleaningTracker = builder.fileCleaningTracker;
+        this.segmentFileStore = builder.segmentFileStore;
+        this.spillTiers = builder.spillTiers;
+        this.directIoThreshold = builder.directIoThreshold;
+        this.destinationResolver = builder.destinationResolver;
+        this.digestAlgorithms = builder.digestAlgorithms;
+        this.contentAddressedStore = builder.contentAddressedStore;
+        this.spillCompression = builder.spillCompression;
+        this.spillEncryption = builder.spillEncryption;
+        this.verifyContentMd5 = builder.verifyContentMd5;
+        // Fail early on unsupported algorithms, rather than while parsing a request.
+        StreamDigests.validate(List.of(digestAlgorithms));
     }
 
     @SuppressWarnings("unchecked")
@@ -237,6 +600,15 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
                 .setThreshold(threshold)
                 .setCharset(charsetDefault)
                 .setFileCleaningTracker(fileCleaningTracker)
+                .setSegmentFileStore(segmentFileStore)
+                .setSpillTiers(spillTiers)
+                .setDirectIoThreshold(directIoThreshold)
+                .setDestinationResolver(destinationResolver)
+                .setDigestAlgorithms(digestAlgorithms)
+                .setContentAddressedStore(contentAddressedStore)
+                .setSpillCompression(spillCompression)
+                .setSpillEncryption(spillEncryption)
+                .setVerifyContentMd5(verifyContentMd5)
                 .setPath(repository);
         // @formatter:on
     }
@@ -268,6 +640,66 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
         return repository;
     }
 
+    /**
+     * Gets the content-addressed store, if any, or null.
+     *
+     * @return The content-addressed store, if any, or null (default).
+     * @since 2.0.0
+     */
+    public ContentAddressedStore getContentAddressedStore() {
+        return contentAddressedStore;
+    }
+
+    /**
+     * Gets the resolver for the items final destinations, if any, or null.
+     *
+     * @return The destination resolver, or null (default).
+     * @since 2.0.0
+     */
+    public DestinationResolver getDestinationResolver() {
+        return destinationResolver;
+    }
+
+    /**
+     * Gets the digest algorithms, which are computed while the items are being written.
+     *
+     * @return The digest algorithms.
+     * @since 2.0.0
+     */
+    public String[] getDigestAlgorithms() {
+        return digestAlgorithms.clone();
+    }
+
+    /**
+     * Gets the size, above which temporary files are written with direct I/O, or -1.
+     *
+     * @return The direct I/O threshold, in bytes, or -1 (default), if direct I/O is disabled.
+     * @since 2.0.0
+     */
+    public long getDirectIoThreshold() {
+        return directIoThreshold;
+    }
+
+    /**
+     * Gets the segment store, if any, or null.
+     *
+     * @return The segment store, if any, or null (default).
+     * @since 2.0.0
+     */
+    public SegmentFileStore getSegmentFileStore() {
+        return segmentFileStore;
+    }
+
+    /**
+     * Gets the spill tiers, which are used before the repository.
+     *
+     * @return The spill tiers, in the order of preference.
+     * @since 2.0.0
+     */
+    public SpillTier[] getSpillTiers() {
+        return spillTiers.clone();
+    }
+
     /**
      * Gets the size threshold beyond which files are written directly to disk. The default value is {@value #DEFAULT_THRESHOLD} bytes.
      *
@@ -276,4 +708,34 @@ public final class DiskFileItemFactory implements FileItemFactory<DiskFileItem>
     public int getThreshold() {
         return threshold;
     }
+
+    /**
+     * Tests, whether temporary files are being compressed.
+     *
+     * @return True, if temporary files are being compressed, otherwise false (default).
+     * @since 2.0.0
+     */
+    public boolean isSpillCompression() {
+        return spillCompression;
+    }
+
+    /**
+     * Tests, whether temporary files are being encrypted.
+     *
+     * @return True, if temporary files are being encrypted, otherwise false (default).
+     * @since 2.0.0
+     */
+    public boolean isSpillEncryption() {
+        return spillEncryption;
+    }
+
+    /**
+     * Tests, whether {@code Content-MD5} headers are being verified.
+     *
+     * @return True, if {@code Content-MD5} headers are being verified, otherwise false (default).
+     * @since 2.0.0
+     */
+    public boolean isVerifyContentMd5() {
+        return verifyContentMd5;
+    }
 }
@@ -100,6 +100,19 @@ public interface FileItem<F extends FileItem<F>> extends FileItemHeadersProvider
      */
     OutputStream getOutputStream() throws IOException;
 
+    /**
+     * Gets the parsed content type passed by the agent.
+     * <p>
+     * The default implementation parses the content type on every call. Implementations are encouraged to cache the result.
+     * </p>
+     *
+     * @return The parsed content type passed by the agent or {@code null} if not defined.
+     * @since 2.0.0
+     */
+    default ContentType getParsedContentType() {
+        return ContentType.parse(getContentType());
+    }
+
     /**
      * Gets the size of the file item.
      *
@@ -126,6 +139,20 @@ public interface FileItem<F extends FileItem<F>> extends FileItemHeadersProvider
      */
     String getString(Charset toCharset) throws IOException;
 
+    /**
+     * Tests, whether the item has been committed to a final destination, which the item doesn't own. A committed item is kept by {@link #delete()}, and by
+     * the containers, which delete their items, like {@link UploadResult}, or {@link LazyParameterMap}.
+     * <p>
+     * The default implementation returns false.
+     * </p>
+     *
+     * @return True, if the item has been committed to a final destination, otherwise false.
+     * @since 2.0.0
+     */
+    default boolean isCommitted() {
+        return false;
+    }
+
     /**
      * Tests whether or not a {@code FileItem} instance represents a simple form field.
      *
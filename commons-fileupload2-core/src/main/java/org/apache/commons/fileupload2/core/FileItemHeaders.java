@@ -31,6 +31,32 @@ public interface FileItemHeaders {
      */
     void addHeader(String name, String value);
 
+    /**
+     * Gets the parsed value of the {@code Content-Disposition} header.
+     * <p>
+     * The default implementation parses the header on every call. Implementations are encouraged to cache the result.
+     * </p>
+     *
+     * @return The parsed {@code Content-Disposition} header, or {@code null}, if the item does not have such a header.
+     * @since 2.0.0
+     */
+    default ContentDisposition getContentDisposition() {
+        return ContentDisposition.parse(getHeader(AbstractFileUpload.CONTENT_DISPOSITION));
+    }
+
+    /**
+     * Gets the parsed value of the {@code Content-Type} header.
+     * <p>
+     * The default implementation parses the header on every call. Implementations are encouraged to cache the result.
+     * </p>
+     *
+     * @return The parsed {@code Content-Type} header, or {@code null}, if the item does not have such a header.
+     * @since 2.0.0
+     */
+    default ContentType getParsedContentType() {
+        return ContentType.parse(getHeader(AbstractFileUpload.CONTENT_TYPE));
+    }
+
     /**
      * Gets the value of the specified part header as a {@code String}.
      * <p>
@@ -29,11 +29,31 @@ import java.util.Map;
  */
 class FileItemHeadersImpl implements FileItemHeaders {
 
+    /**
+     * The lower case name of the {@code Content-Disposition} header.
+     */
+    private static final String CONTENT_DISPOSITION_KEY = AbstractFileUpload.CONTENT_DISPOSITION.toLowerCase(Locale.ROOT);
+
+    /**
+     * The lower case name of the {@code Content-Type} header.
+     */
+    private static final String CONTENT_TYPE_KEY = AbstractFileUpload.CONTENT_TYPE.toLowerCase(Locale.ROOT);
+
     /**
      * Map of {@code String} keys to a {@code List} of {@code String} instances.
      */
     private final Map<String, List<String>> headerNameToValueListMap = new LinkedHashMap<>();
 
+    /**
+     * The parsed {@code Content-Disposition} header, if it has been requested already, otherwise null.
+     */
+    private volatile ContentDisposition contentDisposition;
+
+    /**
+     * The parsed {@code Content-Type} header, if it has been requested already, otherwise null.
+     */
+    private volatile ContentType contentType;
+
     /**
      * Method to add header values to this instance.
      *
@@ -42,7 +62,49 @@ class FileItemHeadersImpl implements FileItemHeaders {
      */
     @Override
     public synchronized void addHeader(final String name, final String value) {
-        headerNameToValueListMap.computeIfAbsent(toLowerCase(name), k -> new ArrayList<>()).add(value);
+        final var key = toLowerCase(name);
+        headerNameToValueListMap.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        if (CONTENT_DISPOSITION_KEY.equals(key)) {
+            contentDisposition = null;
+        } else if (CONTENT_TYPE_KEY.equals(key)) {
+            contentType = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentDisposition getContentDisposition() {
+        var result = contentDisposition;
+        if (result == null) {
+            result = FileItemHeaders.super.getContentDisposition();
+            contentDisposition = result;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ContentType getParsedContentType() {
+        var result = contentType;
+        if (result == null) {
+            result = FileItemHeaders.super.getParsedContentType();
+            contentType = result;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given {@code Content-Disposition} header, which has been parsed already, so that it isn't parsed again.
+     *
+     * @param disposition The header.
+     */
+    synchronized void addContentDisposition(final ContentDisposition disposition) {
+        addHeader(AbstractFileUpload.CONTENT_DISPOSITION, disposition.toString());
+        contentDisposition = disposition;
     }
 
     /**
@@ -18,8 +18,18 @@ package org.apache.commons.fileupload2.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.commons.fileupload2.core.FileItemFactory.AbstractFileItemBuilder;
+import org.apache.commons.io.function.IOConsumer;
 import org.apache.commons.io.input.BoundedInputStream;
 
 /**
@@ -27,6 +37,245 @@ import org.apache.commons.io.input.BoundedInputStream;
  */
 class FileItemInputImpl implements FileItemInput {
 
+    /**
+     * An {@link InputStream}, which passes the items body to the {@link PartInspector part inspectors}, while it is being read. If an inspector fails, then
+     * the item is aborted.
+     */
+    private final class InspectingInputStream extends InputStream {
+
+        /**
+         * The stream, which is reading the items body.
+         */
+        private final InputStream in;
+
+        /**
+         * The stream, which is reading the multipart data, and which is closed, if an inspector fails.
+         */
+        private final MultipartInput.ItemInputStream itemInputStream;
+
+        /**
+         * The inspectors.
+         */
+        private final List<PartInspector> inspectors;
+
+        /**
+         * True, if the inspectors have been notified about the beginning of the body.
+         */
+        private boolean begun;
+
+        /**
+         * True, if the inspectors have been notified about the end of the body.
+         */
+        private boolean ended;
+
+        /**
+         * Creates a new instance.
+         * @param in The stream, which is reading the items body.
+         * @param itemInputStream The stream, which is reading the multipart data.
+         * @param inspectors The inspectors.
+         */
+        InspectingInputStream(final InputStream in, final MultipartInput.ItemInputStream itemInputStream, final List<PartInspector> inspectors) {
+            this.in = in;
+            this.itemInputStream = itemInputStream;
+            this.inspectors = inspectors;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Passes the given notification to all inspectors. If an inspector fails, then the item is aborted.
+         * @param notification The notification.
+         * @throws IOException An inspector failed, or vetoed the part.
+         */
+        private void inspect(final IOConsumer<PartInspector> notification) throws IOException {
+            try {
+                for (final PartInspector inspector : inspectors) {
+                    notification.accept(inspector);
+                }
+            } catch (final IOException e) {
+                itemInputStream.close(true);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buffer = new byte[1];
+            final int res = read(buffer, 0, 1);
+            return res == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!begun) {
+                begun = true;
+                inspect(inspector -> inspector.begin(headers));
+            }
+            final int res = in.read(buffer, offset, length);
+            if (res > 0) {
+                inspect(inspector -> inspector.update(buffer, offset, res));
+            } else if (res == -1 && !ended) {
+                ended = true;
+                inspect(PartInspector::end);
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Decodes the given stream with the given content coding.
+     *
+     * @param in     The stream, which is reading the encoded data.
+     * @param coding The content coding, one of {@code gzip}, {@code x-gzip}, or {@code deflate}.
+     * @return A stream, which is reading the decoded data.
+     * @throws IOException Reading the header of the encoded data failed.
+     */
+    private static InputStream decode(final InputStream in, final String coding) throws IOException {
+        final var pushbackInputStream = new PushbackInputStream(in, 2);
+        final byte[] header = new byte[2];
+        final int length = pushbackInputStream.readNBytes(header, 0, 2);
+        if (length == 0) {
+            // An empty part has no header, and is decoded as empty.
+            return pushbackInputStream;
+        }
+        pushbackInputStream.unread(header, 0, length);
+        if (!"deflate".equals(coding)) {
+            return new GZIPInputStream(pushbackInputStream);
+        }
+        // "deflate" is defined as the zlib format, but some clients send raw deflate data.
+        final int cmf = header[0] & 0xff;
+        if (length == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) + (header[1] & 0xff)) % 31 == 0) {
+            return new InflaterInputStream(pushbackInputStream);
+        }
+        final var inflater = new Inflater(true);
+        return new InflaterInputStream(pushbackInputStream, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Decodes the given stream with the given content codings.
+     *
+     * @param in      The stream, which is reading the encoded data.
+     * @param codings The content codings, in the order, in which they must be decoded (which is the reverse order of the header value).
+     * @return A stream, which is reading the decoded data.
+     * @throws IOException Reading the header of the encoded data failed.
+     */
+    private static InputStream decode(final InputStream in, final List<String> codings) throws IOException {
+        InputStream result = in;
+        for (final String coding : codings) {
+            result = decode(result, coding);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the given stream with the given transfer encoding, and then with the given content codings.
+     *
+     * @param in               The stream, which is reading the encoded data.
+     * @param transferEncoding The transfer encoding, one of {@code base64}, or {@code quoted-printable}, or null.
+     * @param codings          The content codings, in the order, in which they must be decoded, or null.
+     * @return A stream, which is reading the decoded data.
+     * @throws IOException Reading the header of the encoded data failed.
+     */
+    private static InputStream decode(final InputStream in, final String transferEncoding, final List<String> codings) throws IOException {
+        InputStream result = in;
+        if ("base64".equals(transferEncoding)) {
+            // The MIME decoder ignores line breaks.
+            result = Base64.getMimeDecoder().wrap(result);
+        } else if ("quoted-printable".equals(transferEncoding)) {
+            result = QuotedPrintableDecoder.newInputStream(result);
+        }
+        return codings == null ? result : decode(result, codings);
+    }
+
+    /**
+     * Parses the value of a {@code Content-Encoding} header.
+     *
+     * @param contentEncoding The header value.
+     * @return The content codings, in the order, in which they must be decoded (which is the reverse order of the header value), without
+     *         {@code identity}, or null, if any of the content codings is not supported.
+     */
+    static List<String> getContentCodings(final String contentEncoding) {
+        final List<String> codings = new ArrayList<>();
+        for (final String token : contentEncoding.split(",")) {
+            final var coding = token.trim().toLowerCase(Locale.ROOT);
+            switch (coding) {
+            case "":
+            case "identity":
+                break;
+            case "gzip":
+            case "x-gzip":
+            case "deflate":
+                codings.add(0, coding);
+                break;
+            default:
+                return null;
+            }
+        }
+        return codings;
+    }
+
+    /**
+     * Parses the value of a {@code Content-Transfer-Encoding} header.
+     *
+     * @param contentTransferEncoding The header value.
+     * @return The transfer encoding ({@code base64}, or {@code quoted-printable}), or null, if the part isn't encoded ({@code 7bit}, {@code 8bit}, or
+     *         {@code binary}), or if the transfer encoding is not supported.
+     */
+    static String getTransferEncoding(final String contentTransferEncoding) {
+        final var transferEncoding = contentTransferEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (transferEncoding) {
+        case "base64":
+        case "quoted-printable":
+            return transferEncoding;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns a copy of the given headers without the headers, which describe the encoded data only.
+     *
+     * @param headers                 The parts headers.
+     * @param decodedContentCodings   True, if the content codings have been decoded.
+     * @param decodedTransferEncoding True, if the transfer encoding has been decoded.
+     * @return The headers of the decoded item.
+     */
+    private static FileItemHeaders removeDecodedHeaders(final FileItemHeaders headers, final boolean decodedContentCodings,
+            final boolean decodedTransferEncoding) {
+        final var result = AbstractFileItemBuilder.newFileItemHeaders();
+        for (final var names = headers.getHeaderNames(); names.hasNext();) {
+            final var name = names.next();
+            // The Content-MD5 digest covers the content coded entity, but not the transfer encoding (RFC 1864).
+            if (AbstractFileUpload.CONTENT_LENGTH.equalsIgnoreCase(name)
+                    || decodedContentCodings && (AbstractFileUpload.CONTENT_ENCODING.equalsIgnoreCase(name) || DiskFileItem.CONTENT_MD5.equalsIgnoreCase(name))
+                    || decodedTransferEncoding && AbstractFileUpload.CONTENT_TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                continue;
+            }
+            headers.getHeaders(name).forEachRemaining(value -> result.addHeader(name, value));
+        }
+        return result;
+    }
+
     /**
      * The File Item iterator implementation.
      *
@@ -69,6 +318,16 @@ class FileItemInputImpl implements FileItemInput {
      */
     private FileItemHeaders headers;
 
+    /**
+     * True, if the items content codings are being decoded.
+     */
+    private final boolean decodedContentCodings;
+
+    /**
+     * True, if the items transfer encoding is being decoded.
+     */
+    private final boolean decodedTransferEncoding;
+
     /**
      * Creates a new instance.
      *
@@ -78,17 +337,20 @@ class FileItemInputImpl implements FileItemInput {
      * @param contentType      The items content type, or null.
      * @param formField        Whether the item is a form field.
      * @param contentLength    The items content length, if known, or -1
+     * @param fileSizeMax      The maximum size of the item, or -1.
+     * @param contentEncoding  The items content encoding, if it is being decoded, or null.
+     * @param contentTransferEncoding The items content transfer encoding, if it is being decoded, or null.
      * @throws IOException         Creating the file item failed.
      * @throws FileUploadException Parsing the incoming data stream failed.
      */
     FileItemInputImpl(final FileItemInputIteratorImpl fileItemIterator, final String fileName, final String fieldName, final String contentType,
-            final boolean formField, final long contentLength) throws FileUploadException, IOException {
+            final boolean formField, final long contentLength, final long fileSizeMax, final String contentEncoding, final String contentTransferEncoding)
+            throws FileUploadException, IOException {
         this.fileItemInputIteratorImpl = fileItemIterator;
         this.fileName = fileName;
         this.fieldName = fieldName;
         this.contentType = contentType;
         this.formField = formField;
-        final var fileSizeMax = fileItemInputIteratorImpl.getFileSizeMax();
         if (fileSizeMax != -1 && contentLength != -1 && contentLength > fileSizeMax) {
             throw new FileUploadByteCountLimitException(String.format("The field %s exceeds its maximum permitted size of %s bytes.", fieldName, fileSizeMax),
                     contentLength, fileSizeMax, fileName, fieldName);
@@ -114,6 +376,34 @@ class FileItemInputImpl implements FileItemInput {
             // @formatter:on
 
         }
+        final List<String> codings = contentEncoding == null ? null : getContentCodings(contentEncoding);
+        final String transferEncoding = contentTransferEncoding == null ? null : getTransferEncoding(contentTransferEncoding);
+        this.decodedContentCodings = codings != null && !codings.isEmpty();
+        this.decodedTransferEncoding = transferEncoding != null;
+        if (decodedTransferEncoding || decodedContentCodings) {
+            // The transfer encoding is the outer layer, so it is decoded first.
+            istream = new DecodingInputStream(istream, in -> decode(in, transferEncoding, codings));
+            if (fileSizeMax != -1) {
+                // Enforce the limit on the decoded data, too, so that a small part can't expand into a huge file.
+                // @formatter:off
+                istream = BoundedInputStream.builder()
+                    .setInputStream(istream)
+                    .setMaxCount(fileSizeMax + 1)
+                    .setOnMaxCount((max, count) -> {
+                        itemInputStream.close(true);
+                        throw new FileUploadByteCountLimitException(
+                                String.format("The decoded field %s exceeds its maximum permitted size of %s bytes.", fieldName, fileSizeMax), count,
+                                fileSizeMax, fileName, fieldName);
+                    })
+                    .get();
+                // @formatter:on
+            }
+        }
+        final var inspectors = fileItemInputIteratorImpl.newPartInspectors();
+        if (!inspectors.isEmpty()) {
+            // Inspect the data, as it is stored, that is, after decoding.
+            istream = new InspectingInputStream(istream, itemInputStream, inspectors);
+        }
         this.inputStream = istream;
     }
 
@@ -194,13 +484,16 @@ class FileItemInputImpl implements FileItemInput {
     }
 
     /**
-     * Sets the file item headers.
+     * Sets the file item headers. If the item is being decoded, then the headers, which describe the encoded data only ({@code Content-Length},
+     * {@code Content-Encoding}, {@code Content-Transfer-Encoding}, and, after content decoding, {@code Content-MD5}) are removed.
      *
      * @param headers The items header object
      */
     @Override
     public FileItemInputImpl setHeaders(final FileItemHeaders headers) {
-        this.headers = headers;
+        this.headers = headers != null && (decodedContentCodings || decodedTransferEncoding)
+                ? removeDecodedHeaders(headers, decodedContentCodings, decodedTransferEncoding)
+                : headers;
         return this;
     }
 
@@ -18,8 +18,11 @@ package org.apache.commons.fileupload2.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Locale;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
@@ -82,6 +85,16 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
      */
     private byte[] multiPartBoundary;
 
+    /**
+     * The request body, which is closed, if the iterator is abandoned.
+     */
+    private InputStream input;
+
+    /**
+     * The charset of the parts headers.
+     */
+    private Charset headerCharset;
+
     /**
      * The item, which we currently process.
      */
@@ -131,6 +144,20 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
         findNextItem();
     }
 
+    /**
+     * Abandons the remaining parts: The request body is closed without reading it, and no more items are returned.
+     *
+     * @throws IOException Closing the request body failed.
+     */
+    void abandon() throws IOException {
+        eof = true;
+        itemValid = false;
+        currentItem = null;
+        if (input != null) {
+            input.close();
+        }
+    }
+
     private void checkMaxFileCount() throws FileUploadFileCountLimitException {
         if (curFileCount == maxFileCount) {
             throw new FileUploadFileCountLimitException(String.format("Maximum file count %,d exceeded.", maxFileCount), maxFileCount, curFileCount);
@@ -170,11 +197,16 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
                 currentFieldName = null;
                 continue;
             }
-            final var headers = fileUpload.getParsedHeaders(multi.readHeaders());
+            final var headers = fileUpload.getParsedHeaders(multi.readHeaderBytes(), headerCharset);
             if (multipartRelated) {
+                if (!fileUpload.isAccepted(null, null, headers.getParsedContentType())) {
+                    multi.discardBodyData();
+                    continue;
+                }
                 checkMaxFileCount();
                 currentFieldName = "";
-                currentItem = new FileItemInputImpl(this, null, null, headers.getHeader(AbstractFileUpload.CONTENT_TYPE), false, getContentLength(headers));
+                currentItem = new FileItemInputImpl(this, null, null, headers.getHeader(AbstractFileUpload.CONTENT_TYPE), false, getContentLength(headers),
+                        getFileSizeMax(null, headers), getContentEncoding(headers), getContentTransferEncoding(headers));
                 itemValid(headers);
                 return true;
             }
@@ -182,8 +214,13 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
                 // We're parsing the outer multipart
                 final var fieldName = fileUpload.getFieldName(headers);
                 if (fieldName != null) {
-                    final var subContentType = headers.getHeader(AbstractFileUpload.CONTENT_TYPE);
-                    if (subContentType != null && subContentType.toLowerCase(Locale.ROOT).startsWith(AbstractFileUpload.MULTIPART_MIXED)) {
+                    final var subContentType = headers.getParsedContentType();
+                    final var fileName = fileUpload.getFileName(headers);
+                    if (!fileUpload.isAccepted(fieldName, fileName, subContentType)) {
+                        multi.discardBodyData();
+                        continue;
+                    }
+                    if (subContentType != null && subContentType.getMimeType().startsWith(AbstractFileUpload.MULTIPART_MIXED)) {
                         currentFieldName = fieldName;
                         // Multiple files associated with this field name
                         final var subBoundary = fileUpload.getBoundary(subContentType);
@@ -195,18 +232,18 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
                         continue;
                     }
                     checkMaxFileCount();
-                    final var fileName = fileUpload.getFileName(headers);
                     currentItem = new FileItemInputImpl(this, fileName, fieldName, headers.getHeader(AbstractFileUpload.CONTENT_TYPE), fileName == null,
-                            getContentLength(headers));
+                            getContentLength(headers), getFileSizeMax(fieldName, headers), getContentEncoding(headers), getContentTransferEncoding(headers));
                     itemValid(headers);
                     return true;
                 }
             } else {
                 final var fileName = fileUpload.getFileName(headers);
-                if (fileName != null) {
+                if (fileName != null && fileUpload.isAccepted(currentFieldName, fileName, headers.getParsedContentType())) {
                     checkMaxFileCount();
                     currentItem = new FileItemInputImpl(this, fileName, currentFieldName, headers.getHeader(AbstractFileUpload.CONTENT_TYPE), false,
-                            getContentLength(headers));
+                            getContentLength(headers), getFileSizeMax(currentFieldName, headers), getContentEncoding(headers),
+                            getContentTransferEncoding(headers));
                     itemValid(headers);
                     return true;
                 }
@@ -215,6 +252,28 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
         }
     }
 
+    /**
+     * Returns the parts content encoding, if it is being decoded.
+     *
+     * @param headers The parts headers.
+     * @return The value of the {@code Content-Encoding} header, if decoding is enabled, otherwise null.
+     * @see AbstractFileUpload#setDecodeContentEncoding(boolean)
+     */
+    private String getContentEncoding(final FileItemHeaders headers) {
+        return fileUpload.isDecodeContentEncoding() ? headers.getHeader(AbstractFileUpload.CONTENT_ENCODING) : null;
+    }
+
+    /**
+     * Returns the parts content transfer encoding, if it is being decoded.
+     *
+     * @param headers The parts headers.
+     * @return The value of the {@code Content-Transfer-Encoding} header, if decoding is enabled, otherwise null.
+     * @see AbstractFileUpload#setDecodeContentTransferEncoding(boolean)
+     */
+    private String getContentTransferEncoding(final FileItemHeaders headers) {
+        return fileUpload.isDecodeContentTransferEncoding() ? headers.getHeader(AbstractFileUpload.CONTENT_TRANSFER_ENCODING) : null;
+    }
+
     private long getContentLength(final FileItemHeaders headers) {
         try {
             return Long.parseLong(headers.getHeader(AbstractFileUpload.CONTENT_LENGTH));
@@ -228,6 +287,19 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
         return maxFileSize;
     }
 
+    /**
+     * Returns the maximum size of a part, which is chosen by the first matching {@link PartPolicy}, or {@link #getFileSizeMax()}.
+     *
+     * @param fieldName The parts field name, or null.
+     * @param headers   The parts headers.
+     * @return The maximum size of the part, or -1.
+     * @see AbstractFileUpload#addPartPolicy(PartPolicy)
+     */
+    private long getFileSizeMax(final String fieldName, final FileItemHeaders headers) {
+        final var partPolicy = fileUpload.getPartPolicy(fieldName, headers);
+        return partPolicy == null || partPolicy.getMaxFileSize() == -1 ? maxFileSize : partPolicy.getMaxFileSize();
+    }
+
     public MultipartInput getMultiPartInput() throws FileUploadException, IOException {
         if (multiPartInput == null) {
             init(fileUpload, requestContext);
@@ -259,8 +331,9 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
     }
 
     protected void init(final AbstractFileUpload<?, ?, ?> fileUpload, final RequestContext initContext) throws FileUploadException, IOException {
+        final var parsedContentType = requestContext.getParsedContentType();
         final var contentType = requestContext.getContentType();
-        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith(AbstractFileUpload.MULTIPART)) {
+        if (parsedContentType == null || !parsedContentType.isMultipart()) {
             throw new FileUploadContentTypeException(String.format("the request doesn't contain a %s or %s stream, content type header is %s",
                     AbstractFileUpload.MULTIPART_FORM_DATA, AbstractFileUpload.MULTIPART_MIXED, contentType), contentType);
         }
@@ -294,8 +367,9 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
             inputStream = requestContext.getInputStream();
         }
 
+        input = inputStream;
         final var charset = Charsets.toCharset(fileUpload.getHeaderCharset(), requestContext.getCharset());
-        multiPartBoundary = fileUpload.getBoundary(contentType);
+        multiPartBoundary = fileUpload.getBoundary(parsedContentType);
         if (multiPartBoundary == null) {
             IOUtils.closeQuietly(inputStream); // avoid possible resource leak
             throw new FileUploadException("the request was rejected because no multipart boundary was found");
@@ -314,6 +388,22 @@ class FileItemInputIteratorImpl implements FileItemInputIterator {
             throw new FileUploadContentTypeException(String.format("The boundary specified in the %s header is too long", AbstractFileUpload.CONTENT_TYPE), e);
         }
         multiPartInput.setHeaderCharset(charset);
+        headerCharset = Charsets.toCharset(charset);
+    }
+
+    /**
+     * Creates the inspectors for the next part.
+     *
+     * @return The inspectors, which have been registered with {@link AbstractFileUpload#addPartInspector(java.util.function.Supplier)}, possibly empty.
+     */
+    List<PartInspector> newPartInspectors() {
+        final var suppliers = fileUpload.getPartInspectors();
+        if (suppliers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<PartInspector> inspectors = new ArrayList<>(suppliers.size());
+        suppliers.forEach(supplier -> inspectors.add(Objects.requireNonNull(supplier.get(), "PartInspector")));
+        return inspectors;
     }
 
     private void itemValid(final FileItemHeaders headers) {
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+/**
+ * Signals that the digest of an uploaded item doesn't match the digest, which has been sent by the client, for example in a {@code Content-MD5} header.
+ *
+ * @since 2.0.0
+ */
+public class FileUploadDigestException extends FileUploadException {
+
+    /**
+     * The exceptions UID, for serializing an instance.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * The digest algorithm.
+     */
+    private final String algorithm;
+
+    /**
+     * Constructs an instance with the specified detail message.
+     *
+     * @param message   The detail message (which is saved for later retrieval by the {@link #getMessage()} method)
+     * @param algorithm The digest algorithm, which has been used for verification.
+     */
+    public FileUploadDigestException(final String message, final String algorithm) {
+        super(message);
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Gets the digest algorithm, which has been used for verification.
+     *
+     * @return The digest algorithm.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+}
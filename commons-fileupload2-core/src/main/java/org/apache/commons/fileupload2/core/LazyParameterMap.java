@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.io.function.IOBiConsumer;
+
+/**
+ * A map of the items of a request, grouped by field name, which is parsed lazily by {@link AbstractFileUpload#parseLazyParameterMap(RequestContext)}.
+ * <p>
+ * The request is parsed only as far as necessary for answering a query: {@link #get(Object)}, and {@link #containsKey(Object)} stop parsing, as soon as
+ * the first part with the requested field name has been stored. Parts, which precede the requested part, are stored as usual, so that they can be
+ * requested later on. Methods, which need all items, like {@link #entrySet()}, or {@link #size()}, parse the complete request. A list, which has been
+ * returned by {@link #get(Object)}, grows, if more parts with the same field name are parsed later on.
+ * </p>
+ * <p>
+ * This allows to reject a request cheaply, for example, if a CSRF token, which precedes the files, is invalid. The map owns its items: Closing the map
+ * abandons the rest of the request, without reading it, and deletes all items, which have been stored. Items, which are to be kept, must be moved to their
+ * destination, using {@link FileItem#write(java.nio.file.Path)}, before the map is closed. Items, which have been streamed to their final destination
+ * (see {@link FileItem#isCommitted()}), are kept. Use {@link #drain()} to skip the rest of the request, for
+ * example, to keep the connection alive. Typical use:
+ * </p>
+ *
+ * <pre>{@code
+ * try (LazyParameterMap<DiskFileItem> parameters = upload.parseLazyParameterMap(request)) {
+ *     List<DiskFileItem> token = parameters.get("csrf");
+ *     if (token == null || !isValid(token.get(0).getString())) {
+ *         return; // The files are never read.
+ *     }
+ *     for (DiskFileItem item : parameters.get("file")) {
+ *         item.write(destination.resolve(...));
+ *     }
+ * }
+ * }
+ * </pre>
+ * <p>
+ * Instances are not thread-safe. Parsing errors are thrown as an {@link UncheckedIOException}, which wraps the {@link FileUploadException}.
+ * </p>
+ *
+ * @param <I> The FileItem type.
+ * @since 2.0.0
+ */
+public final class LazyParameterMap<I extends FileItem<I>> extends AbstractMap<String, List<I>> implements AutoCloseable {
+
+    /**
+     * The iterator over the parts.
+     */
+    private final FileItemInputIterator iterator;
+
+    /**
+     * Converts a part into items, and adds them to a list.
+     */
+    private final IOBiConsumer<FileItemInput, List<I>> itemParser;
+
+    /**
+     * The executor, which deletes the items, or null to delete them on the closing thread.
+     */
+    private final Executor cleanupExecutor;
+
+    /**
+     * The items, which have been stored, in the order that they were transmitted.
+     */
+    private final List<I> items = new ArrayList<>();
+
+    /**
+     * The items, which have been stored, grouped by field name.
+     */
+    private final Map<String, List<I>> parameters = new LinkedHashMap<>();
+
+    /**
+     * True, if no more parts are available, because the request has been parsed completely, drained, or abandoned.
+     */
+    private boolean complete;
+
+    /**
+     * True, if the map has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param iterator        The iterator over the parts.
+     * @param itemParser      Converts a part into items, and adds them to a list.
+     * @param cleanupExecutor The executor, which deletes the items, or null to delete them on the closing thread.
+     */
+    LazyParameterMap(final FileItemInputIterator iterator, final IOBiConsumer<FileItemInput, List<I>> itemParser, final Executor cleanupExecutor) {
+        this.iterator = iterator;
+        this.itemParser = itemParser;
+        this.cleanupExecutor = cleanupExecutor;
+    }
+
+    /**
+     * Checks, whether the map is open.
+     *
+     * @throws IllegalStateException The map has been closed.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("This map has already been closed.");
+        }
+    }
+
+    /**
+     * Abandons the rest of the request, and deletes all items, which have been stored, except for the committed ones (see {@link FileItem#isCommitted()}).
+     * Does nothing, if the map has already been closed.
+     *
+     * @throws IOException Closing the request body, or deleting an item failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!complete) {
+                complete = true;
+                if (iterator instanceof FileItemInputIteratorImpl) {
+                    ((FileItemInputIteratorImpl) iterator).abandon();
+                }
+            }
+        } finally {
+            new UploadResult<>(items, cleanupExecutor).close();
+        }
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Skips the rest of the request. The remaining parts are read, and discarded, without storing them.
+     *
+     * @throws FileUploadException Parsing the request failed.
+     * @throws IOException         Reading the request failed.
+     * @throws IllegalStateException The map has been closed.
+     */
+    public void drain() throws IOException {
+        checkOpen();
+        try {
+            while (!complete && iterator.hasNext()) {
+                // The iterator discards the body of the previous part, when moving to the next.
+                iterator.next();
+            }
+        } finally {
+            complete = true;
+        }
+    }
+
+    @Override
+    public Set<Entry<String, List<I>>> entrySet() {
+        while (parseNext()) {
+            // Parse the complete request.
+        }
+        return Collections.unmodifiableMap(parameters).entrySet();
+    }
+
+    /**
+     * Returns the list of items with the given field name, parsing the request, until the first such item has been stored.
+     *
+     * @param key The field name.
+     * @return The list of items, or null, if the request doesn't contain the field.
+     */
+    private List<I> find(final Object key) {
+        checkOpen();
+        var list = parameters.get(key);
+        while (list == null && key instanceof String && parseNext()) {
+            list = parameters.get(key);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the items with the given field name, parsing the request, until the first such item has been stored.
+     *
+     * @param key The field name.
+     * @return An unmodifiable view of the items with the given field name, which grows, if more such items are parsed later on, or null, if the request
+     *         doesn't contain the field.
+     * @throws UncheckedIOException Parsing the request failed.
+     * @throws IllegalStateException The map has been closed.
+     */
+    @Override
+    public List<I> get(final Object key) {
+        final var list = find(key);
+        return list == null ? null : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the items, which have been stored so far, in the order that they were transmitted.
+     *
+     * @return An unmodifiable view of the stored items.
+     */
+    public List<I> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Tests, whether the request has been parsed completely, drained, or abandoned.
+     *
+     * @return True, if no more parts will be parsed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Parses the next part, and stores its items.
+     *
+     * @return True, if a part has been parsed, false, if no more parts are available.
+     * @throws UncheckedIOException Parsing the request failed.
+     */
+    private boolean parseNext() {
+        checkOpen();
+        if (complete) {
+            return false;
+        }
+        try {
+            if (!iterator.hasNext()) {
+                complete = true;
+                return false;
+            }
+            final var from = items.size();
+            itemParser.accept(iterator.next(), items);
+            for (final I item : items.subList(from, items.size())) {
+                parameters.computeIfAbsent(item.getFieldName(), k -> new ArrayList<>()).add(item);
+            }
+            return true;
+        } catch (final IOException e) {
+            complete = true;
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -19,18 +19,167 @@ package org.apache.commons.fileupload2.core;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 import java.text.ParseException;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class to decode MIME texts.
  */
 final class MimeUtils {
 
+    /**
+     * A buffer for decoding the encoded words of a text. The buffer is reused for all words of the text, and the words are decoded in place, without
+     * creating substrings. The charset of the previous word is remembered, because the encoded words of a long text typically share their charset.
+     */
+    private static final class WordDecoder extends ByteArrayOutputStream {
+
+        /**
+         * The encoded text of the current word, as ASCII bytes.
+         */
+        private byte[] encoded;
+
+        /**
+         * The MIME name of the previous words charset, in lower case, or null.
+         */
+        private String charsetName;
+
+        /**
+         * The previous words charset, or null.
+         */
+        private Charset charset;
+
+        private WordDecoder(final int size) {
+            super(size);
+            encoded = new byte[size];
+        }
+
+        /**
+         * Decodes the given range of base64 data, and appends the result to the buffer. Characters outside of the base64 alphabet are ignored, like they
+         * are by {@link java.util.Base64#getMimeDecoder()}.
+         *
+         * @param data   The base64 data.
+         * @param length The number of bytes to decode.
+         * @throws IllegalArgumentException The data isn't valid base64.
+         */
+        private void decodeBase64(final byte[] data, final int length) {
+            ensureCapacity(count + length / 4 * 3 + 2);
+            var bits = 0;
+            var n = 0;
+            var i = 0;
+            while (i < length) {
+                final var c = data[i++];
+                if (c == '=') {
+                    // Padding must complete a unit of two, or three characters.
+                    if (n < 2 || n == 2 && (i == length || data[i++] != '=')) {
+                        throw new IllegalArgumentException("Invalid base64 padding");
+                    }
+                    break;
+                }
+                final int value = c < 0 ? -1 : BASE64_DECODE[c];
+                if (value < 0) {
+                    continue;
+                }
+                bits = bits << BASE64_BITS | value;
+                if (++n == 4) {
+                    buf[count++] = (byte) (bits >> 16);
+                    buf[count++] = (byte) (bits >> 8);
+                    buf[count++] = (byte) bits;
+                    bits = 0;
+                    n = 0;
+                }
+            }
+            while (i < length) {
+                final var c = data[i++];
+                if (c >= 0 && BASE64_DECODE[c] >= 0) {
+                    throw new IllegalArgumentException("Invalid base64 data after padding");
+                }
+            }
+            switch (n) {
+            case 0:
+                break;
+            case 2:
+                buf[count++] = (byte) (bits >> 4);
+                break;
+            case 3:
+                buf[count++] = (byte) (bits >> 10);
+                buf[count++] = (byte) (bits >> 2);
+                break;
+            default:
+                throw new IllegalArgumentException("Last unit does not have enough valid bits");
+            }
+        }
+
+        /**
+         * Decodes the given range of quoted printable data (RFC 2047), and appends the result to the buffer.
+         *
+         * @param data   The quoted printable data.
+         * @param length The number of bytes to decode.
+         * @throws IOException The data isn't valid quoted printable data.
+         */
+        private void decodeQuotedPrintable(final byte[] data, final int length) throws IOException {
+            ensureCapacity(count + length);
+            count += QuotedPrintableDecoder.decode(data, 0, length, buf, count);
+        }
+
+        /**
+         * Copies the given range of the text into {@link #encoded}. Non-ASCII characters are replaced with {@code '?'}.
+         *
+         * @param text  The text.
+         * @param start The index of the first character.
+         * @param end   The index after the last character.
+         * @return The number of bytes.
+         */
+        private int encode(final String text, final int start, final int end) {
+            final var length = end - start;
+            if (encoded.length < length) {
+                encoded = new byte[length];
+            }
+            for (var i = 0; i < length; i++) {
+                final var c = text.charAt(start + i);
+                encoded[i] = c < ASCII_CODE_POINT_COUNT ? (byte) c : (byte) '?';
+            }
+            return length;
+        }
+
+        /**
+         * Ensures, that the buffer can hold the given number of bytes.
+         *
+         * @param capacity The required capacity.
+         */
+        private void ensureCapacity(final int capacity) {
+            if (buf.length < capacity) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+            }
+        }
+
+        /**
+         * Returns the charset for the given range of the text, which holds a MIME charset name.
+         *
+         * @param text  The text.
+         * @param start The index of the first character.
+         * @param end   The index after the last character.
+         * @return The charset.
+         * @throws UnsupportedEncodingException The charset isn't supported.
+         */
+        private Charset getCharset(final String text, final int start, final int end) throws UnsupportedEncodingException {
+            final var length = end - start;
+            if (charsetName == null || charsetName.length() != length || !text.regionMatches(true, start, charsetName, 0, length)) {
+                final var name = text.substring(start, end).toLowerCase(Locale.ROOT);
+                charset = javaCharset(name);
+                charsetName = name;
+            }
+            return charset;
+        }
+    }
+
     /**
      * The marker to indicate text is encoded with BASE64 algorithm.
      */
@@ -56,22 +205,49 @@ final class MimeUtils {
      */
     private static final String LINEAR_WHITESPACE = " \t\r\n";
 
+    /**
+     * Number of ASCII code points.
+     */
+    private static final int ASCII_CODE_POINT_COUNT = 128;
+
+    /**
+     * The number of bits, which are encoded by a base64 character.
+     */
+    private static final int BASE64_BITS = 6;
+
+    /**
+     * The base64 decode values, one for each ASCII code point, or -1 for characters outside of the base64 alphabet.
+     */
+    private static final byte[] BASE64_DECODE = new byte[ASCII_CODE_POINT_COUNT];
+
     /**
      * Mappings between MIME and Java charset.
      */
     private static final Map<String, String> MIME2JAVA = new HashMap<>();
 
+    /**
+     * The charsets, which have been resolved so far, by lower case name. Only supported charsets are cached, so the size of the cache is bounded by the
+     * number of charset names, and aliases.
+     */
+    private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+
     static {
-        MIME2JAVA.put("iso-2022-cn", "ISO2022CN");
-        MIME2JAVA.put("iso-2022-kr", "ISO2022KR");
-        MIME2JAVA.put("utf-8", "UTF8");
-        MIME2JAVA.put("utf8", "UTF8");
-        MIME2JAVA.put("ja_jp.iso2022-7", "ISO2022JP");
-        MIME2JAVA.put("ja_jp.eucjp", "EUCJIS");
-        MIME2JAVA.put("euc-kr", "KSC5601");
-        MIME2JAVA.put("euckr", "KSC5601");
+        MIME2JAVA.put("iso-2022-cn", "ISO-2022-CN");
+        MIME2JAVA.put("iso-2022-kr", "ISO-2022-KR");
+        MIME2JAVA.put("utf-8", StandardCharsets.UTF_8.name());
+        MIME2JAVA.put("utf8", StandardCharsets.UTF_8.name());
+        MIME2JAVA.put("ja_jp.iso2022-7", "ISO-2022-JP");
+        MIME2JAVA.put("ja_jp.eucjp", "EUC-JP");
+        MIME2JAVA.put("euc-kr", "EUC-KR");
+        MIME2JAVA.put("euckr", "EUC-KR");
         MIME2JAVA.put("us-ascii", StandardCharsets.ISO_8859_1.name());
         MIME2JAVA.put("x-us-ascii", StandardCharsets.ISO_8859_1.name());
+
+        Arrays.fill(BASE64_DECODE, (byte) -1);
+        final var alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (var i = 0; i < alphabet.length(); i++) {
+            BASE64_DECODE[alphabet.charAt(i)] = (byte) i;
+        }
     }
 
     /**
@@ -99,6 +275,8 @@ final class MimeUtils {
 
         var previousTokenEncoded = false;
 
+        WordDecoder wordDecoder = null;
+
         while (offset < endOffset) {
             var ch = text.charAt(offset);
 
@@ -130,13 +308,14 @@ final class MimeUtils {
 
                     // NB: Trailing whitespace on these header strings will just be discarded.
                 }
-                // pull out the word token.
-                final var word = text.substring(wordStart, offset);
                 // is the token encoded? decode the word
-                if (word.startsWith(ENCODED_TOKEN_MARKER)) {
+                if (text.startsWith(ENCODED_TOKEN_MARKER, wordStart)) {
                     try {
+                        if (wordDecoder == null) {
+                            wordDecoder = new WordDecoder(offset - wordStart);
+                        }
                         // if this gives a parsing failure, treat it like a non-encoded word.
-                        final var decodedWord = decodeWord(word);
+                        final var decodedWord = decodeWord(text, wordStart, offset, wordDecoder);
 
                         // are any whitespace characters significant? Append 'em if we've got 'em.
                         if (!previousTokenEncoded && startWhiteSpace != -1) {
@@ -163,7 +342,7 @@ final class MimeUtils {
                 }
                 // this is not a decoded token.
                 previousTokenEncoded = false;
-                decodedText.append(word);
+                decodedText.append(text, wordStart, offset);
             }
         }
 
@@ -171,70 +350,62 @@ final class MimeUtils {
     }
 
     /**
-     * Decodes a string using the RFC 2047 rules for an "encoded-word" type. This encoding has the syntax:
+     * Decodes a range of a text using the RFC 2047 rules for an "encoded-word" type. This encoding has the syntax:
      *
      * encoded-word = "=?" charset "?" encoding "?" encoded-text "?="
      *
-     * @param word The possibly encoded word value.
+     * @param text        The text, which contains the possibly encoded word.
+     * @param start       The index of the words first character.
+     * @param end         The index after the words last character.
+     * @param wordDecoder The buffer, which is used for decoding.
      * @return The decoded word.
      * @throws ParseException               in case of a parse error of the RFC 2047.
      * @throws UnsupportedEncodingException Thrown when Invalid RFC 2047 encoding was found.
      */
-    private static String decodeWord(final String word) throws ParseException, UnsupportedEncodingException {
+    private static String decodeWord(final String text, final int start, final int end, final WordDecoder wordDecoder)
+            throws ParseException, UnsupportedEncodingException {
         // encoded words start with the characters "=?". If this not an encoded word, we throw a
         // ParseException for the caller.
-
-        final var etmPos = word.indexOf(ENCODED_TOKEN_MARKER);
-        if (etmPos != 0) {
-            throw new ParseException("Invalid RFC 2047 encoded-word: " + word, etmPos);
+        if (!text.startsWith(ENCODED_TOKEN_MARKER, start)) {
+            throw new ParseException("Invalid RFC 2047 encoded-word: " + text.substring(start, end), 0);
         }
 
-        final var charsetPos = word.indexOf('?', 2);
+        final var charsetPos = indexOf(text, '?', start + 2, end);
         if (charsetPos == -1) {
-            throw new ParseException("Missing charset in RFC 2047 encoded-word: " + word, charsetPos);
+            throw new ParseException("Missing charset in RFC 2047 encoded-word: " + text.substring(start, end), charsetPos);
         }
 
-        // pull out the character set information (this is the MIME name at this point).
-        final var charset = word.substring(2, charsetPos).toLowerCase(Locale.ROOT);
-
         // now pull out the encoding token the same way.
-        final var encodingPos = word.indexOf('?', charsetPos + 1);
+        final var encodingPos = indexOf(text, '?', charsetPos + 1, end);
         if (encodingPos == -1) {
-            throw new ParseException("Missing encoding in RFC 2047 encoded-word: " + word, encodingPos);
+            throw new ParseException("Missing encoding in RFC 2047 encoded-word: " + text.substring(start, end), encodingPos);
         }
 
-        final var encoding = word.substring(charsetPos + 1, encodingPos);
-
         // and finally the encoded text.
-        final var encodedTextPos = word.indexOf(ENCODED_TOKEN_FINISHER, encodingPos + 1);
-        if (encodedTextPos == -1) {
-            throw new ParseException("Missing encoded text in RFC 2047 encoded-word: " + word, encodedTextPos);
+        final var encodedTextPos = text.indexOf(ENCODED_TOKEN_FINISHER, encodingPos + 1);
+        if (encodedTextPos == -1 || encodedTextPos + ENCODED_TOKEN_FINISHER.length() > end) {
+            throw new ParseException("Missing encoded text in RFC 2047 encoded-word: " + text.substring(start, end), -1);
         }
 
-        final var encodedText = word.substring(encodingPos + 1, encodedTextPos);
-
         // seems a bit silly to encode a null string, but easy to deal with.
-        if (encodedText.isEmpty()) {
+        if (encodedTextPos == encodingPos + 1) {
             return "";
         }
 
         try {
-            // the decoder writes directly to an output stream.
-            final var out = new ByteArrayOutputStream(encodedText.length());
-
-            final var encodedData = encodedText.getBytes(StandardCharsets.US_ASCII);
+            wordDecoder.reset();
+            final var length = wordDecoder.encode(text, encodingPos + 1, encodedTextPos);
 
             // Base64 encoded? RFC 2047 section 2 defines the encoding token as case-independent, so 'b' and 'q' are also valid.
-            if (encoding.equalsIgnoreCase(BASE64_ENCODING_MARKER)) {
-                out.write(Base64.getMimeDecoder().decode(encodedData));
-            } else if (encoding.equalsIgnoreCase(QUOTEDPRINTABLE_ENCODING_MARKER)) { // maybe quoted printable.
-                QuotedPrintableDecoder.decode(encodedData, out);
+            if (isEncoding(text, charsetPos + 1, encodingPos, BASE64_ENCODING_MARKER)) {
+                wordDecoder.decodeBase64(wordDecoder.encoded, length);
+            } else if (isEncoding(text, charsetPos + 1, encodingPos, QUOTEDPRINTABLE_ENCODING_MARKER)) { // maybe quoted printable.
+                wordDecoder.decodeQuotedPrintable(wordDecoder.encoded, length);
             } else {
-                throw new UnsupportedEncodingException("Unknown RFC 2047 encoding: " + encoding);
+                throw new UnsupportedEncodingException("Unknown RFC 2047 encoding: " + text.substring(charsetPos + 1, encodingPos));
             }
-            // get the decoded byte data and convert into a string.
-            final var decodedData = out.toByteArray();
-            return new String(decodedData, javaCharset(charset));
+            // convert the decoded byte data into a string, using the charset (this is the MIME name at this point).
+            return wordDecoder.toString(wordDecoder.getCharset(text, start + 2, charsetPos));
         } catch (final IOException | IllegalArgumentException e) {
             // IllegalArgumentException is thrown by the Base64 decoder on a malformed final unit; treat it like a
             // quoted-printable decode failure so both encodings reject malformed input the same way.
@@ -242,21 +413,67 @@ final class MimeUtils {
         }
     }
 
+    /**
+     * Returns the index of the first occurrence of the given character in the given range of the text.
+     *
+     * @param text  The text.
+     * @param ch    The character.
+     * @param start The index, at which the search starts.
+     * @param end   The index, at which the search ends.
+     * @return The index of the character, or -1, if the range doesn't contain the character.
+     */
+    private static int indexOf(final String text, final char ch, final int start, final int end) {
+        final var pos = text.indexOf(ch, start);
+        return pos < end ? pos : -1;
+    }
+
+    /**
+     * Tests, whether the given range of the text holds the given encoding marker, ignoring case.
+     *
+     * @param text   The text.
+     * @param start  The index of the first character.
+     * @param end    The index after the last character.
+     * @param marker The encoding marker.
+     * @return True, if the range holds the marker.
+     */
+    private static boolean isEncoding(final String text, final int start, final int end, final String marker) {
+        return end - start == marker.length() && text.regionMatches(true, start, marker, 0, marker.length());
+    }
+
     /**
      * Translate a MIME standard character set name into the Java equivalent.
      *
      * @param charset The MIME standard name.
      * @return The Java equivalent for this name.
+     * @throws UnsupportedEncodingException The charset isn't supported.
      */
-    private static String javaCharset(final String charset) {
-        // nothing in, nothing out.
-        if (charset == null) {
-            return null;
-        }
+    private static Charset javaCharset(final String charset) throws UnsupportedEncodingException {
         final var mappedCharset = MIME2JAVA.get(charset.toLowerCase(Locale.ROOT));
         // if there is no mapping, then the original name is used. Many of the MIME character set
         // names map directly back into Java. The reverse isn't necessarily true.
-        return mappedCharset == null ? charset : mappedCharset;
+        return toCharset(mappedCharset == null ? charset : mappedCharset);
+    }
+
+    /**
+     * Returns the charset with the given name. Resolved charsets are cached, because looking up a charset by an alias is expensive.
+     *
+     * @param charsetName The charset name, or alias.
+     * @return The charset.
+     * @throws UnsupportedEncodingException The charset isn't supported, or the name is invalid.
+     */
+    static Charset toCharset(final String charsetName) throws UnsupportedEncodingException {
+        final var key = charsetName.toLowerCase(Locale.ROOT);
+        final var charset = CHARSETS.get(key);
+        if (charset != null) {
+            return charset;
+        }
+        try {
+            final var resolved = Charset.forName(charsetName);
+            CHARSETS.put(key, resolved);
+            return resolved;
+        } catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(charsetName);
+        }
     }
 
     /**
@@ -20,7 +20,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 
 import org.apache.commons.fileupload2.core.FileItemInput.ItemSkippedException;
@@ -910,22 +909,20 @@ public final class MultipartInput {
     }
 
     /**
-     * Reads the {@code header-part} of the current {@code encapsulation}.
+     * Reads the {@code header-part} of the current {@code encapsulation} as raw bytes.
      * <p>
-     * Headers are returned verbatim to the input stream, including the trailing {@code CRLF} marker. Parsing is left to the application.
-     * </p>
-     * <p>
-     * <strong>TODO</strong> allow limiting maximum header size to protect against abuse.
+     * Headers are returned verbatim to the input stream, including the trailing {@code CRLF} marker. Unlike {@link #readHeaders()}, the bytes are not
+     * decoded, so that the headers may be parsed lazily.
      * </p>
      *
      * @return The {@code header-part} of the current encapsulation.
      * @throws FileUploadSizeException  if the bytes read from the stream exceeded the size limits.
      * @throws MalformedStreamException if the stream ends unexpectedly.
+     * @since 2.0.0
      */
-    public String readHeaders() throws FileUploadSizeException, MalformedStreamException {
+    public byte[] readHeaderBytes() throws FileUploadSizeException, MalformedStreamException {
         var i = 0;
         byte b;
-        // to support multi-byte characters
         final var baos = new ByteArrayOutputStream();
         var size = 0;
         while (i < HEADER_SEPARATOR.length) {
@@ -949,12 +946,25 @@ public final class MultipartInput {
             }
             baos.write(b);
         }
-        try {
-            return baos.toString(Charsets.toCharset(headerCharset, Charset.defaultCharset()).name());
-        } catch (final UnsupportedEncodingException e) {
-            // not possible
-            throw new IllegalStateException(e);
-        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Reads the {@code header-part} of the current {@code encapsulation}.
+     * <p>
+     * Headers are returned verbatim to the input stream, including the trailing {@code CRLF} marker. Parsing is left to the application.
+     * </p>
+     * <p>
+     * <strong>TODO</strong> allow limiting maximum header size to protect against abuse.
+     * </p>
+     *
+     * @return The {@code header-part} of the current encapsulation.
+     * @throws FileUploadSizeException  if the bytes read from the stream exceeded the size limits.
+     * @throws MalformedStreamException if the stream ends unexpectedly.
+     */
+    public String readHeaders() throws FileUploadSizeException, MalformedStreamException {
+        // to support multi-byte characters
+        return new String(readHeaderBytes(), Charsets.toCharset(headerCharset, Charset.defaultCharset()));
     }
 
     /**
@@ -17,6 +17,8 @@
 package org.apache.commons.fileupload2.core;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -33,10 +35,281 @@ import java.util.Map;
  */
 public class ParameterParser {
 
+    /**
+     * A flat view of the parameters, which have been parsed by {@link ParameterParser#parseParameters(CharSequence, char)}. The view holds the positions of
+     * the names, and values in the parsed text only. Values are decoded (RFC 2231, and RFC 2047), when they are read for the first time.
+     * <p>
+     * Like the map, which is returned by {@link ParameterParser#parse(String, char)}, the view ignores parameters with an empty name, and parameters with a
+     * malformed value: If a name occurs more than once, then the last parameter with a valid value wins.
+     * </p>
+     *
+     * @since 2.0.0
+     */
+    public static final class Parameters {
+
+        /**
+         * The number of entries in {@link #ranges} per parameter.
+         */
+        private static final int RANGE_SIZE = 4;
+
+        /**
+         * The state of a value, which hasn't been decoded yet.
+         */
+        private static final byte UNDECODED = 0;
+
+        /**
+         * The state of a value, which has been decoded.
+         */
+        private static final byte DECODED = 1;
+
+        /**
+         * The state of a value, which is malformed.
+         */
+        private static final byte INVALID = 2;
+
+        /**
+         * The parsed text.
+         */
+        private final CharSequence text;
+
+        /**
+         * Whether names are converted to lower case.
+         */
+        private final boolean lowerCaseNames;
+
+        /**
+         * The start, and end of the name, and the start, and end of the value (or -1, if there is no value) of every parameter.
+         */
+        private int[] ranges = new int[RANGE_SIZE * 4];
+
+        /**
+         * The number of parameters.
+         */
+        private int size;
+
+        /**
+         * The decoded values, or null, if no value has been decoded yet.
+         */
+        private String[] values;
+
+        /**
+         * The states of the values, or null, if no value has been decoded yet.
+         */
+        private byte[] states;
+
+        private Parameters(final CharSequence text, final boolean lowerCaseNames) {
+            this.text = text;
+            this.lowerCaseNames = lowerCaseNames;
+        }
+
+        /**
+         * Adds a parameter.
+         *
+         * @param nameStart  The start of the name.
+         * @param nameEnd    The end of the name.
+         * @param valueStart The start of the value, or -1, if there is no value.
+         * @param valueEnd   The end of the value, or -1, if there is no value.
+         */
+        private void add(final int nameStart, final int nameEnd, final int valueStart, final int valueEnd) {
+            final var index = size * RANGE_SIZE;
+            if (index == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[index] = nameStart;
+            ranges[index + 1] = nameEnd;
+            ranges[index + 2] = valueStart;
+            ranges[index + 3] = valueEnd;
+            size++;
+        }
+
+        /**
+         * Checks the given parameter index.
+         *
+         * @param index The parameters index.
+         * @return The index.
+         * @throws IndexOutOfBoundsException The index is out of range.
+         */
+        private int checkIndex(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return index;
+        }
+
+        /**
+         * Tests, whether a parameter with the given name, and a valid value is present.
+         *
+         * @param name The parameter name. If names are converted to lower case, then the name must be given in lower case.
+         * @return True, if the parameter is present, otherwise false.
+         */
+        public boolean containsKey(final String name) {
+            return indexOf(name) != -1;
+        }
+
+        /**
+         * Decodes the value of the given parameter, if necessary.
+         *
+         * @param index The parameters index.
+         */
+        private void decode(final int index) {
+            if (states == null) {
+                states = new byte[size];
+                values = new String[size];
+            }
+            if (states[index] != UNDECODED) {
+                return;
+            }
+            final var offset = index * RANGE_SIZE;
+            final var valueStart = ranges[offset + 2];
+            if (valueStart == -1) {
+                states[index] = DECODED;
+                return;
+            }
+            var value = text.subSequence(valueStart, ranges[offset + 3]).toString();
+            try {
+                value = text.charAt(ranges[offset + 1] - 1) == '*' ? RFC2231Utils.decodeText(value) : MimeUtils.decodeText(value);
+            } catch (final IllegalArgumentException iae) {
+                // Treat invalid values as if they were not provided, so a malformed filename* cannot override a valid filename.
+                states[index] = INVALID;
+                return;
+            } catch (final UnsupportedEncodingException ignored) {
+                // let's keep the original value in this case
+            }
+            values[index] = value;
+            states[index] = DECODED;
+        }
+
+        /**
+         * Returns the decoded value of the parameter with the given name.
+         *
+         * @param name The parameter name. If names are converted to lower case, then the name must be given in lower case.
+         * @return The decoded value, or null, if the parameter is absent, or has no value.
+         */
+        public String get(final String name) {
+            final var index = indexOf(name);
+            return index == -1 ? null : values[index];
+        }
+
+        /**
+         * Returns the name of the parameter with the given index. A trailing asterisk (RFC 2231) is removed.
+         *
+         * @param index The parameters index.
+         * @return The parameter name.
+         * @throws IndexOutOfBoundsException The index is out of range.
+         */
+        public String getName(final int index) {
+            final var name = text.subSequence(ranges[checkIndex(index) * RANGE_SIZE], nameEnd(index)).toString();
+            return lowerCaseNames ? name.toLowerCase(Locale.ROOT) : name;
+        }
+
+        /**
+         * Returns the decoded value of the parameter with the given index.
+         *
+         * @param index The parameters index.
+         * @return The decoded value, or null, if the parameter has no value, or a malformed value.
+         * @throws IndexOutOfBoundsException The index is out of range.
+         */
+        public String getValue(final int index) {
+            decode(checkIndex(index));
+            return values[index];
+        }
+
+        /**
+         * Returns the index of the last parameter with the given name, and a valid value.
+         *
+         * @param name The parameter name.
+         * @return The parameters index, or -1.
+         */
+        private int indexOf(final String name) {
+            if (name == null) {
+                return -1;
+            }
+            for (var i = size - 1; i >= 0; i--) {
+                if (isName(i, name)) {
+                    decode(i);
+                    if (states[i] != INVALID) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Tests, whether the view is empty.
+         *
+         * @return True, if no parameters have been parsed.
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Tests, whether the parameter with the given index has the given name.
+         *
+         * @param index The parameters index.
+         * @param name  The name.
+         * @return True, if the parameter has the given name.
+         */
+        private boolean isName(final int index, final String name) {
+            final var start = ranges[index * RANGE_SIZE];
+            final var length = nameEnd(index) - start;
+            if (length != name.length()) {
+                return false;
+            }
+            for (var i = 0; i < length; i++) {
+                var c = text.charAt(start + i);
+                if (lowerCaseNames) {
+                    c = Character.toLowerCase(c);
+                }
+                if (c != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the end of the given parameters name, excluding a trailing asterisk.
+         *
+         * @param index The parameters index.
+         * @return The end of the name.
+         */
+        private int nameEnd(final int index) {
+            final var end = ranges[index * RANGE_SIZE + 1];
+            return text.charAt(end - 1) == '*' ? end - 1 : end;
+        }
+
+        /**
+         * Returns the number of parameters.
+         *
+         * @return The number of parameters, including parameters with a malformed value.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Decodes all values, and returns the parameters as a map.
+         *
+         * @return A map of name/value pairs.
+         */
+        public Map<String, String> toMap() {
+            final var map = new HashMap<String, String>();
+            for (var i = 0; i < size; i++) {
+                decode(i);
+                if (states[i] != INVALID) {
+                    map.put(getName(i), values[i]);
+                }
+            }
+            return map;
+        }
+    }
+
     /**
      * String to be parsed.
      */
-    private char[] chars;
+    private CharSequence chars;
 
     /**
      * Current position in the string.
@@ -69,33 +342,6 @@ public class ParameterParser {
     public ParameterParser() {
     }
 
-    /**
-     * A helper method to process the parsed token. This method removes leading and trailing blanks as well as enclosing quotation marks, when necessary.
-     *
-     * @param quoted {@code true} if quotation marks are expected, {@code false} otherwise.
-     * @return The token
-     */
-    private String getToken(final boolean quoted) {
-        // Trim leading white spaces
-        while (i1 < i2 && Character.isWhitespace(chars[i1])) {
-            i1++;
-        }
-        // Trim trailing white spaces
-        while (i2 > i1 && Character.isWhitespace(chars[i2 - 1])) {
-            i2--;
-        }
-        // Strip away quotation marks if necessary
-        if (quoted && i2 - i1 >= 2 && chars[i1] == '"' && chars[i2 - 1] == '"') {
-            i1++;
-            i2--;
-        }
-        String result = null;
-        if (i2 > i1) {
-            result = new String(chars, i1, i2 - i1);
-        }
-        return result;
-    }
-
     /**
      * Tests if there any characters left to parse.
      *
@@ -114,24 +360,6 @@ public class ParameterParser {
         return this.lowerCaseNames;
     }
 
-    /**
-     * Tests if the given character is present in the array of characters.
-     *
-     * @param ch      The character to test for presence in the array of characters
-     * @param charray The array of characters to test against
-     * @return {@code true} if the character is present in the array of characters, {@code false} otherwise.
-     */
-    private boolean isOneOf(final char ch, final char[] charray) {
-        var result = false;
-        for (final char element : charray) {
-            if (ch == element) {
-                result = true;
-                break;
-            }
-        }
-        return result;
-    }
-
     /**
      * Parses a map of name/value pairs from the given array of characters. Names are expected to be unique.
      *
@@ -159,44 +387,7 @@ public class ParameterParser {
         if (charArray == null) {
             return new HashMap<>();
         }
-        final var params = new HashMap<String, String>();
-        this.chars = charArray.clone();
-        this.pos = offset;
-        this.len = length;
-
-        String paramName;
-        String paramValue;
-        while (hasChar()) {
-            paramName = parseToken(new char[] { '=', separator });
-            paramValue = null;
-            var invalid = false;
-            if (hasChar() && charArray[pos] == '=') {
-                pos++; // skip '='
-                paramValue = parseQuotedToken(new char[] { separator });
-
-                if (paramValue != null) {
-                    try {
-                        paramValue = RFC2231Utils.hasEncodedValue(paramName) ? RFC2231Utils.decodeText(paramValue) : MimeUtils.decodeText(paramValue);
-                    } catch (final IllegalArgumentException iae) {
-                        // Treat invalid values as if they were not provided, so a malformed filename* cannot override a valid filename.
-                        invalid = true;
-                    } catch (final UnsupportedEncodingException ignored) {
-                        // let's keep the original value in this case
-                    }
-                }
-            }
-            if (hasChar() && charArray[pos] == separator) {
-                pos++; // skip separator
-            }
-            if (!invalid && paramName != null && !paramName.isEmpty()) {
-                paramName = RFC2231Utils.stripDelimiter(paramName);
-                if (this.lowerCaseNames) {
-                    paramName = paramName.toLowerCase(Locale.ROOT);
-                }
-                params.put(paramName, paramValue);
-            }
-        }
-        return params;
+        return parseParameters(CharBuffer.wrap(charArray), offset, length, separator).toMap();
     }
 
     /**
@@ -210,7 +401,7 @@ public class ParameterParser {
         if (str == null) {
             return new HashMap<>();
         }
-        return parse(str.toCharArray(), separator);
+        return parseParameters(str, separator).toMap();
     }
 
     /**
@@ -240,20 +431,80 @@ public class ParameterParser {
     }
 
     /**
-     * Parses out a token until any of the given terminators is encountered outside the quotation marks.
+     * Parses name/value pairs from the given text into a flat view. Unlike {@link #parse(String, char)}, no strings are created, and no values are decoded,
+     * until the parameters are read.
      *
-     * @param terminators The array of terminating characters. Any of these characters when encountered outside the quotation marks signify the end of the token
-     * @return The token
+     * @param text      The text that contains a sequence of name/value pairs, or null.
+     * @param separator The name/value pairs separator
+     * @return A view of the name/value pairs
+     * @since 2.0.0
      */
-    private String parseQuotedToken(final char[] terminators) {
+    public Parameters parseParameters(final CharSequence text, final char separator) {
+        if (text == null) {
+            return new Parameters("", lowerCaseNames);
+        }
+        return parseParameters(text, 0, text.length(), separator);
+    }
+
+    /**
+     * Parses name/value pairs from the given range of the text into a flat view. Unlike {@link #parse(String, char)}, no strings are created, and no values
+     * are decoded, until the parameters are read.
+     *
+     * @param text      The text that contains a sequence of name/value pairs
+     * @param start     The index of the first character.
+     * @param end       The index after the last character.
+     * @param separator The name/value pairs separator
+     * @return A view of the name/value pairs
+     * @since 2.0.0
+     */
+    public Parameters parseParameters(final CharSequence text, final int start, final int end, final char separator) {
+        final var params = new Parameters(text, lowerCaseNames);
+        this.chars = text;
+        this.pos = start;
+        this.len = end;
+        try {
+            while (hasChar()) {
+                parseToken(separator);
+                final var nameStart = i1;
+                final var nameEnd = i2;
+                var valueStart = -1;
+                var valueEnd = -1;
+                if (hasChar() && text.charAt(pos) == '=') {
+                    pos++; // skip '='
+                    parseQuotedToken(separator);
+                    if (i2 > i1) {
+                        valueStart = i1;
+                        valueEnd = i2;
+                    }
+                }
+                if (hasChar() && text.charAt(pos) == separator) {
+                    pos++; // skip separator
+                }
+                if (nameEnd > nameStart) {
+                    params.add(nameStart, nameEnd, valueStart, valueEnd);
+                }
+            }
+        } finally {
+            this.chars = null;
+        }
+        return params;
+    }
+
+    /**
+     * Parses out a token until the separator is encountered outside the quotation marks. The tokens start, and end are stored in {@link #i1}, and
+     * {@link #i2}.
+     *
+     * @param separator The terminating character, when encountered outside the quotation marks.
+     */
+    private void parseQuotedToken(final char separator) {
         char ch;
         i1 = pos;
         i2 = pos;
         var quoted = false;
         var charEscaped = false;
         while (hasChar()) {
-            ch = chars[pos];
-            if (!quoted && isOneOf(ch, terminators)) {
+            ch = chars.charAt(pos);
+            if (!quoted && ch == separator) {
                 break;
             }
             if (!charEscaped && ch == '"') {
@@ -264,28 +515,27 @@ public class ParameterParser {
             pos++;
 
         }
-        return getToken(true);
+        trimToken(true);
     }
 
     /**
-     * Parses out a token until any of the given terminators is encountered.
+     * Parses out a token until {@code '='}, or the separator is encountered. The tokens start, and end are stored in {@link #i1}, and {@link #i2}.
      *
-     * @param terminators The array of terminating characters. Any of these characters when encountered signify the end of the token
-     * @return The token
+     * @param separator The terminating character, in addition to {@code '='}.
      */
-    private String parseToken(final char[] terminators) {
+    private void parseToken(final char separator) {
         char ch;
         i1 = pos;
         i2 = pos;
         while (hasChar()) {
-            ch = chars[pos];
-            if (isOneOf(ch, terminators)) {
+            ch = chars.charAt(pos);
+            if (ch == '=' || ch == separator) {
                 break;
             }
             i2++;
             pos++;
         }
-        return getToken(false);
+        trimToken(false);
     }
 
     /**
@@ -297,4 +547,26 @@ public class ParameterParser {
         this.lowerCaseNames = lowerCaseNames;
     }
 
+    /**
+     * A helper method to process the parsed token. This method removes leading and trailing blanks as well as enclosing quotation marks, when necessary, by
+     * adjusting {@link #i1}, and {@link #i2}.
+     *
+     * @param quoted {@code true} if quotation marks are expected, {@code false} otherwise.
+     */
+    private void trimToken(final boolean quoted) {
+        // Trim leading white spaces
+        while (i1 < i2 && Character.isWhitespace(chars.charAt(i1))) {
+            i1++;
+        }
+        // Trim trailing white spaces
+        while (i2 > i1 && Character.isWhitespace(chars.charAt(i2 - 1))) {
+            i2--;
+        }
+        // Strip away quotation marks if necessary
+        if (quoted && i2 - i1 >= 2 && chars.charAt(i1) == '"' && chars.charAt(i2 - 1) == '"') {
+            i1++;
+            i2--;
+        }
+    }
+
 }
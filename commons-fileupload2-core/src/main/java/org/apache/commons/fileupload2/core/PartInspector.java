@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+
+/**
+ * Inspects the body of a part, while it is being streamed, for example to scan for malware, or to enforce a content policy, without reading the stored
+ * item again.
+ * <p>
+ * A new inspector is created for every part by the suppliers, which have been registered with
+ * {@link AbstractFileUpload#addPartInspector(java.util.function.Supplier)}. The inspector receives the parts headers, then every chunk of the (decoded)
+ * body, as it passes from the multipart stream to the items output stream, and finally the end of the body. An inspector vetoes a part by throwing a
+ * {@link FileUploadInspectionException}: The part is aborted mid-stream, and {@link AbstractFileUpload#parseRequest(RequestContext)} deletes the items,
+ * which have been created so far.
+ * </p>
+ * <p>
+ * Inspectors are invoked on the thread, which is parsing the request. Expensive inspections delay the upload accordingly.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public interface PartInspector {
+
+    /**
+     * Called before the body of a part is read.
+     *
+     * @param headers The parts headers.
+     * @throws FileUploadInspectionException The part is vetoed.
+     * @throws IOException                   The inspection failed.
+     */
+    default void begin(final FileItemHeaders headers) throws IOException {
+        // Nothing to do by default.
+    }
+
+    /**
+     * Called after the body of a part has been read completely. Not called, if the part is skipped, or aborted.
+     *
+     * @throws FileUploadInspectionException The part is vetoed.
+     * @throws IOException                   The inspection failed.
+     */
+    default void end() throws IOException {
+        // Nothing to do by default.
+    }
+
+    /**
+     * Called for every chunk of the parts body. The buffer must not be modified, or retained after this method returns.
+     *
+     * @param buffer The buffer, which is holding the chunk.
+     * @param offset The offset of the chunk in the buffer.
+     * @param length The length of the chunk.
+     * @throws FileUploadInspectionException The part is vetoed.
+     * @throws IOException                   The inspection failed.
+     */
+    void update(byte[] buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.commons.io.build.AbstractSupplier;
+
+/**
+ * A storage, and size policy for the parts with given field names, or content types. Policies are registered with
+ * {@link AbstractFileUpload#addPartPolicy(PartPolicy)}. The first policy, which matches a part, chooses
+ * <ul>
+ * <li>the {@link FileItemFactory}, which creates the item. The threshold, and the repository are properties of the factory, so a part may be kept in
+ * memory, or written to a dedicated disk, by choosing a {@link DiskFileItemFactory} with the respective threshold, and path.</li>
+ * <li>the maximum size of the part, which replaces {@link AbstractFileUpload#getMaxFileSize()}, and is enforced while the part is being streamed.</li>
+ * </ul>
+ * <p>
+ * For example, the following policies keep avatars of up to 2 MB in memory, and write videos of up to 5 GB to a fast disk, while the defaults of the
+ * upload apply to all other parts:
+ * </p>
+ *
+ * <pre>{@code
+ * upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder()
+ *     .setFieldNames("avatar")
+ *     .setFileItemFactory(DiskFileItemFactory.builder().setThreshold(2_097_152).get())
+ *     .setMaxFileSize(2_097_152)
+ *     .get());
+ * upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder()
+ *     .setFieldNames("video")
+ *     .setFileItemFactory(DiskFileItemFactory.builder().setThreshold(0).setPath(fastDisk).get())
+ *     .setMaxFileSize(5_368_709_120L)
+ *     .get());
+ * }
+ * </pre>
+ * <p>
+ * Policies are immutable, and may be shared by multiple uploads.
+ * </p>
+ *
+ * @param <F> The FileItemFactory type.
+ * @see Builder
+ * @since 2.0.0
+ */
+public final class PartPolicy<F extends FileItemFactory<?>> {
+
+    /**
+     * Builds a new {@link PartPolicy} instance.
+     *
+     * @param <F> The FileItemFactory type.
+     */
+    public static class Builder<F extends FileItemFactory<?>> extends AbstractSupplier<PartPolicy<F>, Builder<F>> {
+
+        /**
+         * The field names, which are matched, or empty to match any field name.
+         */
+        private Set<String> fieldNames = Collections.emptySet();
+
+        /**
+         * The content types, which are matched, in lower case, or empty to match any content type.
+         */
+        private Set<String> contentTypes = Collections.emptySet();
+
+        /**
+         * The factory, or null to use the factory of the upload.
+         */
+        private F fileItemFactory;
+
+        /**
+         * The maximum size of a part, or -1 to use the limit of the upload.
+         */
+        private long maxFileSize = -1;
+
+        /**
+         * Constructs a new instance.
+         */
+        public Builder() {
+            // empty
+        }
+
+        /**
+         * Constructs a new instance.
+         * <p>
+         * This builder uses the aspects field names, content types, file item factory, and max file size.
+         * </p>
+         *
+         * @return A new instance.
+         */
+        @Override
+        public PartPolicy<F> get() {
+            return new PartPolicy<>(this);
+        }
+
+        /**
+         * Sets the content types of the parts, to which the policy applies. A content type is given as {@code type/subtype}, {@code type/*}, or
+         * {@code *}{@code /*}, and is compared ignoring case, and parameters. A part without a {@code Content-Type} header has the content type
+         * {@code text/plain}.
+         *
+         * @param contentTypes The content types. Defaults to none, which matches any content type.
+         * @return This builder.
+         */
+        public Builder<F> setContentTypes(final String... contentTypes) {
+            this.contentTypes = PartRule.toLowerCase(contentTypes);
+            return asThis();
+        }
+
+        /**
+         * Sets the field names of the parts, to which the policy applies. Field names are compared case sensitively.
+         *
+         * @param fieldNames The field names. Defaults to none, which matches any field name.
+         * @return This builder.
+         */
+        public Builder<F> setFieldNames(final String... fieldNames) {
+            this.fieldNames = PartRule.toSet(fieldNames);
+            return asThis();
+        }
+
+        /**
+         * Sets the factory, which creates the items. The factory chooses the threshold, and the repository.
+         *
+         * @param fileItemFactory The factory, or null (default) to use {@link AbstractFileUpload#getFileItemFactory()}.
+         * @return This builder.
+         */
+        public Builder<F> setFileItemFactory(final F fileItemFactory) {
+            this.fileItemFactory = fileItemFactory;
+            return asThis();
+        }
+
+        /**
+         * Sets the maximum size of a part, which replaces {@link AbstractFileUpload#getMaxFileSize()}.
+         *
+         * @param maxFileSize The maximum size, in bytes, or -1 (default) to use {@link AbstractFileUpload#getMaxFileSize()}. Use {@link Long#MAX_VALUE} for
+         *                    an unlimited size.
+         * @return This builder.
+         */
+        public Builder<F> setMaxFileSize(final long maxFileSize) {
+            this.maxFileSize = maxFileSize;
+            return asThis();
+        }
+    }
+
+    /**
+     * Constructs a new {@link Builder}.
+     *
+     * @param <F> The FileItemFactory type.
+     * @return A new {@link Builder}.
+     */
+    public static <F extends FileItemFactory<?>> Builder<F> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * The field names, which are matched, or empty to match any field name.
+     */
+    private final Set<String> fieldNames;
+
+    /**
+     * The content types, which are matched, in lower case, or empty to match any content type.
+     */
+    private final Set<String> contentTypes;
+
+    /**
+     * The factory, or null to use the factory of the upload.
+     */
+    private final F fileItemFactory;
+
+    /**
+     * The maximum size of a part, or -1 to use the limit of the upload.
+     */
+    private final long maxFileSize;
+
+    private PartPolicy(final Builder<F> builder) {
+        this.fieldNames = builder.fieldNames;
+        this.contentTypes = builder.contentTypes;
+        this.fileItemFactory = builder.fileItemFactory;
+        this.maxFileSize = builder.maxFileSize;
+    }
+
+    /**
+     * Returns the content types of the parts, to which the policy applies.
+     *
+     * @return An unmodifiable set of the content types, in lower case, or an empty set, if the policy applies to any content type.
+     */
+    public Set<String> getContentTypes() {
+        return Collections.unmodifiableSet(contentTypes);
+    }
+
+    /**
+     * Returns the field names of the parts, to which the policy applies.
+     *
+     * @return An unmodifiable set of the field names, or an empty set, if the policy applies to any field name.
+     */
+    public Set<String> getFieldNames() {
+        return Collections.unmodifiableSet(fieldNames);
+    }
+
+    /**
+     * Returns the factory, which creates the items.
+     *
+     * @return The factory, or null to use {@link AbstractFileUpload#getFileItemFactory()}.
+     */
+    public F getFileItemFactory() {
+        return fileItemFactory;
+    }
+
+    /**
+     * Returns the maximum size of a part.
+     *
+     * @return The maximum size, in bytes, or -1 to use {@link AbstractFileUpload#getMaxFileSize()}.
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Tests, whether the policy applies to a part.
+     *
+     * @param fieldName   The parts field name, or null.
+     * @param contentType The parts content type, or null, if the part has no {@code Content-Type} header.
+     * @return True, if the policy applies to the part.
+     */
+    boolean matches(final String fieldName, final ContentType contentType) {
+        if (!fieldNames.isEmpty() && !fieldNames.contains(fieldName)) {
+            return false;
+        }
+        return contentTypes.isEmpty() || PartRule.matchesContentType(contentTypes, contentType == null ? PartRule.DEFAULT_CONTENT_TYPE : contentType);
+    }
+}
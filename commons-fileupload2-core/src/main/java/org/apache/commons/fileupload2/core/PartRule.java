@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A declarative rule, which allows, or denies parts by field name, file name, or content type. Rules are registered with
+ * {@link AbstractFileUpload#addPartRule(PartRule)}, and evaluated on the parts headers, before an item is created: A part, which is rejected, is skipped by
+ * scanning for the next boundary, so its body is neither stored, nor passed to a {@link PartInspector}.
+ * <p>
+ * A part is rejected, if it matches a deny rule. Otherwise, for each aspect (field name, file name, and content type), which has at least one allow rule,
+ * the part must match one of these allow rules. A rule only applies to parts, which have the respective aspect: File name rules don't affect form fields,
+ * field name rules don't affect the parts of a {@code multipart/related} request, and content type rules don't affect a {@code multipart/mixed} part,
+ * whose files are evaluated one by one. A part without a {@code Content-Type} header has the content type {@code text/plain}, as specified by RFC 7578. For
+ * example, the following rules accept the fields {@code csrf}, and {@code title}, and PDF files, which are sent as {@code file}:
+ * </p>
+ *
+ * <pre>{@code
+ * upload.addPartRule(PartRule.allowFieldNames("csrf", "title", "file"));
+ * upload.addPartRule(PartRule.allowFileNames(Pattern.compile(".*\\.pdf", Pattern.CASE_INSENSITIVE)));
+ * upload.addPartRule(PartRule.allowContentTypes("text/plain", "application/pdf"));
+ * }
+ * </pre>
+ * <p>
+ * Rules are immutable, and may be shared by multiple uploads.
+ * </p>
+ *
+ * @since 2.0.0
+ */
+public final class PartRule {
+
+    /**
+     * The aspect of a part, which is tested by a rule.
+     */
+    enum Aspect {
+
+        /**
+         * The field name.
+         */
+        FIELD_NAME,
+
+        /**
+         * The file name.
+         */
+        FILE_NAME,
+
+        /**
+         * The content type.
+         */
+        CONTENT_TYPE
+    }
+
+    /**
+     * The content type of a part without a {@code Content-Type} header.
+     */
+    static final ContentType DEFAULT_CONTENT_TYPE = ContentType.parse("text/plain");
+
+    /**
+     * Creates a rule, which allows parts with one of the given content types. A content type is given as {@code type/subtype}, {@code type/*}, or
+     * {@code *}{@code /*}, and is compared ignoring case, and parameters.
+     *
+     * @param contentTypes The content types, which are allowed.
+     * @return A new rule.
+     */
+    public static PartRule allowContentTypes(final String... contentTypes) {
+        return new PartRule(Aspect.CONTENT_TYPE, true, toLowerCase(contentTypes), null);
+    }
+
+    /**
+     * Creates a rule, which allows parts with one of the given field names. Field names are compared case sensitively.
+     *
+     * @param fieldNames The field names, which are allowed.
+     * @return A new rule.
+     */
+    public static PartRule allowFieldNames(final String... fieldNames) {
+        return new PartRule(Aspect.FIELD_NAME, true, toSet(fieldNames), null);
+    }
+
+    /**
+     * Creates a rule, which allows file parts, if the file name matches the given pattern completely.
+     *
+     * @param fileNamePattern The pattern of the file names, which are allowed.
+     * @return A new rule.
+     */
+    public static PartRule allowFileNames(final Pattern fileNamePattern) {
+        return new PartRule(Aspect.FILE_NAME, true, null, Objects.requireNonNull(fileNamePattern, "fileNamePattern"));
+    }
+
+    /**
+     * Creates a rule, which denies parts with one of the given content types. A content type is given as {@code type/subtype}, {@code type/*}, or
+     * {@code *}{@code /*}, and is compared ignoring case, and parameters.
+     *
+     * @param contentTypes The content types, which are denied.
+     * @return A new rule.
+     */
+    public static PartRule denyContentTypes(final String... contentTypes) {
+        return new PartRule(Aspect.CONTENT_TYPE, false, toLowerCase(contentTypes), null);
+    }
+
+    /**
+     * Creates a rule, which denies parts with one of the given field names. Field names are compared case sensitively.
+     *
+     * @param fieldNames The field names, which are denied.
+     * @return A new rule.
+     */
+    public static PartRule denyFieldNames(final String... fieldNames) {
+        return new PartRule(Aspect.FIELD_NAME, false, toSet(fieldNames), null);
+    }
+
+    /**
+     * Creates a rule, which denies file parts, if the file name matches the given pattern completely.
+     *
+     * @param fileNamePattern The pattern of the file names, which are denied.
+     * @return A new rule.
+     */
+    public static PartRule denyFileNames(final Pattern fileNamePattern) {
+        return new PartRule(Aspect.FILE_NAME, false, null, Objects.requireNonNull(fileNamePattern, "fileNamePattern"));
+    }
+
+    /**
+     * Tests, whether a part is accepted by the given rules.
+     *
+     * @param rules       The rules.
+     * @param fieldName   The parts field name, or null.
+     * @param fileName    The parts file name, or null, if the part is a form field.
+     * @param contentType The parts content type, or null, if the part has no {@code Content-Type} header.
+     * @return True, if the part is accepted, false, if it is to be skipped.
+     */
+    static boolean isAccepted(final List<PartRule> rules, final String fieldName, final String fileName, final ContentType contentType) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        final var parsedContentType = contentType == null ? DEFAULT_CONTENT_TYPE : contentType;
+        // For every aspect: Is there an allow rule, and has an allow rule matched?
+        final var restricted = new boolean[Aspect.values().length];
+        final var allowed = new boolean[restricted.length];
+        for (final PartRule rule : rules) {
+            // A multipart/mixed part is a container, whose files are evaluated one by one.
+            final var value = rule.aspect == Aspect.FIELD_NAME ? fieldName
+                    : rule.aspect == Aspect.FILE_NAME ? fileName : parsedContentType.isMultipart() ? null : parsedContentType;
+            if (value == null) {
+                continue;
+            }
+            final var matches = rule.matches(value);
+            if (rule.allow) {
+                restricted[rule.aspect.ordinal()] = true;
+                allowed[rule.aspect.ordinal()] |= matches;
+            } else if (matches) {
+                return false;
+            }
+        }
+        for (var i = 0; i < restricted.length; i++) {
+            if (restricted[i] && !allowed[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests, whether the given content type matches one of the given content types.
+     *
+     * @param contentTypes The content types in lower case, as {@code type/subtype}, {@code type/*}, or {@code *}{@code /*}.
+     * @param contentType  The content type.
+     * @return True, if the content type matches.
+     */
+    static boolean matchesContentType(final Set<String> contentTypes, final ContentType contentType) {
+        return contentTypes.contains(contentType.getMimeType()) || contentTypes.contains(contentType.getType() + "/*") || contentTypes.contains("*/*");
+    }
+
+    /**
+     * Converts the given content types to lower case.
+     *
+     * @param contentTypes The content types.
+     * @return The content types in lower case.
+     */
+    static Set<String> toLowerCase(final String... contentTypes) {
+        final var set = toSet(contentTypes);
+        final Set<String> lowerCase = new HashSet<>(set.size());
+        set.forEach(contentType -> lowerCase.add(contentType.trim().toLowerCase(Locale.ROOT)));
+        return lowerCase;
+    }
+
+    /**
+     * Converts the given values into a set.
+     *
+     * @param values The values.
+     * @return The set of values.
+     */
+    static Set<String> toSet(final String... values) {
+        final Set<String> set = new HashSet<>(Arrays.asList(Objects.requireNonNull(values, "values")));
+        if (set.contains(null)) {
+            throw new NullPointerException("values");
+        }
+        return set;
+    }
+
+    /**
+     * The aspect, which is tested by this rule.
+     */
+    private final Aspect aspect;
+
+    /**
+     * True, if this rule allows parts, false, if it denies them.
+     */
+    private final boolean allow;
+
+    /**
+     * The field names, or content types, which are matched by this rule, or null.
+     */
+    private final Set<String> values;
+
+    /**
+     * The pattern of the file names, which are matched by this rule, or null.
+     */
+    private final Pattern pattern;
+
+    private PartRule(final Aspect aspect, final boolean allow, final Set<String> values, final Pattern pattern) {
+        this.aspect = aspect;
+        this.allow = allow;
+        this.values = values;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Tests, whether this rule allows parts.
+     *
+     * @return True, if this rule allows parts, false, if it denies them.
+     */
+    public boolean isAllow() {
+        return allow;
+    }
+
+    /**
+     * Tests, whether this rule matches the given value.
+     *
+     * @param value The field name, the file name, or the content type.
+     * @return True, if this rule matches the value.
+     */
+    private boolean matches(final Object value) {
+        switch (aspect) {
+        case FIELD_NAME:
+            return values.contains(value);
+        case FILE_NAME:
+            return pattern.matcher((String) value).matches();
+        default:
+            return matchesContentType(values, (ContentType) value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (allow ? "allow " : "deny ") + aspect.name().toLowerCase(Locale.ROOT).replace('_', ' ') + ": " + (pattern == null ? values : pattern);
+    }
+}
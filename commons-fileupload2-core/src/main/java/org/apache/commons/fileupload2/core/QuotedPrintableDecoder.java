@@ -16,18 +16,197 @@
  */
 package org.apache.commons.fileupload2.core;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  */
 final class QuotedPrintableDecoder {
 
+    /**
+     * An incremental decoder for quoted-printable data (RFC 2045, section 6.7). Unlike {@link QuotedPrintableDecoder#decode(byte[], OutputStream)}, which is
+     * decoding encoded words in headers (RFC 2047), underscores are not translated to spaces. Soft line breaks are removed. The data may be passed in
+     * arbitrary chunks: An escape sequence, which is split between two chunks, is carried over.
+     */
+    static final class Decoder {
+
+        /**
+         * The number of bytes of an incomplete escape sequence, which have been consumed already: 0 (none), 1 ({@code '='}), or 2 ({@code '='}, and
+         * {@link #pending}).
+         */
+        private int state;
+
+        /**
+         * The second byte of an incomplete escape sequence, if {@link #state} is 2.
+         */
+        private byte pending;
+
+        /**
+         * Decodes the given chunk of encoded data into the given array. At most {@code length} bytes are produced, so the output array must provide room for
+         * that many bytes.
+         *
+         * @param data      The encoded data.
+         * @param offset    The offset of the first byte to decode.
+         * @param length    The number of bytes to decode.
+         * @param out       The array, which receives the decoded data.
+         * @param outOffset The offset of the first decoded byte in the output array.
+         * @return The number of bytes produced.
+         * @throws IOException The data isn't valid quoted-printable data.
+         */
+        int decode(final byte[] data, final int offset, final int length, final byte[] out, final int outOffset) throws IOException {
+            var off = offset;
+            final var endOffset = offset + length;
+            var outOff = outOffset;
+            while (off < endOffset) {
+                final var ch = data[off++];
+                switch (state) {
+                case 0:
+                    if (ch == '=') {
+                        state = 1;
+                    } else {
+                        out[outOff++] = ch;
+                    }
+                    break;
+                case 1:
+                    if (ch == '\n') {
+                        // A soft line break, with a bare LF.
+                        state = 0;
+                    } else {
+                        pending = ch;
+                        state = 2;
+                    }
+                    break;
+                default:
+                    state = 0;
+                    if (pending == '\r') {
+                        if (ch != '\n') {
+                            throw new IOException("Invalid quoted printable encoding; CR must be followed by LF");
+                        }
+                        // A soft line break.
+                    } else {
+                        out[outOff++] = (byte) (hexToBinary(pending) << UPPER_NIBBLE_SHIFT | hexToBinary(ch));
+                    }
+                    break;
+                }
+            }
+            return outOff - outOffset;
+        }
+
+        /**
+         * Called at the end of the encoded data.
+         *
+         * @throws IOException The data ends with an incomplete escape sequence.
+         */
+        void finish() throws IOException {
+            if (state != 0) {
+                state = 0;
+                throw new IOException("Invalid quoted printable encoding; truncated escape sequence");
+            }
+        }
+    }
+
+    /**
+     * An {@link InputStream}, which is decoding quoted-printable data (RFC 2045, section 6.7) incrementally, using a {@link Decoder}.
+     */
+    private static final class QuotedPrintableInputStream extends FilterInputStream {
+
+        /**
+         * The buffer for the encoded data.
+         */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /**
+         * The decoder, which is carrying incomplete escape sequences over.
+         */
+        private final Decoder decoder = new Decoder();
+
+        /**
+         * True, if the underlying stream is exhausted.
+         */
+        private boolean eof;
+
+        private QuotedPrintableInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = new byte[1];
+            final var n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!eof) {
+                // Every encoded byte produces at most one decoded byte, so the encoded data may be decoded straight into the callers array.
+                final var n = in.read(buffer, 0, Math.min(len, buffer.length));
+                if (n == -1) {
+                    eof = true;
+                    decoder.finish();
+                } else {
+                    final var decoded = decoder.decode(buffer, 0, n, b, off);
+                    if (decoded > 0) {
+                        return decoded;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final var b = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                final var count = read(b, 0, (int) Math.min(n - skipped, b.length));
+                if (count == -1) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+    }
+
+    /**
+     * The size of the buffer, which is used by {@link #newInputStream(InputStream)}.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * The shift value required to create the upper nibble from the first of 2 byte values converted from ASCII hex.
      */
     private static final int UPPER_NIBBLE_SHIFT = Byte.SIZE / 2;
 
+    /**
+     * The number of ASCII characters.
+     */
+    private static final int ASCII_CODE_POINT_COUNT = 128;
+
+    /**
+     * Maps ASCII hexadecimal digits to their value. Other characters are mapped to -1.
+     */
+    private static final byte[] HEX_DECODE = newHexDecodeTable();
+
     /**
      * Decodes the encoded byte data writing it to the given output stream.
      *
@@ -37,17 +216,51 @@ final class QuotedPrintableDecoder {
      * @throws IOException Thrown if an IO error occurs
      */
     public static int decode(final byte[] data, final OutputStream out) throws IOException {
-        var off = 0;
-        final var length = data.length;
+        return decode(data, 0, data.length, out);
+    }
+
+    /**
+     * Decodes a range of the encoded byte data into the given array.
+     *
+     * @param data      The array of byte data to decode.
+     * @param offset    The offset of the first byte to decode.
+     * @param length    The number of bytes to decode.
+     * @param out       The array, which receives the decoded data.
+     * @param outOffset The offset of the first decoded byte in the output array.
+     * @return The number of bytes produced.
+     * @throws IOException Thrown if the data isn't valid quoted printable data.
+     * @throws BufferOverflowException The output array is too small. At most {@code length} bytes are produced.
+     */
+    static int decode(final byte[] data, final int offset, final int length, final byte[] out, final int outOffset) throws IOException {
+        return decode(data, offset, length, out, outOffset, out.length);
+    }
+
+    /**
+     * Decodes a range of the encoded byte data into the given array, up to the given limit.
+     *
+     * @param data      The array of byte data to decode.
+     * @param offset    The offset of the first byte to decode.
+     * @param length    The number of bytes to decode.
+     * @param out       The array, which receives the decoded data.
+     * @param outOffset The offset of the first decoded byte in the output array.
+     * @param outLimit  The offset after the last byte, which may be written to the output array.
+     * @return The number of bytes produced.
+     * @throws IOException Thrown if the data isn't valid quoted printable data.
+     * @throws BufferOverflowException The output array is too small.
+     */
+    private static int decode(final byte[] data, final int offset, final int length, final byte[] out, final int outOffset, final int outLimit)
+            throws IOException {
+        var off = offset;
         final var endOffset = off + length;
-        var bytesWritten = 0;
+        var outOff = outOffset;
 
         while (off < endOffset) {
             final var ch = data[off++];
+            final byte b;
 
             // space characters were translated to '_' on encode, so we need to translate them back.
             if (ch == '_') {
-                out.write(' ');
+                b = ' ';
             } else if (ch == '=') {
                 // we found an encoded character. Reduce the 3 char sequence to one.
                 // but first, make sure we have two characters to work with.
@@ -65,22 +278,64 @@ final class QuotedPrintableDecoder {
                     }
                     // this was a soft linebreak inserted by the encoding. We just toss this away
                     // on decode.
-                } else {
-                    // this is a hex pair we need to convert back to a single byte.
-                    final var c1 = hexToBinary(b1);
-                    final var c2 = hexToBinary(b2);
-                    out.write(c1 << UPPER_NIBBLE_SHIFT | c2);
-                    // 3 bytes in, one byte out
-                    bytesWritten++;
+                    continue;
                 }
+                // this is a hex pair we need to convert back to a single byte.
+                b = (byte) (hexToBinary(b1) << UPPER_NIBBLE_SHIFT | hexToBinary(b2));
             } else {
                 // simple character, just write it out.
-                out.write(ch);
-                bytesWritten++;
+                b = ch;
+            }
+            if (outOff == outLimit) {
+                throw new BufferOverflowException();
             }
+            out[outOff++] = b;
         }
 
-        return bytesWritten;
+        return outOff - outOffset;
+    }
+
+    /**
+     * Decodes a range of the encoded byte data into the given buffer, starting at its current position. The buffers position is advanced by the number
+     * of bytes produced.
+     *
+     * @param data   The array of byte data to decode.
+     * @param offset The offset of the first byte to decode.
+     * @param length The number of bytes to decode.
+     * @param out    The buffer, which receives the decoded data.
+     * @return The number of bytes produced.
+     * @throws IOException Thrown if the data isn't valid quoted printable data.
+     * @throws BufferOverflowException The buffer doesn't have enough room for the decoded data.
+     */
+    static int decode(final byte[] data, final int offset, final int length, final ByteBuffer out) throws IOException {
+        final int n;
+        if (out.hasArray()) {
+            final var start = out.arrayOffset() + out.position();
+            n = decode(data, offset, length, out.array(), start, out.arrayOffset() + out.limit());
+            out.position(out.position() + n);
+        } else {
+            final var bytes = new byte[length];
+            n = decode(data, offset, length, bytes, 0);
+            out.put(bytes, 0, n);
+        }
+        return n;
+    }
+
+    /**
+     * Decodes a range of the encoded byte data writing it to the given output stream.
+     *
+     * @param data   The array of byte data to decode.
+     * @param offset The offset of the first byte to decode.
+     * @param length The number of bytes to decode.
+     * @param out    The output stream used to return the decoded data.
+     * @return The number of bytes produced.
+     * @throws IOException Thrown if an IO error occurs
+     */
+    static int decode(final byte[] data, final int offset, final int length, final OutputStream out) throws IOException {
+        final var bytes = new byte[length];
+        final var n = decode(data, offset, length, bytes, 0);
+        out.write(bytes, 0, n);
+        return n;
     }
 
     /**
@@ -91,14 +346,39 @@ final class QuotedPrintableDecoder {
      * @throws IOException Thrown if the byte is not a valid hexadecimal digit.
      */
     private static int hexToBinary(final byte b) throws IOException {
-        // CHECKSTYLE IGNORE MagicNumber FOR NEXT 1 LINE
-        final var i = Character.digit((char) b, 16);
+        final int i = b < 0 ? -1 : HEX_DECODE[b];
         if (i == -1) {
             throw new IOException("Invalid quoted printable encoding: not a valid hex digit: " + b);
         }
         return i;
     }
 
+    /**
+     * Creates the table, which maps ASCII hexadecimal digits to their value.
+     *
+     * @return The table.
+     */
+    private static byte[] newHexDecodeTable() {
+        final var table = new byte[ASCII_CODE_POINT_COUNT];
+        Arrays.fill(table, (byte) -1);
+        // CHECKSTYLE IGNORE MagicNumber FOR NEXT 4 LINES
+        for (var i = 0; i < 16; i++) {
+            table[Character.forDigit(i, 16)] = (byte) i;
+            table[Character.toUpperCase(Character.forDigit(i, 16))] = (byte) i;
+        }
+        return table;
+    }
+
+    /**
+     * Creates an {@link InputStream}, which is decoding the given quoted-printable data (RFC 2045) incrementally.
+     *
+     * @param in The stream, which is reading the encoded data.
+     * @return A stream, which is reading the decoded data.
+     */
+    static InputStream newInputStream(final InputStream in) {
+        return new QuotedPrintableInputStream(in);
+    }
+
     /**
      * Hidden constructor, this class must not be instantiated.
      */
@@ -16,8 +16,8 @@
  */
 package org.apache.commons.fileupload2.core;
 
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 
 /**
  * Utility class to decode/encode character set on HTTP Header fields based on RFC 2231. This implementation adheres to RFC 5987 in particular, which was
@@ -112,21 +112,26 @@ final class RFC2231Utils {
             // missing language
             return encodedText;
         }
-        final var bytes = fromHex(encodedText.substring(langDelimitEnd + 1));
-        return new String(bytes, getJavaCharset(mimeCharset));
+        final var start = langDelimitEnd + 1;
+        // The decoded value can't be longer than the encoded value.
+        final var bytes = new byte[encodedText.length() - start];
+        final var length = fromHex(encodedText, start, bytes);
+        return new String(bytes, 0, length, getJavaCharset(mimeCharset));
     }
 
 
     /**
-     * Converts {@code text} to their corresponding Hex value.
+     * Converts {@code text}, starting at the given index, to their corresponding Hex value.
      *
      * @param text   ASCII text input
-     * @return Byte array of characters decoded from ASCII table
+     * @param start  The index of the first character, which is being converted.
+     * @param out    The array, which receives the characters decoded from ASCII table.
+     * @return The number of bytes, which have been stored in {@code out}.
      */
-    private static byte[] fromHex(final String text) {
+    private static int fromHex(final String text, final int start, final byte[] out) {
         final var shift = 4;
-        final var out = new ByteArrayOutputStream(text.length());
-        for (var i = 0; i < text.length();) {
+        var count = 0;
+        for (var i = start; i < text.length();) {
             final var c = text.charAt(i++);
             if (c == '%') {
                 if (i > text.length() - 2) {
@@ -143,20 +148,20 @@ final class RFC2231Utils {
                 if (b1 < 0 || b2 < 0) {
                     throw new IllegalArgumentException();
                 }
-                out.write(b1 << shift | b2);
+                out[count++] = (byte) (b1 << shift | b2);
             } else if (isAttrChar(c)) {
-                out.write((byte) c);
+                out[count++] = (byte) c;
             } else {
                 throw new IllegalArgumentException();
             }
         }
-        return out.toByteArray();
+        return count;
     }
 
 
-    private static String getJavaCharset(final String mimeCharset) {
+    private static Charset getJavaCharset(final String mimeCharset) throws UnsupportedEncodingException {
         // good enough for standard values
-        return mimeCharset;
+        return MimeUtils.toCharset(mimeCharset);
     }
 
     /**
@@ -70,6 +70,19 @@ public interface RequestContext {
      */
     InputStream getInputStream() throws IOException;
 
+    /**
+     * Gets the parsed content type of the request.
+     * <p>
+     * The default implementation parses the content type on every call. Implementations are encouraged to cache the result.
+     * </p>
+     *
+     * @return The parsed content type of the request, or null, if the request has no content type.
+     * @since 2.0.0
+     */
+    default ContentType getParsedContentType() {
+        return ContentType.parse(getContentType());
+    }
+
     /**
      * Is the Request of type {@code multipart/related}?
      *
@@ -0,0 +1,506 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.apache.commons.io.build.AbstractOrigin;
+import org.apache.commons.io.build.AbstractStreamBuilder;
+import org.apache.commons.io.file.PathUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Packs small spilled parts into shared, append-only segment files.
+ * <p>
+ * Without a segment store, every part, which exceeds the threshold, is written to a temporary file of its own. For uploads with many parts just above the
+ * threshold, most of the cost is creating and deleting those files, rather than writing the bytes. If a {@link SegmentFileStore} is configured (see
+ * {@link DiskFileItemFactory.Builder#setSegmentFileStore(SegmentFileStore)}), then parts, which exceed the threshold, but don't exceed the
+ * {@link #getPartSizeMax() maximum part size}, are kept in memory until they are complete, and then appended to a shared segment file. The
+ * {@link DiskFileItem} references its data as a {@link Slice} of that segment, with an offset and a length.
+ * </p>
+ * <p>
+ * A segment is rolled over, as soon as its size reaches the {@link #getSegmentSizeMax() maximum segment size}. A segment file is deleted, once it has been
+ * rolled over (or the store has been {@link #close() closed}), and every slice in it has been released. Slices are released by {@link DiskFileItem#delete()},
+ * or by the {@link org.apache.commons.io.FileCleaningTracker}, if one is configured.
+ * </p>
+ * <p>
+ * A store may be shared by all requests (rolling segments), or created per request, and closed after the request has been processed (request-scoped
+ * segments).
+ * </p>
+ *
+ * @see Builder
+ * @since 2.0.0
+ */
+public final class SegmentFileStore implements Closeable {
+
+    /**
+     * Builds a new {@link SegmentFileStore} instance.
+     * <p>
+     * For example:
+     * </p>
+     *
+     * <pre>{@code
+     * SegmentFileStore store = SegmentFileStore.builder().setPath(path).setPartSizeMax(256 * 1024).get();
+     * }
+     * </pre>
+     */
+    public static class Builder extends AbstractStreamBuilder<SegmentFileStore, Builder> {
+
+        /**
+         * The maximum size of a part, which is being appended to a segment.
+         */
+        private int partSizeMax = DEFAULT_PART_SIZE_MAX;
+
+        /**
+         * The size, at which a segment is rolled over.
+         */
+        private long segmentSizeMax = DEFAULT_SEGMENT_SIZE_MAX;
+
+        /**
+         * Constructs a new instance.
+         */
+        public Builder() {
+            setPath(PathUtils.getTempDirectory());
+        }
+
+        /**
+         * Constructs a new instance.
+         * <p>
+         * This builder uses the aspects Path, part size maximum, and segment size maximum.
+         * </p>
+         *
+         * @return A new instance.
+         * @throws UnsupportedOperationException if the origin cannot provide a Path.
+         * @see AbstractOrigin#getReader(Charset)
+         */
+        @Override
+        public SegmentFileStore get() {
+            return new SegmentFileStore(this);
+        }
+
+        /**
+         * Returns the maximum size of a part, which is being appended to a segment.
+         * @return The maximum part size, in bytes.
+         */
+        public int getPartSizeMax() {
+            return partSizeMax;
+        }
+
+        /**
+         * Returns the size, at which a segment is rolled over.
+         * @return The maximum segment size, in bytes.
+         */
+        public long getSegmentSizeMax() {
+            return segmentSizeMax;
+        }
+
+        /**
+         * Sets the maximum size of a part, which is being appended to a segment. Larger parts are written to a temporary file of their own. Parts,
+         * which are smaller than this size, are kept in memory until they are complete, so this is also the maximum amount of heap, that a
+         * single part may use.
+         * @param partSizeMax The maximum part size, in bytes. Defaults to {@value SegmentFileStore#DEFAULT_PART_SIZE_MAX}.
+         * @return This builder.
+         */
+        public Builder setPartSizeMax(final int partSizeMax) {
+            this.partSizeMax = partSizeMax;
+            return this;
+        }
+
+        /**
+         * Sets the size, at which a segment is rolled over.
+         * @param segmentSizeMax The maximum segment size, in bytes. Defaults to {@value SegmentFileStore#DEFAULT_SEGMENT_SIZE_MAX}.
+         * @return This builder.
+         */
+        public Builder setSegmentSizeMax(final long segmentSizeMax) {
+            this.segmentSizeMax = segmentSizeMax;
+            return this;
+        }
+    }
+
+    /**
+     * A segment file, which is shared by multiple slices.
+     */
+    private static final class Segment {
+
+        /**
+         * The segment file.
+         */
+        private final Path path;
+
+        /**
+         * The channel, which is used for appending, or null, if the segment has been sealed.
+         */
+        private FileChannel channel;
+
+        /**
+         * The number of bytes, which have been appended so far.
+         */
+        private long size;
+
+        /**
+         * The number of slices, which haven't been released yet.
+         */
+        private int references;
+
+        /**
+         * Creates a new instance, and the segment file.
+         * @param path The segment file.
+         * @throws IOException Creating the segment file failed.
+         */
+        private Segment(final Path path) throws IOException {
+            this.path = path;
+            this.channel = DeferrableOutputStream.newFileChannel(path,
+                    EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        }
+
+        /**
+         * Releases a slice. Deletes the segment file, if it is sealed, and no more slices are referencing it.
+         * @throws IOException Deleting the segment file failed.
+         */
+        private synchronized void release() throws IOException {
+            references--;
+            deleteIfUnused();
+        }
+
+        /**
+         * Seals the segment, so that no more data will be appended.
+         * @throws IOException Closing the channel, or deleting the segment file, failed.
+         */
+        private synchronized void seal() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            deleteIfUnused();
+        }
+
+        private void deleteIfUnused() throws IOException {
+            if (channel == null && references <= 0) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * A range of a segment file, which holds the data of a single part.
+     */
+    public static final class Slice {
+
+        /**
+         * The segment, which is holding the data.
+         */
+        private final Segment segment;
+
+        /**
+         * Offset of the data in the segment file.
+         */
+        private final long offset;
+
+        /**
+         * Length of the data.
+         */
+        private final long length;
+
+        /**
+         * Whether this slice has been released.
+         */
+        private boolean released;
+
+        private Slice(final Segment segment, final long offset, final long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns the slices data.
+         * @return The slices data.
+         * @throws IOException Reading the segment file failed.
+         */
+        public byte[] get() throws IOException {
+            final var bytes = new byte[Math.toIntExact(length)];
+            final var buffer = ByteBuffer.wrap(bytes);
+            try (var channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) == -1) {
+                        throw new EOFException("Segment file " + segment.path + " is truncated.");
+                    }
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * Returns a {@link FileDeleteStrategy}, which releases this slice, rather than deleting the segment file. Used for registering the slice with
+         * a {@link org.apache.commons.io.FileCleaningTracker}.
+         * @return A strategy, which releases this slice.
+         */
+        FileDeleteStrategy getDeleteStrategy() {
+            return new FileDeleteStrategy("SegmentSlice") {
+                @Override
+                protected boolean doDelete(final File file) throws IOException {
+                    release();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Returns an {@link InputStream}, which is reading the slices data.
+         * @return An {@link InputStream}, which is reading the slices data.
+         * @throws IOException Opening the segment file failed.
+         */
+        public InputStream getInputStream() throws IOException {
+            final var channel = FileChannel.open(segment.path, StandardOpenOption.READ);
+            channel.position(offset);
+            // @formatter:off
+            return BoundedInputStream.builder()
+                    .setInputStream(Channels.newInputStream(channel))
+                    .setMaxCount(length)
+                    .get();
+            // @formatter:on
+        }
+
+        /**
+         * Returns the length of the slices data.
+         * @return The length, in bytes.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the offset of the slices data in the segment file.
+         * @return The offset, in bytes.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the path of the segment file. The segment file is shared with other slices, so it must not be moved, or deleted.
+         * @return The segment file.
+         */
+        public Path getPath() {
+            return segment.path;
+        }
+
+        /**
+         * Releases this slice. If this is the last slice, which is referencing a sealed segment, then the segment file is deleted.
+         * Releasing a slice more than once has no effect.
+         * @throws IOException Deleting the segment file failed.
+         */
+        void release() throws IOException {
+            synchronized (segment) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            segment.release();
+        }
+
+        /**
+         * Copies the slices data to the given file.
+         * @param file The target file, which is being created, or overwritten.
+         * @throws IOException Copying the data failed.
+         */
+        public void write(final Path file) throws IOException {
+            try (var in = FileChannel.open(segment.path, StandardOpenOption.READ);
+                    var out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                var position = offset;
+                var remaining = length;
+                while (remaining > 0) {
+                    final var transferred = in.transferTo(position, remaining, out);
+                    if (transferred <= 0) {
+                        throw new EOFException("Segment file " + segment.path + " is truncated.");
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        }
+    }
+
+    /**
+     * The default maximum size of a part, which is being appended to a segment.
+     */
+    public static final int DEFAULT_PART_SIZE_MAX = 262_144;
+
+    /**
+     * The default size, at which a segment is rolled over.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE_MAX = 67_108_864L;
+
+    /**
+     * UID used in unique file name generation.
+     */
+    private static final String UID = UUID.randomUUID().toString().replace('-', '_');
+
+    /**
+     * Counter used in unique identifier generation.
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link Builder}.
+     *
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The directory, in which segment files are created.
+     */
+    private final Path repository;
+
+    /**
+     * The maximum size of a part, which is being appended to a segment.
+     */
+    private final int partSizeMax;
+
+    /**
+     * The size, at which a segment is rolled over.
+     */
+    private final long segmentSizeMax;
+
+    /**
+     * The segment, to which data is currently being appended, or null.
+     */
+    private Segment current;
+
+    private SegmentFileStore(final Builder builder) {
+        this.repository = builder.getPath();
+        this.partSizeMax = builder.partSizeMax;
+        this.segmentSizeMax = builder.segmentSizeMax;
+    }
+
+    /**
+     * Appends the given in-memory data to the current segment.
+     * @param data The data, which is being appended.
+     * @return The slice, which references the appended data.
+     * @throws IOException Creating, or writing to the segment file failed.
+     */
+    synchronized Slice append(final ByteArrayOutputStream data) throws IOException {
+        if (current == null) {
+            Files.createDirectories(repository);
+            current = new Segment(repository.resolve(String.format("segment_%s_%08d.bin", UID, COUNTER.getAndIncrement())));
+        }
+        final var segment = current;
+        final Slice slice;
+        synchronized (segment) {
+            final var offset = segment.size;
+            try {
+                data.writeTo(Channels.newOutputStream(segment.channel));
+            } catch (final IOException e) {
+                discard(segment, offset, e);
+                throw e;
+            }
+            segment.size += data.size();
+            segment.references++;
+            slice = new Slice(segment, offset, data.size());
+        }
+        if (segment.size >= segmentSizeMax) {
+            current = null;
+            segment.seal();
+        }
+        return slice;
+    }
+
+    /**
+     * Seals the current segment. Segment files are deleted, as soon as all of their slices have been released. The store may still be used after
+     * closing: A new segment is created for the next part.
+     *
+     * @throws IOException Closing, or deleting the current segment file failed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (current != null) {
+            final var segment = current;
+            current = null;
+            segment.seal();
+        }
+    }
+
+    /**
+     * Discards the partially written data of a failed append, so that the offset of the next slice matches the segments size. If the segment file can't
+     * be truncated, then the segment is sealed, and abandoned: No more data is appended to it, and it is deleted, once its slices have been released.
+     * @param segment The segment, to which the data was being appended.
+     * @param offset The offset, at which the failed append started.
+     * @param failure The exception, which caused the append to fail. Further failures are added as suppressed exceptions.
+     */
+    private void discard(final Segment segment, final long offset, final IOException failure) {
+        try {
+            segment.channel.truncate(offset);
+            if (segment.channel.size() == offset) {
+                return;
+            }
+        } catch (final IOException e) {
+            failure.addSuppressed(e);
+        }
+        if (current == segment) {
+            current = null;
+        }
+        try {
+            segment.seal();
+        } catch (final IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Returns the maximum size of a part, which is being appended to a segment.
+     * @return The maximum part size, in bytes.
+     */
+    public int getPartSizeMax() {
+        return partSizeMax;
+    }
+
+    /**
+     * Returns the directory, in which segment files are created.
+     * @return The directory, in which segment files are created.
+     */
+    public Path getRepository() {
+        return repository;
+    }
+
+    /**
+     * Returns the size, at which a segment is rolled over.
+     * @return The maximum segment size, in bytes.
+     */
+    public long getSegmentSizeMax() {
+        return segmentSizeMax;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compressed format of spill files, which is used by {@link DeferrableOutputStream}, if spill compression is enabled.
+ * <p>
+ * A compressed spill file starts with a single header byte: {@link #STORED}, if the data follows unchanged, or {@link #DEFLATED}, if the data follows as a
+ * raw deflate stream. The decision is taken by probing the first {@link #PROBE_SIZE} bytes: Content, which starts with the magic number of a compressed
+ * format (ZIP, GZIP, JPEG, PNG, and so on), or which doesn't shrink noticeably, when the probe is deflated, is stored.
+ * </p>
+ */
+final class SpillCompression {
+
+    /**
+     * An {@link OutputStream}, which is writing the compressed spill format. The underlying stream may be replaced while writing, for example, if the output
+     * file is promoted to another {@link SpillTier}.
+     */
+    static final class CompressingOutputStream extends OutputStream {
+
+        /**
+         * The probe, which is collected before the header is written, or null, if the header has already been written.
+         */
+        private byte[] probe = new byte[PROBE_SIZE];
+
+        /**
+         * The number of bytes in the probe.
+         */
+        private int probeLength;
+
+        /**
+         * The deflater, if the data is being deflated, otherwise null.
+         */
+        private Deflater deflater;
+
+        /**
+         * The buffer for the deflaters output.
+         */
+        private byte[] buffer;
+
+        /**
+         * The underlying stream.
+         */
+        private OutputStream target;
+
+        /**
+         * True, if the stream has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Creates a new instance.
+         * @param target The underlying stream.
+         */
+        CompressingOutputStream(final OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (OutputStream os = target) {
+                if (probe != null) {
+                    writeHeader();
+                }
+                if (deflater != null) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        os.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                }
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+        }
+
+        /**
+         * Passes the given bytes to the deflater, and writes the deflaters output.
+         * @param bytes The bytes, which are being deflated.
+         * @param offset Offset of the first byte.
+         * @param length Number of bytes.
+         * @throws IOException Writing to the underlying stream failed.
+         */
+        private void deflate(final byte[] bytes, final int offset, final int length) throws IOException {
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                target.write(buffer, 0, deflater.deflate(buffer));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        /**
+         * Returns true, if the data is being deflated. Returns false, if the data is stored, or if the probe is still being collected.
+         * @return True, if the data is being deflated.
+         */
+        boolean isDeflating() {
+            return deflater != null;
+        }
+
+        /**
+         * Replaces the underlying stream. The current stream is not closed.
+         * @param target The new underlying stream.
+         */
+        void setTarget(final OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (closed) {
+                throw new IOException("This stream has already been closed.");
+            }
+            int off = offset;
+            int len = length;
+            if (probe != null) {
+                final int n = Math.min(len, PROBE_SIZE - probeLength);
+                System.arraycopy(bytes, off, probe, probeLength, n);
+                probeLength += n;
+                off += n;
+                len -= n;
+                if (probeLength < PROBE_SIZE) {
+                    return;
+                }
+                writeHeader();
+            }
+            if (len > 0) {
+                if (deflater == null) {
+                    target.write(bytes, off, len);
+                } else {
+                    deflate(bytes, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        /**
+         * Probes the collected data, writes the header, and the probe.
+         * @throws IOException Writing to the underlying stream failed.
+         */
+        private void writeHeader() throws IOException {
+            final byte[] bytes = probe;
+            probe = null;
+            if (isCompressible(bytes, probeLength)) {
+                target.write(DEFLATED);
+                deflater = new Deflater(LEVEL, true);
+                buffer = new byte[BUFFER_SIZE];
+                deflate(bytes, 0, probeLength);
+            } else {
+                target.write(STORED);
+                target.write(bytes, 0, probeLength);
+            }
+        }
+    }
+
+    /**
+     * Header byte of a spill file, which holds the data unchanged.
+     */
+    static final int STORED = 0;
+
+    /**
+     * Header byte of a spill file, which holds the data as a raw deflate stream.
+     */
+    static final int DEFLATED = 1;
+
+    /**
+     * The number of bytes, which are probed before deciding, whether the data is compressed.
+     */
+    static final int PROBE_SIZE = 8192;
+
+    /**
+     * The size of the deflaters, and inflaters buffers.
+     */
+    private static final int BUFFER_SIZE = 65_536;
+
+    /**
+     * The compression level. Spill files are short-lived, so we prefer throughput over ratio.
+     */
+    private static final int LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * Magic numbers of formats, which are already compressed.
+     */
+    private static final byte[][] MAGIC_NUMBERS = {
+        // ZIP (including JAR, DOCX, XLSX, ODF, EPUB, APK)
+        bytes('P', 'K', 3, 4), bytes('P', 'K', 5, 6), bytes('P', 'K', 7, 8),
+        // GZIP
+        bytes(0x1f, 0x8b),
+        // JPEG
+        bytes(0xff, 0xd8, 0xff),
+        // PNG
+        bytes(0x89, 'P', 'N', 'G'),
+        // GIF
+        bytes('G', 'I', 'F', '8'),
+        // 7z
+        bytes('7', 'z', 0xbc, 0xaf, 0x27, 0x1c),
+        // bzip2
+        bytes('B', 'Z', 'h'),
+        // xz
+        bytes(0xfd, '7', 'z', 'X', 'Z', 0),
+        // Zstandard
+        bytes(0x28, 0xb5, 0x2f, 0xfd),
+        // RAR
+        bytes('R', 'a', 'r', '!'),
+        // Ogg
+        bytes('O', 'g', 'g', 'S'),
+        // MP3 with ID3 tag
+        bytes('I', 'D', '3'),
+        // Matroska, WebM
+        bytes(0x1a, 0x45, 0xdf, 0xa3)};
+
+    /**
+     * Creates a magic number from the given values.
+     * @param values The magic number, as unsigned values.
+     * @return The magic number.
+     */
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns true, if the given data is worth compressing. That is the case, if the data doesn't start with the magic number of a compressed format, and if
+     * deflating the data saves at least one eighth.
+     * @param bytes The data.
+     * @param length The number of bytes.
+     * @return True, if the data should be deflated, otherwise false.
+     */
+    static boolean isCompressible(final byte[] bytes, final int length) {
+        for (final byte[] magic : MAGIC_NUMBERS) {
+            if (startsWith(bytes, length, magic, 0)) {
+                return false;
+            }
+        }
+        // ISO base media (MP4, MOV, HEIC, AVIF), and RIFF (WEBP, AVI, WAV) containers.
+        if (startsWith(bytes, length, bytes('f', 't', 'y', 'p'), 4)
+                || startsWith(bytes, length, bytes('R', 'I', 'F', 'F'), 0) && startsWith(bytes, length, bytes('W', 'E', 'B', 'P'), 8)) {
+            return false;
+        }
+        if (length == 0) {
+            return false;
+        }
+        final var deflater = new Deflater(LEVEL, true);
+        try {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            final byte[] buffer = new byte[length];
+            int deflated = 0;
+            while (!deflater.finished() && deflated < length) {
+                deflated += deflater.deflate(buffer, 0, buffer.length);
+            }
+            return deflater.finished() && deflated <= length - length / 8;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Creates an {@link InputStream}, which is reading the original data from the given stream in the compressed spill format.
+     * @param in The stream, which is reading the spill file.
+     * @return An {@link InputStream}, which is reading the original data.
+     * @throws IOException Reading the header failed.
+     */
+    static InputStream newInputStream(final InputStream in) throws IOException {
+        final int header;
+        try {
+            header = in.read();
+        } catch (final IOException e) {
+            in.close();
+            throw e;
+        }
+        switch (header) {
+        case -1:
+        case STORED:
+            return in;
+        case DEFLATED:
+            final var inflater = new Inflater(true);
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                }
+            };
+        default:
+            in.close();
+            throw new IOException("Invalid spill file header: " + header);
+        }
+    }
+
+    /**
+     * Returns true, if the given data contains the given magic number at the given offset.
+     * @param bytes The data.
+     * @param length The number of bytes.
+     * @param magic The magic number.
+     * @param offset The offset of the magic number.
+     * @return True, if the data contains the magic number.
+     */
+    private static boolean startsWith(final byte[] bytes, final int length, final byte[] magic, final int offset) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (bytes[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SpillCompression() {
+        // Not instantiated.
+    }
+}
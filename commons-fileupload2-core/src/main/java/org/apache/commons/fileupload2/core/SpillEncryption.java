@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * The encrypted format of spill files, which is used by {@link DeferrableOutputStream}, if spill encryption is enabled.
+ * <p>
+ * The data is encrypted with {@value #TRANSFORMATION}, under a random key, and a random initialization vector, which are generated per spill file, and held
+ * in memory only. Counter mode is a stream cipher mode: The encrypted file has the same size as the original data, and it can be written incrementally, and
+ * read sequentially, without buffering. The file is unreadable, once the {@link DeferrableOutputStream} has been garbage collected, so there is no key
+ * management.
+ * </p>
+ */
+final class SpillEncryption {
+
+    /**
+     * An {@link OutputStream}, which is encrypting the data. The underlying stream may be replaced while writing, for example, if the output file is promoted
+     * to another {@link SpillTier}.
+     */
+    static final class EncryptingOutputStream extends OutputStream {
+
+        /**
+         * The key.
+         */
+        private final SecretKey key;
+
+        /**
+         * The initialization vector.
+         */
+        private final byte[] iv;
+
+        /**
+         * The cipher, which is encrypting the data.
+         */
+        private final Cipher cipher;
+
+        /**
+         * The buffer for the ciphers output.
+         */
+        private final byte[] buffer;
+
+        /**
+         * The underlying stream.
+         */
+        private OutputStream target;
+
+        /**
+         * True, if the stream has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Creates a new instance with a random key, and a random initialization vector.
+         * @param target The underlying stream.
+         * @throws IOException The cipher isn't available.
+         */
+        EncryptingOutputStream(final OutputStream target) throws IOException {
+            this.target = target;
+            try {
+                final var keyGenerator = KeyGenerator.getInstance(ALGORITHM);
+                keyGenerator.init(KEY_SIZE, RANDOM);
+                key = keyGenerator.generateKey();
+                iv = new byte[IV_SIZE];
+                RANDOM.nextBytes(iv);
+                cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+                buffer = new byte[cipher.getOutputSize(CHUNK_SIZE)];
+            } catch (final GeneralSecurityException e) {
+                throw new IOException("Spill encryption isn't available: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (OutputStream os = target) {
+                final byte[] bytes = cipher.doFinal();
+                if (bytes != null) {
+                    os.write(bytes);
+                }
+            } catch (final GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        /**
+         * Creates an {@link InputStream}, which is decrypting the data from the given stream.
+         * @param in The stream, which is reading the spill file.
+         * @return An {@link InputStream}, which is reading the original data.
+         * @throws IOException The cipher isn't available.
+         */
+        InputStream newInputStream(final InputStream in) throws IOException {
+            try {
+                final var decrypter = Cipher.getInstance(TRANSFORMATION);
+                decrypter.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+                return new CipherInputStream(in, decrypter);
+            } catch (final GeneralSecurityException e) {
+                in.close();
+                throw new IOException("Spill encryption isn't available: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Replaces the underlying stream. The current stream is not closed.
+         * @param target The new underlying stream.
+         */
+        void setTarget(final OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (closed) {
+                throw new IOException("This stream has already been closed.");
+            }
+            try {
+                int off = offset;
+                int len = length;
+                while (len > 0) {
+                    final int n = Math.min(len, CHUNK_SIZE);
+                    target.write(buffer, 0, cipher.update(bytes, off, n, buffer, 0));
+                    off += n;
+                    len -= n;
+                }
+            } catch (final GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+    }
+
+    /**
+     * The key algorithm.
+     */
+    private static final String ALGORITHM = "AES";
+
+    /**
+     * The cipher transformation.
+     */
+    static final String TRANSFORMATION = "AES/CTR/NoPadding";
+
+    /**
+     * The key size, in bits.
+     */
+    private static final int KEY_SIZE = 256;
+
+    /**
+     * The size of the initialization vector, in bytes.
+     */
+    private static final int IV_SIZE = 16;
+
+    /**
+     * The number of bytes, which are passed to the cipher at once.
+     */
+    private static final int CHUNK_SIZE = 65_536;
+
+    /**
+     * The source of keys, and initialization vectors.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SpillEncryption() {
+        // Not instantiated.
+    }
+}
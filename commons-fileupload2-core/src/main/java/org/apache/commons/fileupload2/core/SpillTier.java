@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.apache.commons.io.build.AbstractOrigin;
+import org.apache.commons.io.build.AbstractStreamBuilder;
+
+/**
+ * An intermediate storage tier for spilled data, for example a directory on a memory backed file system like {@code /dev/shm}.
+ * <p>
+ * Without spill tiers, a {@link DeferrableOutputStream} has two tiers: The heap, up to the threshold, and a temporary file in the repository. If spill tiers
+ * are configured (see {@link DiskFileItemFactory.Builder#setSpillTiers(SpillTier...)}), then data, which exceeds the threshold, is written to the first tier,
+ * which accepts it. A part is promoted to the next tier mid-stream, as soon as it outgrows the current tier, either because its size exceeds the tiers
+ * {@link #getPartSizeMax() maximum part size}, or because the tiers {@link #getCapacity() capacity} is exhausted. Parts, which outgrow the last tier, are
+ * promoted to the repository.
+ * </p>
+ * <p>
+ * The capacity is accounted across all parts in the tier: A spill tier is typically shared by all requests. Capacity is released, when the file is deleted by
+ * {@link DiskFileItem#delete()}, moved by {@link DiskFileItem#write(Path)}, promoted, or deleted by the {@link org.apache.commons.io.FileCleaningTracker}, if
+ * one is configured.
+ * </p>
+ *
+ * @see Builder
+ * @since 2.0.0
+ */
+public final class SpillTier {
+
+    /**
+     * Builds a new {@link SpillTier} instance.
+     * <p>
+     * For example:
+     * </p>
+     *
+     * <pre>{@code
+     * SpillTier shm = SpillTier.builder().setPath("/dev/shm/uploads").setPartSizeMax(8 * 1024 * 1024).setCapacity(512 * 1024 * 1024).get();
+     * }
+     * </pre>
+     */
+    public static class Builder extends AbstractStreamBuilder<SpillTier, Builder> {
+
+        /**
+         * The maximum size of a part in this tier.
+         */
+        private long partSizeMax = Long.MAX_VALUE;
+
+        /**
+         * The maximum number of bytes in this tier, across all parts.
+         */
+        private long capacity = Long.MAX_VALUE;
+
+        /**
+         * Constructs a new instance.
+         */
+        public Builder() {
+            // empty
+        }
+
+        /**
+         * Constructs a new instance.
+         * <p>
+         * This builder uses the aspects Path, part size maximum, and capacity.
+         * </p>
+         *
+         * @return A new instance.
+         * @throws UnsupportedOperationException if the origin cannot provide a Path.
+         * @see AbstractOrigin#getReader(Charset)
+         */
+        @Override
+        public SpillTier get() {
+            return new SpillTier(this);
+        }
+
+        /**
+         * Returns the maximum number of bytes in this tier, across all parts.
+         * @return The capacity, in bytes.
+         */
+        public long getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Returns the maximum size of a part in this tier.
+         * @return The maximum part size, in bytes.
+         */
+        public long getPartSizeMax() {
+            return partSizeMax;
+        }
+
+        /**
+         * Sets the maximum number of bytes in this tier, across all parts.
+         * @param capacity The capacity, in bytes. Defaults to {@link Long#MAX_VALUE} (unlimited).
+         * @return This builder.
+         */
+        public Builder setCapacity(final long capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a part in this tier. Larger parts are promoted to the next tier.
+         * @param partSizeMax The maximum part size, in bytes. Defaults to {@link Long#MAX_VALUE} (unlimited).
+         * @return This builder.
+         */
+        public Builder setPartSizeMax(final long partSizeMax) {
+            this.partSizeMax = partSizeMax;
+            return this;
+        }
+    }
+
+    /**
+     * Constructs a new {@link Builder}.
+     *
+     * @return A new {@link Builder}.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The directory, in which files are created.
+     */
+    private final Path path;
+
+    /**
+     * The maximum size of a part in this tier.
+     */
+    private final long partSizeMax;
+
+    /**
+     * The maximum number of bytes in this tier, across all parts.
+     */
+    private final long capacity;
+
+    /**
+     * The number of bytes, which are currently reserved.
+     */
+    private final AtomicLong used = new AtomicLong();
+
+    /**
+     * The number of bytes, which are reserved per file.
+     */
+    private final Map<Path, AtomicLong> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * The strategy, which is used by the {@link org.apache.commons.io.FileCleaningTracker}: Deletes the file, and releases its capacity.
+     */
+    private final FileDeleteStrategy deleteStrategy = new FileDeleteStrategy("SpillTier") {
+        @Override
+        protected boolean doDelete(final File file) throws IOException {
+            final var p = file.toPath();
+            try {
+                return Files.deleteIfExists(p);
+            } finally {
+                release(p);
+            }
+        }
+    };
+
+    private SpillTier(final Builder builder) {
+        this.path = builder.getPath();
+        this.partSizeMax = builder.partSizeMax;
+        this.capacity = builder.capacity;
+    }
+
+    /**
+     * Returns, whether the given file has been created in this tier, and has not yet been released.
+     * @param file The file, which is being checked.
+     * @return True, if the file is holding capacity in this tier.
+     */
+    boolean contains(final Path file) {
+        return reservations.containsKey(file);
+    }
+
+    /**
+     * Returns the maximum number of bytes in this tier, across all parts.
+     * @return The capacity, in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a {@link FileDeleteStrategy}, which deletes a file, and releases its capacity. Used for registering the file with a
+     * {@link org.apache.commons.io.FileCleaningTracker}.
+     * @return A strategy, which deletes a file, and releases its capacity.
+     */
+    FileDeleteStrategy getDeleteStrategy() {
+        return deleteStrategy;
+    }
+
+    /**
+     * Returns the maximum size of a part in this tier.
+     * @return The maximum part size, in bytes.
+     */
+    public long getPartSizeMax() {
+        return partSizeMax;
+    }
+
+    /**
+     * Returns the directory, in which files are created.
+     * @return The directory, in which files are created.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of bytes, which are currently held by files in this tier.
+     * @return The number of bytes, which are currently used.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Releases the capacity, which is held by the given file. Does nothing, if the file isn't holding capacity in this tier.
+     * @param file The file, which has been deleted, or moved.
+     */
+    void release(final Path file) {
+        final var reserved = reservations.remove(file);
+        if (reserved != null) {
+            used.addAndGet(-reserved.get());
+        }
+    }
+
+    /**
+     * Attempts to reserve capacity for the given file.
+     * @param file The file, which is about to grow.
+     * @param numberOfBytes The number of bytes, which are about to be written.
+     * @return True, if the capacity has been reserved. False, if the tier doesn't have enough capacity left.
+     */
+    boolean reserve(final Path file, final long numberOfBytes) {
+        for (;;) {
+            final var current = used.get();
+            if (current + numberOfBytes > capacity) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + numberOfBytes)) {
+                reservations.computeIfAbsent(file, p -> new AtomicLong()).addAndGet(numberOfBytes);
+                return true;
+            }
+        }
+    }
+}
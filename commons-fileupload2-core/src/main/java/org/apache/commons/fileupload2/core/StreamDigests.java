@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Computes a set of {@link MessageDigest message digests}, and {@link Checksum checksums}, while the data passes through a {@link DeferrableOutputStream}.
+ * The checksum algorithms {@code CRC32}, {@code CRC32C}, and {@code Adler32} are supported in addition to the {@link MessageDigest} algorithms. Checksums
+ * are reported as 4 bytes in big-endian order.
+ */
+final class StreamDigests {
+
+    /**
+     * Creates a {@link Checksum} for the given algorithm, if it is a checksum algorithm.
+     * @param algorithm The algorithm name.
+     * @return The checksum, or null, if the algorithm isn't a checksum algorithm.
+     */
+    private static Checksum newChecksum(final String algorithm) {
+        switch (algorithm.toUpperCase(Locale.ROOT)) {
+        case "CRC32":
+            return new CRC32();
+        case "CRC32C":
+            return new CRC32C();
+        case "ADLER32":
+            return new Adler32();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Creates a {@link MessageDigest}, or a {@link Checksum} for the given algorithm.
+     * @param algorithm The algorithm name.
+     * @return The message digest, or the checksum.
+     * @throws IllegalArgumentException The algorithm isn't supported.
+     */
+    private static Object newDigest(final String algorithm) {
+        final Checksum checksum = newChecksum(algorithm);
+        if (checksum != null) {
+            return checksum;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+
+    /**
+     * Checks, whether the given algorithms are supported.
+     * @param algorithms The algorithm names.
+     * @throws IllegalArgumentException An algorithm isn't supported.
+     */
+    static void validate(final List<String> algorithms) {
+        algorithms.forEach(StreamDigests::newDigest);
+    }
+
+    /**
+     * The algorithm names, in the order of configuration.
+     */
+    private final List<String> algorithms;
+
+    /**
+     * Either a {@link MessageDigest}, or a {@link Checksum}, for every algorithm.
+     */
+    private final List<Object> digests;
+
+    /**
+     * The computed digests, after {@link #finish()} has been invoked, or null.
+     */
+    private Map<String, byte[]> results;
+
+    /**
+     * Creates a new instance.
+     * @param algorithms The algorithm names.
+     * @throws IllegalArgumentException An algorithm isn't supported.
+     */
+    StreamDigests(final List<String> algorithms) {
+        this.algorithms = algorithms;
+        this.digests = new ArrayList<>(algorithms.size());
+        for (final String algorithm : algorithms) {
+            digests.add(newDigest(algorithm));
+        }
+    }
+
+    /**
+     * Completes the computation, and returns the digests.
+     * @return The digests, keyed by algorithm name (case-insensitive).
+     */
+    Map<String, byte[]> finish() {
+        if (results == null) {
+            final Map<String, byte[]> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < algorithms.size(); i++) {
+                final Object digest = digests.get(i);
+                if (digest instanceof MessageDigest) {
+                    map.put(algorithms.get(i), ((MessageDigest) digest).digest());
+                } else {
+                    map.put(algorithms.get(i), ByteBuffer.allocate(Integer.BYTES).putInt((int) ((Checksum) digest).getValue()).array());
+                }
+            }
+            results = Collections.unmodifiableMap(map);
+        }
+        return results;
+    }
+
+    /**
+     * Updates all digests with the given bytes.
+     * @param buffer The buffer, which contains the bytes.
+     * @param offset Offset of the first byte in the buffer.
+     * @param length Number of bytes.
+     */
+    void update(final byte[] buffer, final int offset, final int length) {
+        for (final Object digest : digests) {
+            if (digest instanceof MessageDigest) {
+                ((MessageDigest) digest).update(buffer, offset, length);
+            } else {
+                ((Checksum) digest).update(buffer, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Updates all digests with the given byte.
+     * @param b The byte.
+     */
+    void update(final int b) {
+        for (final Object digest : digests) {
+            if (digest instanceof MessageDigest) {
+                ((MessageDigest) digest).update((byte) b);
+            } else {
+                ((Checksum) digest).update(b);
+            }
+        }
+    }
+}
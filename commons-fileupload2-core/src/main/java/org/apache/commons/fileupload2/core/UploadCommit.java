@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Commits a set of file items to their final destinations as a single unit.
+ * <p>
+ * Calling {@link FileItem#write(Path)} item by item leaves partial state behind, if one of the items fails, and pays for a metadata sync per item. Instead,
+ * a commit proceeds in phases:
+ * </p>
+ * <ol>
+ * <li>Every item is written to a hidden staging file next to its destination, and the staging file is synced.</li>
+ * <li>Existing destination files are renamed to hidden backup files.</li>
+ * <li>The staging files are renamed to their destinations, as one batch.</li>
+ * <li>Every affected directory is synced once.</li>
+ * <li>The backup files are deleted.</li>
+ * </ol>
+ * <p>
+ * If any phase fails, then the commit is rolled back: Destinations, which have already been replaced, are restored from their backups, staging files are
+ * removed, and all items are deleted, as {@link AbstractFileUpload#parseRequest(RequestContext)} does on an unsuccessful parse. For example:
+ * </p>
+ *
+ * <pre>{@code
+ * final List<DiskFileItem> items = upload.parseRequest(request);
+ * final UploadCommit commit = new UploadCommit();
+ * for (final DiskFileItem item : items) {
+ *     if (!item.isFormField()) {
+ *         commit.add(item, uploadDir.resolve(item.getFieldName()));
+ *     }
+ * }
+ * commit.commit();
+ * }
+ * </pre>
+ *
+ * @since 2.0.0
+ */
+public class UploadCommit {
+
+    /**
+     * An item, and its destination.
+     */
+    private static final class Entry {
+
+        /**
+         * The item, which is being committed.
+         */
+        private final FileItem<?> item;
+
+        /**
+         * The items destination.
+         */
+        private final Path target;
+
+        /**
+         * The staging file, if it has been created, and not yet renamed, or null.
+         */
+        private Path staged;
+
+        /**
+         * The backup of the previous destination file, if any, or null.
+         */
+        private Path backup;
+
+        /**
+         * True, if the staging file has been renamed to the destination.
+         */
+        private boolean renamed;
+
+        private Entry(final FileItem<?> item, final Path target) {
+            this.item = item;
+            this.target = target;
+        }
+    }
+
+    /**
+     * UID used in unique file name generation.
+     */
+    private static final String UID = UUID.randomUUID().toString().replace('-', '_');
+
+    /**
+     * Counter used in unique identifier generation.
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Renames the source file to the target file, atomically, if possible.
+     *
+     * @param source The file, which is being renamed.
+     * @param target The new name.
+     * @throws IOException Renaming the file failed.
+     */
+    private static void rename(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns a unique, hidden sibling of the given file.
+     *
+     * @param file   The file, for which a sibling is being created.
+     * @param suffix The siblings suffix.
+     * @return The sibling path.
+     */
+    private static Path sibling(final Path file, final String suffix) {
+        return file.resolveSibling(String.format(".%s.%s_%08d.%s", file.getFileName(), UID, COUNTER.getAndIncrement(), suffix));
+    }
+
+    /**
+     * Flushes the given directory's metadata to the storage device. Not all platforms support opening a directory, so failures are ignored.
+     *
+     * @param dir The directory, which is being synced.
+     */
+    private static void syncDirectory(final Path dir) {
+        try (var channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final IOException e) {
+            // Not supported on this platform, ignore.
+        }
+    }
+
+    /**
+     * Flushes the given file's content to the storage device.
+     *
+     * @param file The file, which is being synced.
+     * @throws IOException Syncing the file failed.
+     */
+    private static void syncFile(final Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * The items, and their destinations.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * The destinations, which have already been added.
+     */
+    private final Set<Path> targets = new HashSet<>();
+
+    /**
+     * True, if {@link #commit()} has been invoked.
+     */
+    private boolean committed;
+
+    /**
+     * Constructs a new instance.
+     */
+    public UploadCommit() {
+        // empty
+    }
+
+    /**
+     * Adds an item to this commit.
+     *
+     * @param item   The item, which is being written.
+     * @param target The items final destination. Its parent directory must exist.
+     * @return {@code this} instance.
+     * @throws IllegalArgumentException The destination has already been added.
+     * @throws IllegalStateException    The commit has already been performed.
+     */
+    public UploadCommit add(final FileItem<?> item, final Path target) {
+        if (committed) {
+            throw new IllegalStateException("This commit has already been performed.");
+        }
+        final var absoluteTarget = target.toAbsolutePath().normalize();
+        if (!targets.add(absoluteTarget)) {
+            throw new IllegalArgumentException("Duplicate destination: " + target);
+        }
+        entries.add(new Entry(item, absoluteTarget));
+        return this;
+    }
+
+    /**
+     * Writes all items to their destinations. Either all destinations are replaced, or, if an error occurs, none of them.
+     *
+     * @throws FileUploadException Committing the items failed. The commit has been rolled back, and the items have been deleted.
+     * @throws IllegalStateException The commit has already been performed.
+     */
+    public void commit() throws FileUploadException {
+        if (committed) {
+            throw new IllegalStateException("This commit has already been performed.");
+        }
+        committed = true;
+        try {
+            final Set<Path> dirs = new LinkedHashSet<>();
+            for (final Entry entry : entries) {
+                final var staged = sibling(entry.target, "stage");
+                entry.staged = staged;
+                entry.item.write(staged);
+                syncFile(staged);
+                dirs.add(entry.target.getParent());
+            }
+            for (final Entry entry : entries) {
+                if (Files.exists(entry.target, LinkOption.NOFOLLOW_LINKS)) {
+                    final var backup = sibling(entry.target, "bak");
+                    rename(entry.target, backup);
+                    entry.backup = backup;
+                }
+            }
+            for (final Entry entry : entries) {
+                rename(entry.staged, entry.target);
+                entry.staged = null;
+                entry.renamed = true;
+            }
+            dirs.forEach(UploadCommit::syncDirectory);
+        } catch (final IOException | RuntimeException e) {
+            rollback(e);
+            final List<FileItem<?>> items = new ArrayList<>();
+            entries.forEach(entry -> items.add(entry.item));
+            AbstractFileUpload.deleteQuietly(items);
+            throw new FileUploadException("Commit failed: " + e.getMessage(), e);
+        }
+        for (final Entry entry : entries) {
+            if (entry.backup != null) {
+                try {
+                    Files.deleteIfExists(entry.backup);
+                } catch (final IOException ignored) {
+                    // The commit has succeeded, a stale backup is harmless.
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the previous state of all destinations.
+     *
+     * @param cause The exception, which caused the rollback. Failures during the rollback are added as suppressed exceptions.
+     */
+    private void rollback(final Exception cause) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final var entry = entries.get(i);
+            try {
+                if (entry.renamed) {
+                    Files.deleteIfExists(entry.target);
+                }
+                if (entry.backup != null) {
+                    rename(entry.backup, entry.target);
+                }
+                if (entry.staged != null) {
+                    Files.deleteIfExists(entry.staged);
+                }
+            } catch (final IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The items of a request, which have been parsed by {@link AbstractFileUpload#parseUploadResult(RequestContext)}.
+ * <p>
+ * An upload result owns its items: Closing the result deletes all items in a single batch, so that their temporary files are removed deterministically,
+ * rather than by a {@link org.apache.commons.io.FileCleaningTracker}, after the next garbage collection. Items, which are to be kept, must be moved to
+ * their destination, using {@link FileItem#write(java.nio.file.Path)}, before the result is closed. Items, which have been streamed to their final
+ * destination (see {@link FileItem#isCommitted()}), are kept. Typical use:
+ * </p>
+ *
+ * <pre>{@code
+ * try (UploadResult<DiskFileItem> result = upload.parseUploadResult(request)) {
+ *     for (DiskFileItem item : result.getParameterMap().get("file")) {
+ *         item.write(destination.resolve(...));
+ *     }
+ * }
+ * }
+ * </pre>
+ * <p>
+ * If a cleanup executor has been configured (see {@link AbstractFileUpload#setCleanupExecutor(Executor)}), then {@link #close()} returns immediately, and
+ * the items are deleted on the executor. Use {@link #getFreedBytes()} to learn, when, and how much has been freed.
+ * </p>
+ *
+ * @param <I> The FileItem type.
+ * @since 2.0.0
+ */
+public final class UploadResult<I extends FileItem<I>> extends AbstractList<I> implements AutoCloseable {
+
+    /**
+     * The items.
+     */
+    private final List<I> items;
+
+    /**
+     * The executor, which deletes the items, or null to delete them on the closing thread.
+     */
+    private final Executor cleanupExecutor;
+
+    /**
+     * Completes with the number of freed bytes, when the items have been deleted.
+     */
+    private final CompletableFuture<Long> freedBytes = new CompletableFuture<>();
+
+    /**
+     * True, if the result has been closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * The items, grouped by field name, or null, if the map hasn't been created yet.
+     */
+    private Map<String, List<I>> parameterMap;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param items           The items, in the order that they were transmitted.
+     * @param cleanupExecutor The executor, which deletes the items, or null to delete them on the closing thread.
+     */
+    UploadResult(final List<I> items, final Executor cleanupExecutor) {
+        this.items = items;
+        this.cleanupExecutor = cleanupExecutor;
+    }
+
+    /**
+     * Deletes all items, except for the committed ones. If a cleanup executor has been configured, then the items are deleted asynchronously, and this
+     * method returns immediately. Otherwise, the items are deleted on the calling thread. Does nothing, if the result has already been closed.
+     *
+     * @throws IOException Deleting an item failed. All items are deleted anyway, and further failures are added as suppressed exceptions.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (cleanupExecutor != null) {
+            try {
+                cleanupExecutor.execute(() -> {
+                    try {
+                        delete();
+                    } catch (final IOException e) {
+                        // Reported by getFreedBytes().
+                    }
+                });
+                return;
+            } catch (final RejectedExecutionException e) {
+                // Fall back to deleting the items on the calling thread.
+            }
+        }
+        delete();
+    }
+
+    /**
+     * Deletes all items, and completes {@link #freedBytes}.
+     *
+     * @throws IOException Deleting an item failed.
+     */
+    private void delete() throws IOException {
+        long freed = 0;
+        IOException failure = null;
+        for (final I item : items) {
+            if (item.isCommitted()) {
+                // The item has been streamed to its final destination, which isn't ours to delete.
+                continue;
+            }
+            final var size = item.getSize();
+            try {
+                item.delete();
+                freed += size;
+            } catch (final IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            freedBytes.completeExceptionally(failure);
+            throw failure;
+        }
+        freedBytes.complete(freed);
+    }
+
+    @Override
+    public I get(final int index) {
+        return items.get(index);
+    }
+
+    /**
+     * Returns a future, which completes with the number of bytes, which have been freed, once the items have been deleted. The number is the sum of the
+     * items sizes, in memory, or on disk. Committed items aren't counted. The future completes exceptionally, if deleting an item failed.
+     *
+     * @return A future, which completes with the number of freed bytes.
+     */
+    public CompletableFuture<Long> getFreedBytes() {
+        return freedBytes.copy();
+    }
+
+    /**
+     * Returns the items, grouped by field name. The map preserves the order, in which the fields were transmitted.
+     *
+     * @return An unmodifiable map of the items, grouped by field name.
+     */
+    public synchronized Map<String, List<I>> getParameterMap() {
+        if (parameterMap == null) {
+            final Map<String, List<I>> map = new LinkedHashMap<>();
+            for (final I item : items) {
+                map.computeIfAbsent(item.getFieldName(), k -> new ArrayList<>()).add(item);
+            }
+            map.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            parameterMap = Collections.unmodifiableMap(map);
+        }
+        return parameterMap;
+    }
+
+    /**
+     * Tests, whether the result has been closed.
+     *
+     * @return True, if {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+}
@@ -22,8 +22,13 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.commons.fileupload2.core.MultipartInput.FileUploadBoundaryException;
 import org.junit.jupiter.api.Test;
@@ -40,6 +45,33 @@ import org.junit.jupiter.api.Test;
 public abstract class AbstractFileUploadTest<AFU extends AbstractFileUpload<R, I, F>, R, I extends FileItem<I>, F extends FileItemFactory<I>>
         extends AbstractFileUploadWrapper<AFU, R, I, F> {
 
+    /**
+     * A stand-in for a malware scanner, which vetoes parts containing a signature, even if the signature is split across chunks.
+     */
+    private static final class SignatureScanner implements PartInspector {
+
+        static final byte[] SIGNATURE = "FILEUPLOAD-TEST-SIGNATURE".getBytes(StandardCharsets.US_ASCII);
+
+        /**
+         * The last bytes of the previous chunks, which may hold the beginning of the signature.
+         */
+        private final ByteArrayOutputStream tail = new ByteArrayOutputStream();
+
+        @Override
+        public void update(final byte[] buffer, final int offset, final int length) throws IOException {
+            tail.write(buffer, offset, length);
+            final var data = tail.toByteArray();
+            for (var i = 0; i + SIGNATURE.length <= data.length; i++) {
+                if (Arrays.equals(data, i, i + SIGNATURE.length, SIGNATURE, 0, SIGNATURE.length)) {
+                    throw new FileUploadInspectionException("Signature found");
+                }
+            }
+            tail.reset();
+            final var keep = Math.min(data.length, SIGNATURE.length - 1);
+            tail.write(data, data.length - keep, keep);
+        }
+    }
+
     protected AbstractFileUploadTest(final AFU fileUpload) {
         super(fileUpload);
     }
@@ -488,4 +520,178 @@ public abstract class AbstractFileUploadTest<AFU extends AbstractFileUpload<R, I
         assertEquals("text/plain", part2.getContentType());
         assertNull(part2.getName());
     }
+
+    /**
+     * Tests, that base64, and quoted-printable parts are decoded, if decoding of the Content-Transfer-Encoding is enabled.
+     */
+    @Test
+    void testContentTransferEncoding() throws IOException {
+        // @formatter:off
+        final var request =
+            "-----1234\r\n" +
+            "Content-type: application/octet-stream\r\n" +
+            "Content-Transfer-Encoding: base64\r\n" +
+            "\r\n" +
+            "VGhpcyBpcyB0aGUgY29udGVudCBvZiB0aGUg\r\n" +
+            "ZmlsZQo=\r\n" +
+            "-----1234\r\n" +
+            "Content-type: text/plain\r\n" +
+            "Content-Transfer-Encoding: quoted-printable\r\n" +
+            "\r\n" +
+            "caf=C3=A9 au lait=\r\n" +
+            ", snake_case=3D1\r\n" +
+            "-----1234\r\n" +
+            "Content-type: text/plain\r\n" +
+            "Content-Transfer-Encoding: 8bit\r\n" +
+            "\r\n" +
+            "plain=3D\r\n" +
+            "-----1234--\r\n";
+        // @formatter:on
+        final var contentType = "multipart/related; boundary=---1234";
+        var fileItems = parseUpload(upload, request.getBytes(StandardCharsets.US_ASCII), contentType);
+        assertEquals("VGhpcyBpcyB0aGUgY29udGVudCBvZiB0aGUg\r\nZmlsZQo=", fileItems.get(0).getString());
+
+        upload.setDecodeContentTransferEncoding(true);
+        fileItems = parseUpload(upload, request.getBytes(StandardCharsets.US_ASCII), contentType);
+        assertEquals(3, fileItems.size());
+        assertEquals("This is the content of the file\n", fileItems.get(0).getString());
+        assertEquals("caf\u00e9 au lait, snake_case=1", fileItems.get(1).getString(StandardCharsets.UTF_8));
+        assertEquals("plain=3D", fileItems.get(2).getString());
+    }
+
+    @Test
+    void testPartInspector() throws IOException {
+        final List<String> events = new ArrayList<>();
+        upload.addPartInspector(() -> new PartInspector() {
+
+            private long count;
+
+            @Override
+            public void begin(final FileItemHeaders headers) {
+                events.add("begin " + headers.getHeader("Content-Disposition"));
+            }
+
+            @Override
+            public void end() {
+                events.add("end " + count);
+            }
+
+            @Override
+            public void update(final byte[] buffer, final int offset, final int length) {
+                count += length;
+            }
+        });
+        upload.addPartInspector(SignatureScanner::new);
+        // @formatter:off
+        final var clean =
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"foo.tab\"\r\n" +
+            "Content-Type: text/whatever\r\n" +
+            "\r\n" +
+            "This is the content of the file\n" +
+            "\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"field\"\r\n" +
+            "\r\n" +
+            "fieldValue\r\n" +
+            "-----1234--\r\n";
+        // @formatter:on
+        final var fileItems = parseUpload(upload, clean);
+        assertEquals(2, fileItems.size());
+        assertEquals("This is the content of the file\n", fileItems.get(0).getString());
+        assertEquals(Arrays.asList("begin form-data; name=\"file\"; filename=\"foo.tab\"", "end 32", "begin form-data; name=\"field\"", "end 10"), events);
+
+        // Place the signature across the boundary of the copy buffer.
+        final var content = new byte[20_000];
+        Arrays.fill(content, (byte) 'x');
+        System.arraycopy(SignatureScanner.SIGNATURE, 0, content, 8192 - 5, SignatureScanner.SIGNATURE.length);
+        final var request = new ByteArrayOutputStream();
+        // @formatter:off
+        request.write((
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"field\"\r\n" +
+            "\r\n" +
+            "fieldValue\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"infected.bin\"\r\n" +
+            "Content-Type: application/octet-stream\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII));
+        // @formatter:on
+        request.write(content);
+        request.write("\r\n-----1234--\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(FileUploadInspectionException.class, () -> parseUpload(upload, request.toByteArray()));
+    }
+
+    @Test
+    void testPartRules() throws IOException {
+        upload.addPartRule(PartRule.allowFieldNames("csrf", "file", "pics"));
+        upload.addPartRule(PartRule.denyFileNames(Pattern.compile(".*\\.exe", Pattern.CASE_INSENSITIVE)));
+        upload.addPartRule(PartRule.allowContentTypes("text/plain", "image/*"));
+        final List<FileItemHeaders> inspected = new ArrayList<>();
+        upload.addPartInspector(() -> new PartInspector() {
+
+            @Override
+            public void begin(final FileItemHeaders headers) {
+                inspected.add(headers);
+            }
+
+            @Override
+            public void update(final byte[] buffer, final int offset, final int length) {
+                // Nothing to do.
+            }
+        });
+        upload.setMaxFileCount(4);
+        // @formatter:off
+        final var request =
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"csrf\"\r\n" +
+            "\r\n" +
+            "token\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"ignored\"\r\n" +
+            "\r\n" +
+            "ignoredValue\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"setup.EXE\"\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "MZ\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"foo.pdf\"\r\n" +
+            "Content-Type: application/pdf\r\n" +
+            "\r\n" +
+            "%PDF\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"pics\"\r\n" +
+            "Content-type: multipart/mixed; boundary=BbC04yZ\r\n" +
+            "\r\n" +
+            "--BbC04yZ\r\n" +
+            "Content-disposition: attachment; filename=\"file1.txt\"\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "... contents of file1.txt ...\r\n" +
+            "--BbC04yZ\r\n" +
+            "Content-disposition: attachment; filename=\"file2.bin\"\r\n" +
+            "Content-type: application/octet-stream\r\n" +
+            "\r\n" +
+            "...contents of file2.bin...\r\n" +
+            "--BbC04yZ\r\n" +
+            "Content-disposition: attachment; filename=\"file3.gif\"\r\n" +
+            "Content-type: IMAGE/GIF\r\n" +
+            "\r\n" +
+            "...contents of file3.gif...\r\n" +
+            "--BbC04yZ--\r\n" +
+            "-----1234--\r\n";
+        // @formatter:on
+        final var fileItems = parseUpload(upload, request);
+        assertEquals(3, fileItems.size());
+        assertEquals("token", fileItems.get(0).getString());
+        assertEquals("file1.txt", fileItems.get(1).getName());
+        assertEquals("pics", fileItems.get(1).getFieldName());
+        assertEquals("file3.gif", fileItems.get(2).getName());
+        // Rejected parts are neither inspected, nor counted.
+        assertEquals(3, inspected.size());
+        assertTrue(upload.getPartRules().get(0).isAllow());
+        assertFalse(upload.getPartRules().get(1).isAllow());
+    }
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.commons.fileupload2.core;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -24,6 +25,13 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
@@ -289,4 +297,168 @@ public abstract class AbstractSizesTest<AFU extends AbstractFileUpload<R, I, F>,
             }
         });
     }
+
+    private static byte[] newEncodedRequest(final String contentEncoding, final byte[] encoded) throws IOException {
+        final var baos = new ByteArrayOutputStream();
+        // @formatter:off
+        baos.write(("-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"foo.csv\"\r\n" +
+            "Content-Type: text/csv\r\n" +
+            "Content-Encoding: " + contentEncoding + "\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII));
+        baos.write(encoded);
+        baos.write(("\r\n" +
+            "-----1234--\r\n").getBytes(StandardCharsets.US_ASCII));
+        // @formatter:on
+        return baos.toByteArray();
+    }
+
+    private static byte[] newZipRequest(final Map<String, byte[]> entries) throws IOException {
+        final var zip = new ByteArrayOutputStream();
+        try (var os = new ZipOutputStream(zip)) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                os.putNextEntry(new ZipEntry(entry.getKey()));
+                os.write(entry.getValue());
+                os.closeEntry();
+            }
+        }
+        final var baos = new ByteArrayOutputStream();
+        // @formatter:off
+        baos.write(("-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"field\"\r\n" +
+            "\r\n" +
+            "fieldValue\r\n" +
+            "-----1234\r\n" +
+            "Content-Disposition: form-data; name=\"import\"; filename=\"import.zip\"\r\n" +
+            "Content-Type: application/zip\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII));
+        baos.write(zip.toByteArray());
+        baos.write(("\r\n" +
+            "-----1234--\r\n").getBytes(StandardCharsets.US_ASCII));
+        // @formatter:on
+        return baos.toByteArray();
+    }
+
+    /**
+     * Checks, whether parts with a Content-Encoding header are decoded, and whether the file size limit is enforced on the decoded data.
+     *
+     * @throws IOException Test failure.
+     */
+    @Test
+    void testContentEncoding() throws IOException {
+        final byte[] content = "id,name\n1,foo\n2,bar\n".repeat(1000).getBytes(StandardCharsets.US_ASCII);
+        final var gzipped = new ByteArrayOutputStream();
+        try (var os = new GZIPOutputStream(gzipped)) {
+            os.write(content);
+        }
+        final var deflated = new ByteArrayOutputStream();
+        try (var os = new DeflaterOutputStream(deflated)) {
+            os.write(content);
+        }
+
+        var upload = newFileUpload();
+        var fileItems = upload.parseRequest(newMockHttpServletRequest(newEncodedRequest("gzip", gzipped.toByteArray()), null, Constants.CONTENT_TYPE, null));
+        assertArrayEquals(gzipped.toByteArray(), fileItems.get(0).get());
+
+        upload = newFileUpload();
+        upload.setDecodeContentEncoding(true);
+        fileItems = upload.parseRequest(newMockHttpServletRequest(newEncodedRequest("gzip", gzipped.toByteArray()), null, Constants.CONTENT_TYPE, null));
+        assertArrayEquals(content, fileItems.get(0).get());
+        fileItems = upload.parseRequest(newMockHttpServletRequest(newEncodedRequest("deflate", deflated.toByteArray()), null, Constants.CONTENT_TYPE, null));
+        assertArrayEquals(content, fileItems.get(0).get());
+        fileItems = upload.parseRequest(newMockHttpServletRequest(newEncodedRequest("gzip", new byte[0]), null, Constants.CONTENT_TYPE, null));
+        assertEquals(0, fileItems.get(0).getSize());
+        // Unsupported content codings are passed unchanged.
+        fileItems = upload.parseRequest(newMockHttpServletRequest(newEncodedRequest("br", content), null, Constants.CONTENT_TYPE, null));
+        assertArrayEquals(content, fileItems.get(0).get());
+
+        // The encoded part is within the limit, but the decoded part isn't.
+        final var limitedUpload = newFileUpload();
+        limitedUpload.setDecodeContentEncoding(true);
+        limitedUpload.setMaxFileSize(gzipped.size() + 100);
+        final var req = newMockHttpServletRequest(newEncodedRequest("gzip", gzipped.toByteArray()), null, Constants.CONTENT_TYPE, null);
+        final var e = assertThrows(FileUploadByteCountLimitException.class, () -> limitedUpload.parseRequest(req));
+        assertEquals(gzipped.size() + 100, e.getPermitted());
+    }
+
+    /**
+     * Checks, whether ZIP archives are expanded into one item per entry, and whether the limits are enforced on the entries.
+     *
+     * @throws IOException Test failure.
+     */
+    @Test
+    void testExpandZipArchives() throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("docs/", new byte[0]);
+        entries.put("docs/readme.txt", "This is the content of the file\n".getBytes(StandardCharsets.US_ASCII));
+        entries.put("data.bin", new byte[] { 0, 1, 2, 3 });
+        final var request = newZipRequest(entries);
+
+        var upload = newFileUpload();
+        var fileItems = upload.parseRequest(newMockHttpServletRequest(request, null, Constants.CONTENT_TYPE, null));
+        assertEquals(2, fileItems.size());
+        assertEquals("import.zip", fileItems.get(1).getName());
+
+        upload = newFileUpload();
+        upload.setExpandZipArchives(true);
+        fileItems = upload.parseRequest(newMockHttpServletRequest(request, null, Constants.CONTENT_TYPE, null));
+        assertEquals(3, fileItems.size());
+        assertEquals("fieldValue", fileItems.get(0).getString());
+        final var readme = fileItems.get(1);
+        assertEquals("import", readme.getFieldName());
+        assertEquals("docs/readme.txt", readme.getName());
+        assertEquals("text/plain", readme.getContentType());
+        assertFalse(readme.isFormField());
+        assertEquals("This is the content of the file\n", readme.getString());
+        assertEquals("docs/readme.txt", upload.getFileName(readme.getHeaders()));
+        assertEquals("data.bin", fileItems.get(2).getName());
+        assertEquals("application/octet-stream", fileItems.get(2).getContentType());
+        assertArrayEquals(new byte[] { 0, 1, 2, 3 }, fileItems.get(2).get());
+
+        // Entry names can't inject parameters into the Content-Disposition header.
+        final Map<String, byte[]> injecting = new LinkedHashMap<>();
+        final var injectingName = "a\"; name=\"csrf";
+        injecting.put(injectingName, new byte[] { 1 });
+        injecting.put("dir\\b\\", new byte[] { 2 });
+        fileItems = upload.parseRequest(newMockHttpServletRequest(newZipRequest(injecting), null, Constants.CONTENT_TYPE, null));
+        assertEquals(3, fileItems.size());
+        final var injected = fileItems.get(1);
+        assertEquals("import", injected.getFieldName());
+        assertEquals(injectingName, injected.getName());
+        assertEquals("import", upload.getFieldName(injected.getHeaders()));
+        assertEquals(injectingName, upload.getFileName(injected.getHeaders()));
+        final var header = injected.getHeaders().getHeader(AbstractFileUpload.CONTENT_DISPOSITION);
+        assertEquals("form-data; name=\"import\"; filename=\"a\\\"; name=\\\"csrf\"", header);
+        assertEquals("import", ContentDisposition.parse(header).getName());
+        assertEquals("dir\\b\\", upload.getFileName(fileItems.get(2).getHeaders()));
+        assertEquals("form-data; name=\"import\"; filename=\"dir\\\\b\\\\\"",
+                fileItems.get(2).getHeaders().getHeader(AbstractFileUpload.CONTENT_DISPOSITION));
+
+        final var countLimitedUpload = newFileUpload();
+        countLimitedUpload.setExpandZipArchives(true);
+        countLimitedUpload.setMaxFileCount(2);
+        assertThrows(FileUploadFileCountLimitException.class,
+                () -> countLimitedUpload.parseRequest(newMockHttpServletRequest(request, null, Constants.CONTENT_TYPE, null)));
+
+        // The archive is within the limit, but the entry isn't.
+        entries.put("data.bin", new byte[10_000]);
+        final var sizeLimitedUpload = newFileUpload();
+        sizeLimitedUpload.setExpandZipArchives(true);
+        sizeLimitedUpload.setMaxFileSize(5_000);
+        final var sizeLimitedRequest = newZipRequest(entries);
+        final var e = assertThrows(FileUploadByteCountLimitException.class,
+                () -> sizeLimitedUpload.parseRequest(newMockHttpServletRequest(sizeLimitedRequest, null, Constants.CONTENT_TYPE, null)));
+        assertEquals("data.bin", e.getFileName());
+
+        // A decompression bomb.
+        entries.put("data.bin", new byte[10_000_000]);
+        final var bombRequest = newZipRequest(entries);
+        final var ratioLimitedUpload = newFileUpload();
+        ratioLimitedUpload.setExpandZipArchives(true);
+        assertThrows(FileUploadSizeException.class,
+                () -> ratioLimitedUpload.parseRequest(newMockHttpServletRequest(bombRequest, null, Constants.CONTENT_TYPE, null)));
+        ratioLimitedUpload.setMaxZipCompressionRatio(-1);
+        fileItems = ratioLimitedUpload.parseRequest(newMockHttpServletRequest(bombRequest, null, Constants.CONTENT_TYPE, null));
+        assertEquals(10_000_000, fileItems.get(2).getSize());
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.apache.commons.io.FileDeleteStrategy;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link BatchingFileCleaningTracker}.
+ */
+class BatchingFileCleaningTrackerTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/BatchingFileCleaningTrackerTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static void awaitDeleted(final BatchingFileCleaningTracker tracker, final long count) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + 30_000;
+        while (tracker.getDeletedCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timeout while waiting for the tracked files to be deleted");
+            }
+            System.gc();
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void testExitWhenFinished() throws IOException {
+        final var tracker = new BatchingFileCleaningTracker();
+        final var marker = new Object();
+        final var file = Files.createTempFile(testDir, "exit", ".tmp");
+        tracker.track(file, marker);
+        tracker.exitWhenFinished();
+        assertThrows(IllegalStateException.class, () -> tracker.track(file, marker));
+        // The marker is still reachable, so the file remains.
+        assertTrue(Files.exists(file));
+        assertEquals(1, tracker.getTrackCount());
+        Files.delete(file);
+    }
+
+    @Test
+    void testInvalidBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchingFileCleaningTracker(0));
+    }
+
+    @Test
+    void testTrack() throws IOException, InterruptedException {
+        final var tracker = new BatchingFileCleaningTracker(2);
+        assertEquals(2, tracker.getBatchSize());
+        assertEquals(Duration.ZERO, tracker.getAverageDeletionLatency());
+        final var files = new Path[5];
+        for (var i = 0; i < files.length; i++) {
+            files[i] = Files.createTempFile(testDir, "track", ".tmp");
+            tracker.track(files[i], new Object());
+        }
+        final var failing = Files.createTempFile(testDir, "failing", ".tmp");
+        tracker.track(failing.toFile(), new Object(), new FileDeleteStrategy("Failing") {
+            @Override
+            protected boolean doDelete(final File file) {
+                return false;
+            }
+        });
+        awaitDeleted(tracker, files.length + 1);
+        for (final Path file : files) {
+            assertFalse(Files.exists(file));
+        }
+        assertEquals(0, tracker.getBacklog());
+        assertEquals(0, tracker.getTrackCount());
+        assertEquals(1, tracker.getDeleteFailures().size());
+        assertEquals(failing.toFile().getPath(), tracker.getDeleteFailures().get(0));
+        assertFalse(tracker.getMaxDeletionLatency().isNegative());
+        assertTrue(tracker.getMaxDeletionLatency().compareTo(tracker.getAverageDeletionLatency()) >= 0);
+        tracker.exitWhenFinished();
+        Files.delete(failing);
+    }
+}
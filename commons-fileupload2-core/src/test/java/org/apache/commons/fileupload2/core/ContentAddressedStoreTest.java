@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.file.PathUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ContentAddressedStore}.
+ */
+class ContentAddressedStoreTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/ContentAddressedStoreTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private DiskFileItem newItem(final DiskFileItemFactory factory, final String content) throws IOException {
+        final DiskFileItem item = factory.fileItemBuilder().get();
+        try (OutputStream os = item.getOutputStream()) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return item;
+    }
+
+    /**
+     * Tests, that stores with the default path don't share their directory, because their reference counts aren't shared either.
+     */
+    @Test
+    void testDefaultRepository() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "default");
+        final ContentAddressedStore store1 = ContentAddressedStore.builder().get();
+        final ContentAddressedStore store2 = ContentAddressedStore.builder().get();
+        assertNotEquals(store1.getRepository(), store2.getRepository());
+        try {
+            final DiskFileItem item1 = newItem(DiskFileItemFactory.builder().setPath(dir).setThreshold(5).setContentAddressedStore(store1).get(),
+                    "0123456789");
+            final DiskFileItem item2 = newItem(DiskFileItemFactory.builder().setPath(dir).setThreshold(5).setContentAddressedStore(store2).get(),
+                    "0123456789");
+            assertNotEquals(item1.getPath(), item2.getPath());
+            item2.delete();
+            assertEquals("0123456789", item1.getString());
+            item1.delete();
+        } finally {
+            PathUtils.deleteDirectory(store1.getRepository());
+            PathUtils.deleteDirectory(store2.getRepository());
+        }
+    }
+
+    @Test
+    void testDeduplication() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "dedup");
+        final ContentAddressedStore store = ContentAddressedStore.builder().setPath(dir.resolve("cas")).get();
+        final DiskFileItemFactory factory = DiskFileItemFactory.builder().setPath(dir.resolve("repository")).setThreshold(5)
+                .setContentAddressedStore(store).get();
+        final DiskFileItem item1 = newItem(factory, "0123456789");
+        final DiskFileItem item2 = newItem(factory, "0123456789");
+        final DiskFileItem item3 = newItem(factory, "9876543210");
+        final DiskFileItem small = newItem(factory, "0123");
+        assertTrue(small.isInMemory());
+        assertFalse(item1.isInMemory());
+        assertEquals(item1.getPath(), item2.getPath());
+        assertNotEquals(item1.getPath(), item3.getPath());
+        assertTrue(item1.getPath().startsWith(store.getRepository()));
+        assertEquals(2, store.getReferenceCount(item1.getPath()));
+        assertArrayEquals(item1.get(), item2.get());
+        final Path shared = item1.getPath();
+
+        // Writing the first item must copy, because the second item still references the content.
+        final Path target1 = dir.resolve("target1.txt");
+        item1.write(target1);
+        assertTrue(Files.exists(shared));
+        assertEquals(1, store.getReferenceCount(shared));
+        // Writing the second item moves the content file.
+        final Path target2 = dir.resolve("target2.txt");
+        item2.write(target2);
+        assertFalse(Files.exists(shared));
+        assertEquals(0, store.getReferenceCount(shared));
+        assertArrayEquals(Files.readAllBytes(target1), Files.readAllBytes(target2));
+
+        final Path other = item3.getPath();
+        item3.delete();
+        item3.delete();
+        assertFalse(Files.exists(other));
+        try (var files = Files.list(dir.resolve("repository"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testConcurrentUploads() throws Exception {
+        final Path dir = Files.createTempDirectory(testDir, "concurrent");
+        final ContentAddressedStore store = ContentAddressedStore.builder().setPath(dir.resolve("cas")).get();
+        final DiskFileItemFactory factory = DiskFileItemFactory.builder().setPath(dir.resolve("repository")).setThreshold(5)
+                .setContentAddressedStore(store).get();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<DiskFileItem>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(() -> newItem(factory, "The same content, again and again.")));
+            }
+            final List<DiskFileItem> items = new ArrayList<>();
+            for (final Future<DiskFileItem> future : futures) {
+                items.add(future.get());
+            }
+            final Path shared = items.get(0).getPath();
+            assertEquals(20, store.getReferenceCount(shared));
+            for (final DiskFileItem item : items) {
+                assertEquals(shared, item.getPath());
+                item.delete();
+            }
+            assertFalse(Files.exists(shared));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -37,6 +37,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -275,4 +277,117 @@ class DeferrableOutputStreamTest {
             }
         });
     }
+
+    /**
+     * Tests, that the data is preserved, if the output file is switched to direct I/O mid-stream, and that direct I/O is actually used, if the file
+     * system supports it.
+     */
+    @Test
+    void testDirectIo() throws IOException {
+        final byte[] data = new byte[3 * DirectFileOutputStream.BUFFER_SIZE + 1234];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 4096);
+        }
+        final boolean supported;
+        try (DirectFileOutputStream probe = DirectFileOutputStream.open(testFileSupplier.get())) {
+            supported = probe != null;
+        }
+        final DeferrableOutputStream dos;
+        try (DeferrableOutputStream out = DeferrableOutputStream.builder().setThreshold(10).setPathSupplier(testFileSupplier)
+                .setDirectIoThreshold(5000).get()) {
+            dos = out;
+            out.write(data, 0, 4099);
+            for (int offset = 4099; offset < data.length; offset += 65537) {
+                out.write(data, offset, Math.min(65537, data.length - offset));
+            }
+            assertEquals(supported, out.isDirectIo());
+        }
+        assertEquals(data.length, Files.size(dos.getPath()));
+        assertArrayEquals(data, Files.readAllBytes(dos.getPath()));
+    }
+
+    /**
+     * Tests, that the stream falls back to buffered writes, if the file system rejects a direct write. The misaligned block size makes every direct write
+     * fail.
+     */
+    @Test
+    void testDirectIoFallback() throws IOException {
+        final byte[] data = new byte[2 * DirectFileOutputStream.BUFFER_SIZE + 777];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 17 + i / 4096);
+        }
+        final Path path = testFileSupplier.get();
+        Files.write(path, Arrays.copyOf(data, 4099));
+        final DirectFileOutputStream out = DirectFileOutputStream.open(path, 1);
+        assumeTrue(out != null, "Direct I/O isn't supported.");
+        try (OutputStream os = out) {
+            os.write(data, 4099, data.length - 4099);
+            assertFalse(out.isDirect());
+        }
+        assertArrayEquals(data, Files.readAllBytes(path));
+    }
+
+    @Test
+    void testSpillCompression() throws IOException {
+        final var sb = new StringBuilder();
+        for (int i = 0; sb.length() < 200_000; i++) {
+            sb.append(i).append(",name").append(i % 100).append(",value").append(i * 31 % 1000).append('\n');
+        }
+        final byte[] csv = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        DeferrableOutputStream dos;
+        try (DeferrableOutputStream out = DeferrableOutputStream.builder().setThreshold(1000).setPathSupplier(testFileSupplier)
+                .setSpillCompression(true).get()) {
+            dos = out;
+            out.write(csv, 0, 500);
+            out.write(csv, 500, csv.length - 500);
+        }
+        assertTrue(dos.isCompressed());
+        assertEquals(csv.length, dos.getSize());
+        assertTrue(Files.size(dos.getPath()) < csv.length / 2);
+        try (InputStream in = dos.getInputStream()) {
+            assertArrayEquals(csv, in.readAllBytes());
+        }
+        // Already compressed content is stored unchanged, after the header byte.
+        final byte[] gzip = new byte[20_000];
+        gzip[0] = (byte) 0x1f;
+        gzip[1] = (byte) 0x8b;
+        try (DeferrableOutputStream out = DeferrableOutputStream.builder().setThreshold(-1).setPathSupplier(testFileSupplier)
+                .setSpillCompression(true).get()) {
+            dos = out;
+            out.write(gzip);
+        }
+        assertEquals(gzip.length + 1, Files.size(dos.getPath()));
+        try (InputStream in = dos.getInputStream()) {
+            assertArrayEquals(gzip, in.readAllBytes());
+        }
+        // The probe is also skipping content, which doesn't shrink.
+        final byte[] random = new byte[20_000];
+        new Random(0).nextBytes(random);
+        assertFalse(SpillCompression.isCompressible(random, SpillCompression.PROBE_SIZE));
+        assertTrue(SpillCompression.isCompressible(csv, SpillCompression.PROBE_SIZE));
+    }
+
+    @Test
+    void testSpillEncryption() throws IOException {
+        final byte[] data = new byte[2 * DirectFileOutputStream.BUFFER_SIZE + 777];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        final DeferrableOutputStream dos;
+        try (DeferrableOutputStream out = DeferrableOutputStream.builder().setThreshold(100).setPathSupplier(testFileSupplier)
+                .setDirectIoThreshold(10_000).setSpillEncryption(true).get()) {
+            dos = out;
+            for (int offset = 0; offset < data.length; offset += 65537) {
+                out.write(data, offset, Math.min(65537, data.length - offset));
+            }
+        }
+        assertTrue(dos.isEncrypted());
+        assertFalse(dos.isCompressed());
+        // Counter mode doesn't change the size.
+        assertEquals(data.length, Files.size(dos.getPath()));
+        assertFalse(Arrays.equals(data, Files.readAllBytes(dos.getPath())));
+        try (InputStream in = dos.getInputStream()) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
 }
@@ -22,16 +22,25 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.fileupload2.core.DeferrableOutputStream.State;
 import org.apache.commons.fileupload2.core.FileItemFactory.AbstractFileItemBuilder;
@@ -207,4 +216,339 @@ class DiskFileItemTest {
         tester.accept(5);
         tester.accept(8193); // Typical buffer size +1
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests, that the temporary files are created on the destination's file store, and that {@link DiskFileItem#write(Path)}
+     * moves them.
+     */
+    @Test
+    void testWriteToDestination() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path destination = Files.createTempDirectory(testDir, "destination");
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setThreshold(5).setDestinationPath(destination).get();
+        assertEquals(destination.resolve(DiskFileItemFactory.DESTINATION_TEMP_DIRECTORY), dfif.getRepository());
+        final DiskFileItem dfi = dfif.fileItemBuilder().get();
+        final byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream os = dfi.getOutputStream()) {
+            os.write(data);
+        }
+        final Path tempFile = dfi.getPath();
+        assertEquals(dfif.getRepository(), tempFile.getParent());
+        final Path target = destination.resolve("target.bin");
+        Files.write(target, new byte[] {1, 2, 3});
+        assertTrue(DiskFileItem.isSameFileStore(tempFile, target));
+        dfi.write(target);
+        assertFalse(Files.exists(tempFile));
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    /**
+     * Tests {@link DiskFileItem#copy(Path, Path)}, which is used, if the target is on another file store.
+     */
+    @Test
+    void testCopy() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path dir = Files.createTempDirectory(testDir, "copy");
+        final byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final Path source = Files.write(dir.resolve("source.bin"), data);
+        final Path target = Files.write(dir.resolve("target.bin"), new byte[200_000]);
+        DiskFileItem.copy(source, target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    /**
+     * Tests, that items are streamed straight to the destination, which is returned by a {@link DestinationResolver}.
+     */
+    @Test
+    void testDestinationResolver() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path destination = Files.createTempDirectory(testDir, "resolver");
+        final Path repository = destination.resolve("repository");
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setPath(repository).setThreshold(100)
+                .setDestinationResolver((fieldName, fileName, headers) -> fileName == null ? null : destination.resolve("uploads").resolve(fieldName))
+                .get();
+        final DiskFileItem formField = dfif.fileItemBuilder().setFieldName("field").setFormField(true).get();
+        try (OutputStream os = formField.getOutputStream()) {
+            os.write('x');
+        }
+        assertTrue(formField.isInMemory());
+        final DiskFileItem dfi = dfif.fileItemBuilder().setFieldName("file").setFileName("file.txt").get();
+        final Path target = destination.resolve("uploads").resolve("file");
+        final byte[] data = "abc".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream os = dfi.getOutputStream()) {
+            os.write(data);
+            // The part is streamed to a hidden sibling, which is renamed on close.
+            assertFalse(Files.exists(target));
+            assertEquals(target.getParent(), dfi.getPath().getParent());
+        }
+        assertEquals(target, dfi.getPath());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertArrayEquals(data, dfi.get());
+        assertFalse(Files.exists(repository));
+        try (var files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+        assertTrue(dfi.isCommitted());
+        // The destination is the final file, rather than temporary storage.
+        dfi.delete();
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    /**
+     * Tests, that a part, which fails, never replaces an existing destination, and that committed destinations survive the cleanup of a failed request.
+     */
+    @Test
+    void testDestinationResolverFailure() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path destination = Files.createTempDirectory(testDir, "resolver");
+        final byte[] existing = "existing".getBytes(StandardCharsets.US_ASCII);
+        Files.write(destination.resolve("second"), existing);
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setPath(destination.resolve("repository"))
+                .setDestinationResolver((fieldName, fileName, headers) -> destination.resolve(fieldName)).get();
+        final var upload = new SimpleFileUpload(dfif);
+        upload.setMaxFileSize(5);
+        // @formatter:off
+        final var request = ("-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"first\"; filename=\"first.txt\"\r\n"
+            + "\r\n"
+            + "first\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"second\"; filename=\"second.txt\"\r\n"
+            + "\r\n"
+            + "too large\r\n"
+            + "-----1234--\r\n").getBytes(StandardCharsets.US_ASCII);
+        // @formatter:on
+        assertThrows(FileUploadByteCountLimitException.class, () -> upload.parseRequest(request));
+        assertArrayEquals(existing, Files.readAllBytes(destination.resolve("second")));
+        assertArrayEquals("first".getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(destination.resolve("first")));
+        try (var files = Files.list(destination)) {
+            // No hidden siblings are left behind.
+            assertEquals(2, files.count());
+        }
+
+        final DiskFileItem dfi = dfif.fileItemBuilder().setFieldName("second").setFileName("second.txt").get();
+        final var dos = (DeferrableOutputStream) dfi.getOutputStream();
+        dos.write(new byte[1000]);
+        final Path sibling = dfi.getPath();
+        assertTrue(Files.exists(sibling));
+        dos.abort();
+        assertFalse(Files.exists(sibling));
+        assertFalse(dfi.isCommitted());
+        dfi.delete();
+        assertArrayEquals(existing, Files.readAllBytes(destination.resolve("second")));
+    }
+
+    /**
+     * Tests, that digests are computed while the item is being written.
+     */
+    @Test
+    void testDigests() throws IOException, NoSuchAlgorithmException {
+        final byte[] data = new byte[50_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setThreshold(1000).setDigestAlgorithms("SHA-256", "CRC32C").get();
+        final DiskFileItem dfi = dfif.fileItemBuilder().get();
+        try (OutputStream os = dfi.getOutputStream()) {
+            os.write(data[0]);
+            os.write(data, 1, data.length - 1);
+        }
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), dfi.getDigest("sha-256"));
+        final CRC32C crc = new CRC32C();
+        crc.update(data);
+        assertEquals(crc.getValue(), Integer.toUnsignedLong(ByteBuffer.wrap(dfi.getDigest("CRC32C")).getInt()));
+        assertNull(dfi.getDigest("MD5"));
+        dfi.delete();
+        assertThrows(IllegalArgumentException.class, () -> DiskFileItemFactory.builder().setDigestAlgorithms("NO-SUCH-DIGEST").get());
+    }
+
+    /**
+     * Tests, that the {@code Content-MD5} header is verified, if verification is enabled, and ignored otherwise.
+     */
+    @Test
+    void testContentMd5() throws IOException, NoSuchAlgorithmException {
+        final byte[] data = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+        final byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+        final String md5 = Base64.getEncoder().encodeToString(digest);
+        // Verification is opt-in.
+        final var mismatching = AbstractFileItemBuilder.newFileItemHeaders();
+        mismatching.addHeader("Content-MD5", Base64.getEncoder().encodeToString(new byte[16]));
+        final DiskFileItem unverified = DiskFileItemFactory.builder().get().fileItemBuilder().setFileItemHeaders(mismatching).get();
+        try (OutputStream os = unverified.getOutputStream()) {
+            os.write(data);
+        }
+        assertNull(unverified.getDigest("MD5"));
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setVerifyContentMd5(true).get();
+        assertTrue(dfif.isVerifyContentMd5());
+        // A hexadecimal digest, and a digest of base64 encoded data, are ignored.
+        final var hex = AbstractFileItemBuilder.newFileItemHeaders();
+        hex.addHeader("Content-MD5", "6cd3556deb0da54bca060b4c39479839");
+        final var encoded = AbstractFileItemBuilder.newFileItemHeaders();
+        encoded.addHeader("Content-MD5", md5);
+        encoded.addHeader("Content-Transfer-Encoding", "base64");
+        for (final FileItemHeaders ignored : new FileItemHeaders[] { hex, encoded }) {
+            final DiskFileItem item = dfif.fileItemBuilder().setFileItemHeaders(ignored).get();
+            try (OutputStream os = item.getOutputStream()) {
+                os.write(data, 1, data.length - 1);
+            }
+            assertNull(item.getDigest("MD5"));
+        }
+        final var headers = AbstractFileItemBuilder.newFileItemHeaders();
+        headers.addHeader("Content-MD5", md5);
+        final DiskFileItem valid = dfif.fileItemBuilder().setFileItemHeaders(headers).get();
+        try (OutputStream os = valid.getOutputStream()) {
+            os.write(data);
+        }
+        assertNotNull(valid.getDigest("MD5"));
+        final DiskFileItem invalid = dfif.fileItemBuilder().setFileItemHeaders(headers).get();
+        final OutputStream os = invalid.getOutputStream();
+        os.write(data, 1, data.length - 1);
+        final FileUploadDigestException e = assertThrows(FileUploadDigestException.class, os::close);
+        assertEquals("MD5", e.getAlgorithm());
+    }
+
+    /**
+     * Tests, that the {@code Content-MD5} header is verified before the item is published.
+     */
+    @Test
+    void testContentMd5BeforePublishing() throws IOException, NoSuchAlgorithmException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path dir = Files.createTempDirectory(testDir, "md5");
+        final byte[] data = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+        final var headers = AbstractFileItemBuilder.newFileItemHeaders();
+        headers.addHeader("Content-MD5", Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(data)));
+        final Path target = dir.resolve("uploads").resolve("file");
+        final var store = ContentAddressedStore.builder().setPath(dir.resolve("cas")).get();
+        final DiskFileItemFactory[] factories = {
+            DiskFileItemFactory.builder().setPath(dir.resolve("repository")).setVerifyContentMd5(true)
+                    .setDestinationResolver((fieldName, fileName, h) -> target).get(),
+            DiskFileItemFactory.builder().setPath(dir.resolve("repository")).setVerifyContentMd5(true).setThreshold(0)
+                    .setContentAddressedStore(store).get() };
+        for (final DiskFileItemFactory dfif : factories) {
+            final DiskFileItem invalid = dfif.fileItemBuilder().setFieldName("file").setFileItemHeaders(headers).get();
+            final OutputStream os = invalid.getOutputStream();
+            os.write(data, 1, data.length - 1);
+            final Path sibling = invalid.getPath();
+            assertEquals("MD5", assertThrows(FileUploadDigestException.class, os::close).getAlgorithm());
+            assertFalse(Files.exists(sibling));
+            assertFalse(invalid.isCommitted());
+        }
+        assertFalse(Files.exists(target));
+        try (var files = Files.walk(dir)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+        final DiskFileItem valid = factories[0].fileItemBuilder().setFieldName("file").setFileItemHeaders(headers).get();
+        try (OutputStream os = valid.getOutputStream()) {
+            os.write(data);
+        }
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertNotNull(valid.getDigest("MD5"));
+    }
+
+    /**
+     * Tests, that a decoded part isn't verified against a {@code Content-MD5} header, which covers the encoded data, and that the headers of the decoded
+     * item don't describe the encoded data.
+     */
+    @Test
+    void testContentMd5DecodedContent() throws IOException, NoSuchAlgorithmException {
+        final byte[] data = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+        final var gzipped = new ByteArrayOutputStream();
+        try (var os = new GZIPOutputStream(gzipped)) {
+            os.write(data);
+        }
+        final String md5 = Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(gzipped.toByteArray()));
+        final var request = new ByteArrayOutputStream();
+        // @formatter:off
+        request.write(("-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+            + "Content-Encoding: gzip\r\n"
+            + "Content-MD5: " + md5 + "\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        request.write(gzipped.toByteArray());
+        request.write("\r\n-----1234--\r\n".getBytes(StandardCharsets.US_ASCII));
+        // @formatter:on
+        final var upload = new SimpleFileUpload(DiskFileItemFactory.builder().setVerifyContentMd5(true).get());
+        // The encoded data is stored, and verified.
+        var item = upload.parseRequest(request.toByteArray()).get(0);
+        assertArrayEquals(gzipped.toByteArray(), item.get());
+        assertEquals("gzip", item.getHeaders().getHeader("Content-Encoding"));
+        assertNotNull(item.getDigest("MD5"));
+        upload.setDecodeContentEncoding(true);
+        item = upload.parseRequest(request.toByteArray()).get(0);
+        assertArrayEquals(data, item.get());
+        assertNull(item.getHeaders().getHeader("Content-Encoding"));
+        assertNull(item.getHeaders().getHeader("Content-MD5"));
+        assertNull(item.getDigest("MD5"));
+        assertEquals("file.txt", item.getName());
+    }
+
+    /**
+     * Tests, that a compressed temporary file is transparent, even if it is promoted to another spill tier.
+     */
+    @Test
+    void testSpillCompression() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path dir = Files.createTempDirectory(testDir, "compression");
+        final SpillTier shm = SpillTier.builder().setPath(dir.resolve("shm")).setPartSizeMax(20_000).get();
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setPath(dir.resolve("disk")).setThreshold(1000).setSpillTiers(shm)
+                .setSpillCompression(true).get();
+        assertTrue(dfif.isSpillCompression());
+        final var sb = new StringBuilder("[");
+        for (int i = 0; sb.length() < 100_000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item").append(i % 17).append("\"},");
+        }
+        final byte[] json = sb.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+        final DiskFileItem dfi = dfif.fileItemBuilder().get();
+        try (OutputStream os = dfi.getOutputStream()) {
+            for (int offset = 0; offset < json.length; offset += 4096) {
+                os.write(json, offset, Math.min(4096, json.length - offset));
+            }
+        }
+        assertTrue(dfi.getPath().startsWith(dir.resolve("disk")));
+        assertEquals(0, shm.getUsed());
+        assertEquals(json.length, dfi.getSize());
+        assertTrue(Files.size(dfi.getPath()) < json.length / 2);
+        assertArrayEquals(json, dfi.get());
+        final Path target = dir.resolve("target.json");
+        final Path temp = dfi.getPath();
+        dfi.write(target);
+        assertArrayEquals(json, Files.readAllBytes(target));
+        assertFalse(Files.exists(temp));
+    }
+
+    /**
+     * Tests, that an encrypted, and compressed temporary file is transparent, and doesn't expose the data.
+     */
+    @Test
+    void testSpillEncryption() throws IOException {
+        final Path testDir = Paths.get("target/unit-tests/" + DiskFileItemTest.class.getSimpleName());
+        Files.createDirectories(testDir);
+        final Path dir = Files.createTempDirectory(testDir, "encryption");
+        final DiskFileItemFactory dfif = DiskFileItemFactory.builder().setPath(dir.resolve("disk")).setThreshold(10).setSpillCompression(true)
+                .setSpillEncryption(true).get();
+        assertTrue(dfif.isSpillEncryption());
+        final String secret = "The quick brown fox jumps over the lazy dog. ".repeat(1000);
+        final byte[] data = secret.getBytes(StandardCharsets.US_ASCII);
+        final DiskFileItem dfi = dfif.fileItemBuilder().get();
+        try (OutputStream os = dfi.getOutputStream()) {
+            os.write(data);
+        }
+        assertEquals(data.length, dfi.getSize());
+        final byte[] stored = Files.readAllBytes(dfi.getPath());
+        assertTrue(stored.length < data.length / 2);
+        assertFalse(new String(stored, StandardCharsets.US_ASCII).contains("quick brown fox"));
+        assertEquals(secret, dfi.getString());
+        final Path target = dir.resolve("target.txt");
+        dfi.write(target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+}
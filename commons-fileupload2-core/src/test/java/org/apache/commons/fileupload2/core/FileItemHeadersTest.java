@@ -19,9 +19,14 @@ package org.apache.commons.fileupload2.core;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -30,6 +35,112 @@ import org.junit.jupiter.api.Test;
  */
 class FileItemHeadersTest {
 
+    private static List<String> toList(final Iterator<String> iterator) {
+        final var list = new ArrayList<String>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    void testByteFileItemHeaders() {
+        final var headerPart = "Content-Disposition: form-data; name=\"field\";\r\n\t filename=\"\u00e9.txt\"\r\n"
+                + "X-Custom : value1 \r\nmalformed\r\nCONTENT-TYPE: text/plain\r\nx-custom:value2\r\n\r\n";
+        final var bytes = headerPart.getBytes(StandardCharsets.UTF_8);
+        final var headers = new ByteFileItemHeaders(bytes, bytes.length, StandardCharsets.UTF_8);
+        assertEquals("form-data; name=\"field\"; filename=\"\u00e9.txt\"", headers.getHeader("content-disposition"));
+        assertEquals("text/plain", headers.getHeader("Content-Type"));
+        assertEquals("value1", headers.getHeader("X-CUSTOM"));
+        assertNull(headers.getHeader("malformed"));
+        assertNull(headers.getHeader("Content-Length"));
+        assertEquals(Arrays.asList("content-disposition", "x-custom", "content-type"), toList(headers.getHeaderNames()));
+        assertEquals(Arrays.asList("value1", "value2"), toList(headers.getHeaders("x-custom")));
+        assertFalse(headers.getHeaders("Content-Length").hasNext());
+        assertEquals("\u00e9.txt", headers.getContentDisposition().getFileName());
+
+        headers.addHeader("Content-Length", "42");
+        headers.addHeader("X-Custom", "value3");
+        assertEquals("42", headers.getHeader("content-length"));
+        assertEquals(Arrays.asList("value1", "value2", "value3"), toList(headers.getHeaders("X-Custom")));
+        assertEquals(Arrays.asList("content-disposition", "x-custom", "content-type", "content-length"), toList(headers.getHeaderNames()));
+
+        assertTrue(ByteFileItemHeaders.isSupported(StandardCharsets.ISO_8859_1));
+        assertFalse(ByteFileItemHeaders.isSupported(StandardCharsets.UTF_16));
+    }
+
+    @Test
+    void testContentDispositionAndContentType() {
+        final var headers = new FileItemHeadersImpl();
+        assertNull(headers.getContentDisposition());
+        assertNull(headers.getParsedContentType());
+        headers.addHeader("Content-Disposition", "Form-Data; Name=\" field \"; filename*=UTF-8''%c3%a9.txt");
+        headers.addHeader("Content-Type", "Text/Plain; Charset=UTF-8");
+        final var contentDisposition = headers.getContentDisposition();
+        assertSame(contentDisposition, headers.getContentDisposition());
+        assertEquals("form-data", contentDisposition.getType());
+        assertEquals("field", contentDisposition.getName());
+        assertEquals("\u00e9.txt", contentDisposition.getFileName());
+        final var contentType = headers.getParsedContentType();
+        assertSame(contentType, headers.getParsedContentType());
+        assertEquals("text/plain", contentType.getMimeType());
+        assertEquals("UTF-8", contentType.getCharsetName());
+        assertEquals(StandardCharsets.UTF_8, contentType.getCharset(StandardCharsets.ISO_8859_1));
+        assertEquals("Text/Plain; Charset=UTF-8", contentType.toString());
+
+        assertEquals("", ContentDisposition.parse("attachment; filename").getFileName());
+        assertNull(ContentDisposition.parse("attachment; name=field").getName());
+        assertNull(ContentDisposition.parse("inline; filename=a.txt").getFileName());
+        assertEquals(StandardCharsets.ISO_8859_1, ContentType.parse("text/plain").getCharset(StandardCharsets.ISO_8859_1));
+
+        // Other parameters are decoded on demand. A malformed parameter doesn't affect the others.
+        final var lazy = ContentType.parse("multipart/mixed; boundary=\"abc\"; charset=UTF-8; title*=UTF-8''%zz; note=\"=?UTF-8?B?w6k=?=\"");
+        assertEquals("abc", lazy.getBoundary());
+        assertEquals("UTF-8", lazy.getCharsetName());
+        assertNull(lazy.getParameter("title"));
+        assertEquals("\u00e9", lazy.getParameter("note"));
+        assertEquals("abc", ContentType.parse("multipart/mixed, boundary=abc").getBoundary());
+        assertEquals("\u00e9", ContentDisposition.parse("form-data; name=a; note=\"=?UTF-8?B?w6k=?=\"").getParameter("note"));
+        final var formData = ContentDisposition.formData("field", "a\".txt");
+        assertEquals("field", formData.getParameter("name"));
+        assertEquals("a\".txt", formData.getParameter("filename"));
+        assertNull(formData.getParameter("other"));
+    }
+
+    /**
+     * Tests, that implementations, which declare {@code String getContentType()}, still compile, and get the parsed content type from the default method.
+     */
+    @Test
+    void testLegacyGetContentType() {
+        final var delegate = new FileItemHeadersImpl();
+        delegate.addHeader("Content-Type", "text/plain; charset=UTF-8");
+        final FileItemHeaders headers = new FileItemHeaders() {
+
+            @Override
+            public void addHeader(final String name, final String value) {
+                delegate.addHeader(name, value);
+            }
+
+            public String getContentType() {
+                return getHeader("Content-Type");
+            }
+
+            @Override
+            public String getHeader(final String name) {
+                return delegate.getHeader(name);
+            }
+
+            @Override
+            public Iterator<String> getHeaderNames() {
+                return delegate.getHeaderNames();
+            }
+
+            @Override
+            public Iterator<String> getHeaders(final String name) {
+                return delegate.getHeaders(name);
+            }
+        };
+        assertEquals("text/plain", headers.getParsedContentType().getMimeType());
+    }
+
     /**
      * @throws Exception
      */
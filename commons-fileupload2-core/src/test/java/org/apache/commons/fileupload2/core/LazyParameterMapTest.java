@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link LazyParameterMap}.
+ */
+class LazyParameterMapTest {
+
+    /**
+     * A request body, which counts the bytes, that have been read, and records, whether it has been closed.
+     */
+    private static final class Body extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        private Body(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        private int getBytesRead() {
+            return pos;
+        }
+    }
+
+    private static final class Context extends AbstractRequestContext<InputStream> {
+
+        private Context(final Body body) {
+            super(x -> null, () -> -1L, body);
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return null;
+        }
+
+        @Override
+        public String getContentType() {
+            return Constants.CONTENT_TYPE;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return getRequest();
+        }
+    }
+
+    private static final class Upload extends AbstractFileUpload<InputStream, DiskFileItem, DiskFileItemFactory> {
+
+        @Override
+        public FileItemInputIterator getItemIterator(final InputStream request) throws FileUploadException, IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<DiskFileItem>> parseParameterMap(final InputStream request) throws FileUploadException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<DiskFileItem> parseRequest(final InputStream request) throws FileUploadException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final Path testDir = Paths.get("target/unit-tests/LazyParameterMapTest");
+
+    private static final String FILE_CONTENT = "0123456789".repeat(1000);
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static Body newBody() {
+        // @formatter:off
+        final var content = "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"csrf\"\r\n"
+            + "\r\n"
+            + "token\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.tab\"\r\n"
+            + "Content-Type: text/whatever\r\n"
+            + "\r\n"
+            + FILE_CONTENT + "\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "value\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"bar.tab\"\r\n"
+            + "\r\n"
+            + "bar\r\n"
+            + "-----1234--\r\n";
+        // @formatter:on
+        return new Body(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Upload newUpload() throws IOException {
+        final var upload = new Upload();
+        upload.setFileItemFactory(DiskFileItemFactory.builder().setPath(Files.createTempDirectory(testDir, "items")).setThreshold(1024).get());
+        return upload;
+    }
+
+    @Test
+    void testAbandon() throws IOException {
+        final var body = newBody();
+        final var parameters = newUpload().parseLazyParameterMap(new Context(body));
+        assertEquals("token", parameters.get("csrf").get(0).getString());
+        assertEquals(1, parameters.getItems().size());
+        assertFalse(parameters.isComplete());
+        // The file has neither been stored, nor read completely.
+        assertTrue(body.getBytesRead() < FILE_CONTENT.length());
+        parameters.close();
+        assertTrue(body.closed);
+        assertTrue(parameters.isComplete());
+        assertThrows(IllegalStateException.class, () -> parameters.get("field"));
+        // Closing again does nothing.
+        parameters.close();
+    }
+
+    /**
+     * Tests, that neither the map, nor an {@link UploadResult} delete the files, which have been streamed to their final destination.
+     */
+    @Test
+    void testDestinationResolver() throws IOException, InterruptedException, ExecutionException {
+        final var destinations = Files.createTempDirectory(testDir, "destinations");
+        final var upload = new Upload();
+        // @formatter:off
+        upload.setFileItemFactory(DiskFileItemFactory.builder()
+                .setPath(Files.createTempDirectory(testDir, "items"))
+                .setThreshold(4)
+                .setDestinationResolver((fieldName, fileName, headers) -> fileName == null ? null : destinations.resolve(fileName))
+                .get());
+        // @formatter:on
+        final List<DiskFileItem> items;
+        try (var parameters = upload.parseLazyParameterMap(new Context(newBody()))) {
+            items = parameters.get("file");
+            assertEquals(3, parameters.size());
+            assertEquals(2, items.size());
+            assertTrue(items.get(0).isCommitted());
+            assertFalse(parameters.get("csrf").get(0).isCommitted());
+        }
+        assertEquals(FILE_CONTENT, new String(Files.readAllBytes(destinations.resolve("foo.tab")), StandardCharsets.US_ASCII));
+        assertEquals("bar", new String(Files.readAllBytes(destinations.resolve("bar.tab")), StandardCharsets.US_ASCII));
+        assertEquals(FILE_CONTENT, items.get(0).getString());
+        Files.delete(destinations.resolve("foo.tab"));
+        Files.delete(destinations.resolve("bar.tab"));
+        final var result = upload.parseUploadResult(new Context(newBody()));
+        final var field = result.getParameterMap().get("field").get(0);
+        assertTrue(Files.exists(field.getPath()));
+        result.close();
+        assertFalse(Files.exists(field.getPath()));
+        assertTrue(Files.exists(destinations.resolve("foo.tab")));
+        assertTrue(Files.exists(destinations.resolve("bar.tab")));
+        // Only the fields "csrf", and "field" have been freed.
+        assertEquals(5 + 5, result.getFreedBytes().get().longValue());
+    }
+
+    @Test
+    void testDrain() throws IOException {
+        final var body = newBody();
+        try (var parameters = newUpload().parseLazyParameterMap(new Context(body))) {
+            assertTrue(parameters.containsKey("csrf"));
+            parameters.drain();
+            assertTrue(parameters.isComplete());
+            assertEquals(0, body.available());
+            assertEquals(1, parameters.getItems().size());
+            assertFalse(parameters.containsKey("file"));
+            assertEquals(1, parameters.size());
+        }
+        assertFalse(body.closed);
+    }
+
+    @Test
+    void testGet() throws IOException {
+        final List<DiskFileItem> items;
+        try (var parameters = newUpload().parseLazyParameterMap(new Context(newBody()))) {
+            final var files = parameters.get("file");
+            assertEquals(1, files.size());
+            assertEquals(FILE_CONTENT, files.get(0).getString());
+            assertEquals(2, parameters.getItems().size());
+            assertThrows(UnsupportedOperationException.class, () -> files.remove(0));
+            assertEquals("value", parameters.get("field").get(0).getString());
+            // The list grows, as more parts are parsed.
+            assertNull(parameters.get("missing"));
+            assertTrue(parameters.isComplete());
+            assertEquals(2, files.size());
+            assertEquals("bar", files.get(1).getString());
+            assertEquals(Arrays.asList("csrf", "file", "field"), Arrays.asList(parameters.keySet().toArray()));
+            items = parameters.getItems();
+            assertEquals(4, items.size());
+            assertTrue(Files.exists(items.get(1).getPath()));
+        }
+        assertFalse(Files.exists(items.get(1).getPath()));
+    }
+
+    @Test
+    void testMalformedRequest() throws IOException {
+        final var bytes = "-----1234\r\nContent-Disposition: form-data; name=\"csrf\"\r\n\r\ntoken".getBytes(StandardCharsets.US_ASCII);
+        try (var parameters = newUpload().parseLazyParameterMap(new Context(new Body(bytes)))) {
+            final var e = assertThrows(UncheckedIOException.class, () -> parameters.get("csrf"));
+            assertTrue(e.getCause() instanceof FileUploadException);
+            assertTrue(parameters.isComplete());
+        }
+    }
+}
@@ -20,6 +20,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
@@ -82,4 +85,38 @@ public final class MimeUtilityTestCase {
     void testNoNeedToDecode() throws Exception {
         assertEncoded("abc", "abc");
     }
+
+    @Test
+    void testDecodeBase64LikeJdk() throws Exception {
+        final var random = new Random(0);
+        for (var length = 0; length < 64; length++) {
+            final var bytes = new byte[length];
+            random.nextBytes(bytes);
+            final var expected = new String(bytes, StandardCharsets.ISO_8859_1);
+            final var encoded = Base64.getEncoder().encodeToString(bytes);
+            assertEncoded(expected, "=?ISO-8859-1?B?" + encoded + "?=");
+            assertEncoded(expected, "=?ISO-8859-1?B?" + encoded.replace("=", "") + "?=");
+        }
+        // Invalid padding, and data after the padding.
+        assertThrows(UnsupportedEncodingException.class, () -> MimeUtils.decodeText("=?UTF-8?B?QQ=?="));
+        assertThrows(UnsupportedEncodingException.class, () -> MimeUtils.decodeText("=?UTF-8?B?QQ==QQ==?="));
+        assertEquals(new String(Base64.getMimeDecoder().decode("QU*JD"), StandardCharsets.ISO_8859_1), MimeUtils.decodeText("=?ISO-8859-1?B?QU*JD?="));
+    }
+
+    @Test
+    void testDecodeLegacyCharsetNames() throws Exception {
+        assertEncoded("\u00e9t\u00e9", "=?utf8?Q?=C3=A9t=C3=A9?=");
+        assertEncoded("\u00e9t\u00e9", "=?UTF8?Q?=C3=A9t=C3=A9?=");
+        assertEncoded("\ud55c\uae00", "=?euc-kr?B?x9Gx2w==?=");
+        assertEncoded("\u00a3", "=?us-ascii?Q?=A3?=");
+        assertEquals(StandardCharsets.UTF_8, MimeUtils.toCharset("utf8"));
+        assertEquals(MimeUtils.toCharset("UTF-8"), MimeUtils.toCharset("utf-8"));
+        assertThrows(UnsupportedEncodingException.class, () -> MimeUtils.toCharset("no-such-charset"));
+    }
+
+    @Test
+    void testDecodeMultipleWords() throws Exception {
+        assertEncoded("caf\u00e9 cr\u00e8me.txt", "=?UTF-8?Q?caf=C3=A9_?= =?utf-8?Q?cr=C3=A8me?= =?UTF-8?B?LnR4dA==?=");
+        assertEncoded("a b =?UTF-8?Q?c", "a =?UTF-8?Q?b?= =?UTF-8?Q?c");
+    }
 }
@@ -18,6 +18,8 @@ package org.apache.commons.fileupload2.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -173,6 +175,31 @@ class MockRequestContextTest {
         assertFalse(request.isMultipartRelated());
     }
 
+    /**
+     * Test if the {@code content-type} is parsed once, and provides the type, subtype, boundary, and charset.
+     */
+    @Test
+    void testParsedContentType() {
+        final RequestContext request = new MockRequestContext(
+                x -> "1234",
+                () -> 5678L,
+                "Request",
+                "US-ASCII",
+                " Multipart/Form-Data, boundary=AbC",
+                null);
+        final var contentType = request.getParsedContentType();
+        assertSame(contentType, request.getParsedContentType());
+        assertEquals("multipart", contentType.getType());
+        assertEquals("form-data", contentType.getSubtype());
+        assertTrue(contentType.isMultipart());
+        assertEquals("AbC", contentType.getBoundary());
+        assertTrue(AbstractFileUpload.isMultipartContent(request));
+        assertFalse(request.isMultipartRelated());
+        assertEquals("UTF-8", ContentType.parse("text/plain; charset=UTF-8").getCharsetName());
+        assertFalse(ContentType.parse("multipart").isMultipart());
+        assertNull(new MockRequestContext(x -> "1234", () -> 5678L, "Request", "US-ASCII", null, null).getParsedContentType());
+    }
+
     /**
      * Test the {@code toString()} Output
      */
@@ -17,7 +17,10 @@
 package org.apache.commons.fileupload2.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.charset.StandardCharsets;
 
@@ -131,6 +134,30 @@ class ParameterParserTest {
         assertEquals("real.exe", params.get("filename"));
     }
 
+    @Test
+    void testParseParameters() {
+        final var s = "xx form-data; Name=\"field\"; filename=\"a.txt\"; FILENAME*=UTF-8''%c3%a9.txt; filename*=UTF-8''%zz; flag; xx";
+        final var parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        final var params = parser.parseParameters(new StringBuilder(s), 3, s.length() - 4, ';');
+        assertEquals(6, params.size());
+        assertEquals("form-data", params.getName(0));
+        assertNull(params.getValue(0));
+        assertEquals("name", params.getName(1));
+        assertEquals("field", params.get("name"));
+        assertNull(params.get("Name"));
+        // The last valid value wins: The malformed filename* is ignored.
+        assertEquals("filename", params.getName(3));
+        assertEquals("\u00e9.txt", params.get("filename"));
+        assertNull(params.getValue(4));
+        assertTrue(params.containsKey("flag"));
+        assertNull(params.get("flag"));
+        assertFalse(params.containsKey("xx"));
+        assertEquals(parser.parse(s.substring(3, s.length() - 4), ';'), params.toMap());
+        assertThrows(IndexOutOfBoundsException.class, () -> params.getName(6));
+        assertTrue(parser.parseParameters(null, ';').isEmpty());
+    }
+
     @Test
     void testParsing() {
         var s = "test; test1 =  stuff   ; test2 =  \"stuff; stuff\"; test3=\"stuff";
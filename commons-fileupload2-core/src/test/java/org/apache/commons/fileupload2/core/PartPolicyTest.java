@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link PartPolicy}.
+ */
+class PartPolicyTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/PartPolicyTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static byte[] newRequest(final String avatar, final String video, final String text) {
+        // @formatter:off
+        return ("-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"avatar\"; filename=\"avatar.png\"\r\n"
+            + "Content-Type: image/png\r\n"
+            + "\r\n"
+            + avatar + "\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"video\"; filename=\"video.webm\"\r\n"
+            + "Content-Type: video/webm\r\n"
+            + "\r\n"
+            + video + "\r\n"
+            + "-----1234\r\n"
+            + "Content-Disposition: form-data; name=\"text\"\r\n"
+            + "\r\n"
+            + text + "\r\n"
+            + "-----1234--\r\n").getBytes(StandardCharsets.US_ASCII);
+        // @formatter:on
+    }
+
+    @Test
+    void testPolicies() throws IOException {
+        final var defaultFactory = DiskFileItemFactory.builder().setPath(Files.createTempDirectory(testDir, "default")).setThreshold(4).get();
+        final var memoryFactory = DiskFileItemFactory.builder().setPath(Files.createTempDirectory(testDir, "memory")).setThreshold(1024).get();
+        final var diskFactory = DiskFileItemFactory.builder().setPath(Files.createTempDirectory(testDir, "disk")).setThreshold(0).get();
+        final var upload = new SimpleFileUpload(defaultFactory);
+        upload.setMaxFileSize(16);
+        upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder().setFieldNames("avatar").setFileItemFactory(memoryFactory).setMaxFileSize(8).get());
+        upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder().setContentTypes("Video/*").setFileItemFactory(diskFactory).setMaxFileSize(64).get());
+        // Shadowed by the first policy.
+        upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder().setContentTypes("image/png").setMaxFileSize(1).get());
+        assertEquals(3, upload.getPartPolicies().size());
+
+        final var video = "0123456789".repeat(5);
+        final var items = upload.parseRequest(newRequest("png", video, "some text"));
+        assertEquals(3, items.size());
+        // The avatar is kept in memory, because of the threshold of its factory.
+        assertTrue(items.get(0).isInMemory());
+        // The video exceeds the default limit, and is written to its own repository.
+        assertEquals(video, items.get(1).getString());
+        assertFalse(items.get(1).isInMemory());
+        assertEquals(diskFactory.getRepository(), items.get(1).getPath().getParent());
+        // The text uses the defaults.
+        assertFalse(items.get(2).isInMemory());
+        assertEquals(defaultFactory.getRepository(), items.get(2).getPath().getParent());
+
+        var e = assertThrows(FileUploadByteCountLimitException.class, () -> upload.parseRequest(newRequest("too large", "video", "text")));
+        assertEquals("avatar", e.getFieldName());
+        assertEquals(8, e.getPermitted());
+        e = assertThrows(FileUploadByteCountLimitException.class, () -> upload.parseRequest(newRequest("png", video + video, "text")));
+        assertEquals("video", e.getFieldName());
+        e = assertThrows(FileUploadByteCountLimitException.class, () -> upload.parseRequest(newRequest("png", "video", "more than 16 bytes")));
+        assertEquals("text", e.getFieldName());
+        assertEquals(16, e.getPermitted());
+    }
+
+    @Test
+    void testMatches() {
+        final var policy = PartPolicy.builder().setFieldNames("text").setContentTypes("text/plain").get();
+        assertTrue(policy.matches("text", null));
+        assertTrue(policy.matches("text", ContentType.parse("TEXT/Plain; charset=UTF-8")));
+        assertFalse(policy.matches("text", ContentType.parse("text/html")));
+        assertFalse(policy.matches(null, null));
+        final var any = PartPolicy.builder().get();
+        assertTrue(any.matches(null, ContentType.parse("application/octet-stream")));
+        assertNull(any.getFileItemFactory());
+        assertEquals(-1, any.getMaxFileSize());
+        assertTrue(any.getFieldNames().isEmpty());
+        final var upload = new SimpleFileUpload(null);
+        upload.addPartPolicy(PartPolicy.<DiskFileItemFactory>builder().setFieldNames("text").get());
+        assertSame(upload.getPartPolicies().get(0), upload.getPartPolicy("text", null));
+        assertNull(upload.getPartPolicy("other", null));
+    }
+}
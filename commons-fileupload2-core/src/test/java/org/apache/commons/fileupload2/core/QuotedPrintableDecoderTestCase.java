@@ -17,13 +17,20 @@
 package org.apache.commons.fileupload2.core;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.Test;
 
@@ -118,4 +125,70 @@ public final class QuotedPrintableDecoderTestCase {
         assertEncoded("=\r\n", "=3d=0d=0a");
     }
 
+    /**
+     * Decodes the given data with {@link QuotedPrintableDecoder#newInputStream(InputStream)}, while the underlying stream returns a single byte per read,
+     * so that every escape sequence is split between reads.
+     */
+    private static byte[] decodeStreaming(final String encoded) throws IOException {
+        final InputStream slow = new FilterInputStream(new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII))) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        try (var in = QuotedPrintableDecoder.newInputStream(slow)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testStreamingDecode() throws Exception {
+        assertArrayEquals("= Hello_there =\r\n".getBytes(StandardCharsets.US_ASCII), decodeStreaming("=3D Hello_there =3D=0D=0A"));
+        assertArrayEquals("If you believe that truth=beauty, then surely mathematics".getBytes(StandardCharsets.US_ASCII),
+                decodeStreaming("If you believe that truth=3Dbeauty, then =\r\nsurely=20=\nmathematics"));
+        assertArrayEquals(new byte[0], decodeStreaming(""));
+        assertThrows(IOException.class, () -> decodeStreaming("abc=1"));
+        assertThrows(IOException.class, () -> decodeStreaming("=\rn"));
+        assertThrows(IOException.class, () -> decodeStreaming("=XD"));
+    }
+
+    @Test
+    void testBulkDecode() throws Exception {
+        final var encoded = "xx=3D Hello_there =3D=0D=0Axx".getBytes(StandardCharsets.US_ASCII);
+        final var expected = "= Hello there =\r\n".getBytes(StandardCharsets.US_ASCII);
+        final var out = new byte[encoded.length + 1];
+        assertEquals(expected.length, QuotedPrintableDecoder.decode(encoded, 2, encoded.length - 4, out, 1));
+        assertArrayEquals(expected, Arrays.copyOfRange(out, 1, 1 + expected.length));
+        for (final var buffer : new ByteBuffer[] {ByteBuffer.allocate(32), ByteBuffer.allocateDirect(32), ByteBuffer.wrap(new byte[40], 4, 32).slice()}) {
+            buffer.put((byte) 'x');
+            assertEquals(expected.length, QuotedPrintableDecoder.decode(encoded, 2, encoded.length - 4, buffer));
+            assertEquals(1 + expected.length, buffer.position());
+            buffer.flip().get();
+            final var actual = new byte[buffer.remaining()];
+            buffer.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+        assertThrows(BufferOverflowException.class, () -> QuotedPrintableDecoder.decode(encoded, 0, encoded.length, new byte[4], 0));
+        assertThrows(BufferOverflowException.class, () -> QuotedPrintableDecoder.decode(encoded, 0, encoded.length, ByteBuffer.allocate(4)));
+        assertThrows(IOException.class, () -> QuotedPrintableDecoder.decode(encoded, 2, 2, new byte[4], 0));
+    }
+
+    @Test
+    void testIncrementalDecode() throws Exception {
+        final var encoded = "truth=3Dbeauty,=\r\nthen=20=\nsurely_=c3=a9".getBytes(StandardCharsets.US_ASCII);
+        final var expected = "truth=beauty,then surely_\u00e9".getBytes(StandardCharsets.UTF_8);
+        // Split the data at every position, so that every escape sequence, and soft line break is split once.
+        for (var split = 0; split <= encoded.length; split++) {
+            final var decoder = new QuotedPrintableDecoder.Decoder();
+            final var out = new byte[encoded.length];
+            var n = decoder.decode(encoded, 0, split, out, 0);
+            n += decoder.decode(encoded, split, encoded.length - split, out, n);
+            decoder.finish();
+            assertArrayEquals(expected, Arrays.copyOf(out, n), "Split at " + split);
+        }
+        final var decoder = new QuotedPrintableDecoder.Decoder();
+        assertEquals(1, decoder.decode("a=4".getBytes(StandardCharsets.US_ASCII), 0, 3, new byte[3], 0));
+        assertThrows(IOException.class, decoder::finish);
+    }
+
 }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.apache.commons.fileupload2.core.SegmentFileStore.Slice;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link SegmentFileStore}.
+ */
+class SegmentFileStoreTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/SegmentFileStoreTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static long countSegments(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] newData(final int size, final int seed) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static ByteArrayOutputStream newBuffer(final byte[] data) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        buffer.write(data, 0, data.length);
+        return buffer;
+    }
+
+    private DiskFileItem newItem(final SegmentFileStore store, final int threshold, final byte[] data) throws IOException {
+        final DiskFileItem item = DiskFileItemFactory.builder().setPath(store.getRepository()).setThreshold(threshold).setSegmentFileStore(store).get()
+                .fileItemBuilder().setFieldName("file").setFileName("file.bin").get();
+        try (OutputStream os = item.getOutputStream()) {
+            os.write(data);
+        }
+        return item;
+    }
+
+    /**
+     * Tests, that a failed append doesn't corrupt the offsets of the following slices.
+     */
+    @Test
+    void testFailedAppend() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "failed");
+        try (SegmentFileStore store = SegmentFileStore.builder().setPath(dir).get()) {
+            final byte[] first = newData(100, 1);
+            final Slice slice1 = store.append(newBuffer(first));
+            // Writes half of the data, and fails then.
+            final ByteArrayOutputStream failing = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void writeTo(final OutputStream out) throws IOException {
+                    out.write(buf, 0, count / 2);
+                    throw new IOException("Disk full");
+                }
+            };
+            failing.write(newData(100, 2));
+            assertThrows(IOException.class, () -> store.append(failing));
+            final byte[] third = newData(100, 3);
+            final Slice slice3 = store.append(newBuffer(third));
+            assertEquals(slice1.getPath(), slice3.getPath());
+            assertEquals(100, slice3.getOffset());
+            assertEquals(200, Files.size(slice3.getPath()));
+            assertArrayEquals(first, slice1.get());
+            assertArrayEquals(third, slice3.get());
+        }
+    }
+
+    /**
+     * Tests, that small items, which exceed the threshold, share a single segment file.
+     */
+    @Test
+    void testItemsShareSegment() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "share");
+        try (SegmentFileStore store = SegmentFileStore.builder().setPath(dir).setPartSizeMax(1024).get()) {
+            final byte[] data1 = newData(100, 1);
+            final byte[] data2 = newData(200, 2);
+            final byte[] data3 = newData(2000, 3);
+            final DiskFileItem item1 = newItem(store, 50, data1);
+            final DiskFileItem item2 = newItem(store, 50, data2);
+            final DiskFileItem item3 = newItem(store, 50, data3);
+            assertFalse(item1.isInMemory());
+            assertNull(item1.getPath());
+            final Slice slice1 = item1.getSlice();
+            final Slice slice2 = item2.getSlice();
+            assertNotNull(slice1);
+            assertNotNull(slice2);
+            assertEquals(slice1.getPath(), slice2.getPath());
+            assertEquals(0, slice1.getOffset());
+            assertEquals(data1.length, slice1.getLength());
+            assertEquals(data1.length, slice2.getOffset());
+            assertEquals(data2.length, item2.getSize());
+            assertArrayEquals(data1, item1.get());
+            assertArrayEquals(data2, item2.get());
+            try (InputStream is = item2.getInputStream()) {
+                assertArrayEquals(data2, is.readAllBytes());
+            }
+            // Exceeding the maximum part size, the third item has a file of its own.
+            assertNull(item3.getSlice());
+            assertNotNull(item3.getPath());
+            assertArrayEquals(data3, item3.get());
+            item3.delete();
+
+            final Path target = dir.resolve("target.bin");
+            item2.write(target);
+            assertArrayEquals(data2, Files.readAllBytes(target));
+            Files.delete(target);
+            item1.delete();
+            assertTrue(Files.exists(slice1.getPath()));
+        }
+        // The store is closed, and all slices have been released.
+        assertEquals(0, countSegments(dir));
+    }
+
+    /**
+     * Tests, that items below the threshold are kept in memory, as usual.
+     */
+    @Test
+    void testInMemory() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "memory");
+        try (SegmentFileStore store = SegmentFileStore.builder().setPath(dir).get()) {
+            final byte[] data = newData(10, 0);
+            final DiskFileItem item = newItem(store, 50, data);
+            assertTrue(item.isInMemory());
+            assertNull(item.getSlice());
+            assertArrayEquals(data, item.get());
+        }
+        assertEquals(0, countSegments(dir));
+    }
+
+    /**
+     * Tests, that segments are rolled over, and deleted, once all of their slices are released.
+     */
+    @Test
+    void testRollover() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "rollover");
+        try (SegmentFileStore store = SegmentFileStore.builder().setPath(dir).setPartSizeMax(1024).setSegmentSizeMax(500).get()) {
+            final DiskFileItem item1 = newItem(store, 1, newData(300, 1));
+            final DiskFileItem item2 = newItem(store, 1, newData(300, 2));
+            final DiskFileItem item3 = newItem(store, 1, newData(300, 3));
+            final Slice slice1 = item1.getSlice();
+            assertEquals(slice1.getPath(), item2.getSlice().getPath());
+            assertFalse(slice1.getPath().equals(item3.getSlice().getPath()));
+            assertEquals(2, countSegments(dir));
+            item1.delete();
+            assertTrue(Files.exists(slice1.getPath()));
+            item2.delete();
+            assertFalse(Files.exists(slice1.getPath()));
+            assertEquals(1, countSegments(dir));
+            item3.delete();
+            // The current segment remains, until the store is closed.
+            assertEquals(1, countSegments(dir));
+        }
+        assertEquals(0, countSegments(dir));
+    }
+
+    /**
+     * Tests, that items are not packed into segment files, which would hold the data unencrypted, if spill encryption is enabled.
+     */
+    @Test
+    void testSpillEncryption() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "encrypted");
+        try (SegmentFileStore store = SegmentFileStore.builder().setPath(dir).setPartSizeMax(1024).get()) {
+            final byte[] data = newData(300, 0);
+            // @formatter:off
+            final DiskFileItem item = DiskFileItemFactory.builder()
+                    .setPath(dir)
+                    .setThreshold(100)
+                    .setSegmentFileStore(store)
+                    .setSpillEncryption(true)
+                    .get()
+                    .fileItemBuilder().setFieldName("file").setFileName("file.bin").get();
+            // @formatter:on
+            try (OutputStream os = item.getOutputStream()) {
+                os.write(data);
+            }
+            assertNull(item.getSlice());
+            assertFalse(item.isInMemory());
+            assertFalse(Arrays.equals(data, Files.readAllBytes(item.getPath())));
+            assertArrayEquals(data, item.get());
+            assertEquals(1, countSegments(dir));
+            item.delete();
+        }
+        assertEquals(0, countSegments(dir));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal {@link AbstractFileUpload}, which parses byte arrays with the content type {@link Constants#CONTENT_TYPE}.
+ */
+final class SimpleFileUpload extends AbstractFileUpload<byte[], DiskFileItem, DiskFileItemFactory> {
+
+    /**
+     * A request context for a byte array.
+     */
+    static final class Context extends AbstractRequestContext<byte[]> {
+
+        Context(final byte[] content) {
+            super(x -> null, () -> -1L, content);
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return null;
+        }
+
+        @Override
+        public String getContentType() {
+            return Constants.CONTENT_TYPE;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(getRequest());
+        }
+    }
+
+    SimpleFileUpload(final DiskFileItemFactory fileItemFactory) {
+        setFileItemFactory(fileItemFactory);
+    }
+
+    @Override
+    public FileItemInputIterator getItemIterator(final byte[] request) throws FileUploadException, IOException {
+        return getItemIterator(new Context(request));
+    }
+
+    @Override
+    public Map<String, List<DiskFileItem>> parseParameterMap(final byte[] request) throws FileUploadException {
+        return parseParameterMap(new Context(request));
+    }
+
+    @Override
+    public List<DiskFileItem> parseRequest(final byte[] request) throws FileUploadException {
+        return parseRequest(new Context(request));
+    }
+}
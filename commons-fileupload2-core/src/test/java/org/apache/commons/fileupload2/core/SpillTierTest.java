@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link SpillTier}.
+ */
+class SpillTierTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/SpillTierTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static byte[] newData(final int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private DiskFileItem newItem(final Path repository, final SpillTier... spillTiers) {
+        return DiskFileItemFactory.builder().setPath(repository).setThreshold(10).setSpillTiers(spillTiers).get()
+                .fileItemBuilder().setFieldName("file").setFileName("file.bin").get();
+    }
+
+    /**
+     * Tests, that a part is promoted to the next tier, and finally to the repository, while it grows.
+     */
+    @Test
+    void testPromotion() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "promotion");
+        final Path repository = dir.resolve("disk");
+        final SpillTier shm = SpillTier.builder().setPath(dir.resolve("shm")).setPartSizeMax(100).get();
+        final SpillTier ssd = SpillTier.builder().setPath(dir.resolve("ssd")).setPartSizeMax(1000).get();
+        final byte[] data = newData(2000);
+        final DiskFileItem item = newItem(repository, shm, ssd);
+        try (OutputStream os = item.getOutputStream()) {
+            final DeferrableOutputStream dos = (DeferrableOutputStream) os;
+            os.write(data, 0, 50);
+            assertSame(shm, dos.getSpillTier());
+            assertEquals(50, shm.getUsed());
+            os.write(data, 50, 450);
+            assertSame(ssd, dos.getSpillTier());
+            assertEquals(0, shm.getUsed());
+            assertEquals(500, ssd.getUsed());
+            assertTrue(item.getPath().startsWith(ssd.getPath()));
+            os.write(data, 500, 1500);
+            assertNull(dos.getSpillTier());
+            assertEquals(0, ssd.getUsed());
+            assertTrue(item.getPath().startsWith(repository));
+        }
+        assertArrayEquals(data, item.get());
+        item.delete();
+        assertFalse(Files.exists(item.getPath()));
+    }
+
+    /**
+     * Tests, that a tier is skipped, if its capacity is exhausted, and that deleting an item releases its capacity.
+     */
+    @Test
+    void testCapacity() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "capacity");
+        final Path repository = dir.resolve("disk");
+        final SpillTier shm = SpillTier.builder().setPath(dir.resolve("shm")).setCapacity(150).get();
+        final byte[] data = newData(100);
+        final DiskFileItem item1 = newItem(repository, shm);
+        try (OutputStream os = item1.getOutputStream()) {
+            os.write(data);
+        }
+        assertTrue(item1.getPath().startsWith(shm.getPath()));
+        assertEquals(100, shm.getUsed());
+        final DiskFileItem item2 = newItem(repository, shm);
+        try (OutputStream os = item2.getOutputStream()) {
+            os.write(data);
+        }
+        assertTrue(item2.getPath().startsWith(repository));
+        assertArrayEquals(data, item2.get());
+        item1.delete();
+        assertEquals(0, shm.getUsed());
+        final Path target = dir.resolve("target.bin");
+        final DiskFileItem item3 = newItem(repository, shm);
+        try (OutputStream os = item3.getOutputStream()) {
+            os.write(data);
+        }
+        assertEquals(100, shm.getUsed());
+        item3.write(target);
+        assertEquals(0, shm.getUsed());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        item2.delete();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link UploadCommit}.
+ */
+class UploadCommitTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/UploadCommitTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static long countFiles(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private DiskFileItem newItem(final Path repository, final String content) throws IOException {
+        final DiskFileItem item = DiskFileItemFactory.builder().setPath(repository).setThreshold(5).get().fileItemBuilder().get();
+        try (OutputStream os = item.getOutputStream()) {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return item;
+    }
+
+    @Test
+    void testCommit() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "commit");
+        final Path repository = dir.resolve("repository");
+        final Path uploads = Files.createDirectories(dir.resolve("uploads"));
+        final Path target1 = uploads.resolve("file1.txt");
+        final Path target2 = uploads.resolve("file2.txt");
+        Files.write(target2, "old".getBytes(StandardCharsets.UTF_8));
+        new UploadCommit().add(newItem(repository, "abc"), target1).add(newItem(repository, "0123456789"), target2).commit();
+        assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(target1));
+        assertArrayEquals("0123456789".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(target2));
+        // No staging, or backup files remain.
+        assertEquals(2, countFiles(uploads));
+        assertEquals(0, countFiles(repository));
+    }
+
+    @Test
+    void testDuplicateTarget() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "duplicate");
+        final UploadCommit commit = new UploadCommit().add(newItem(dir, "abc"), dir.resolve("file.txt"));
+        assertThrows(IllegalArgumentException.class, () -> commit.add(newItem(dir, "def"), dir.resolve("file.txt")));
+    }
+
+    @Test
+    void testRollback() throws IOException {
+        final Path dir = Files.createTempDirectory(testDir, "rollback");
+        final Path repository = dir.resolve("repository");
+        final Path uploads = Files.createDirectories(dir.resolve("uploads"));
+        final Path target1 = uploads.resolve("file1.txt");
+        Files.write(target1, "old".getBytes(StandardCharsets.UTF_8));
+        final DiskFileItem item1 = newItem(repository, "0123456789");
+        final DiskFileItem item2 = newItem(repository, "9876543210");
+        // The parent directory of the second target doesn't exist, so staging fails.
+        final UploadCommit commit = new UploadCommit().add(item1, target1).add(item2, dir.resolve("missing").resolve("file2.txt"));
+        assertThrows(FileUploadException.class, commit::commit);
+        assertArrayEquals("old".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(target1));
+        assertEquals(1, countFiles(uploads));
+        assertFalse(Files.exists(item2.getPath()));
+        assertEquals(0, countFiles(repository));
+        assertThrows(IllegalStateException.class, commit::commit);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.fileupload2.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link UploadResult}.
+ */
+class UploadResultTest {
+
+    private static final Path testDir = Paths.get("target/unit-tests/UploadResultTest");
+
+    @BeforeAll
+    static void setUpTestDir() throws IOException {
+        Files.createDirectories(testDir);
+    }
+
+    private static List<DiskFileItem> newItems() throws IOException {
+        final var factory = DiskFileItemFactory.builder().setPath(Files.createTempDirectory(testDir, "items")).setThreshold(4).get();
+        final List<DiskFileItem> items = new ArrayList<>();
+        for (final String[] field : new String[][] { { "file", "first file" }, { "field", "abc" }, { "file", "second file" } }) {
+            final var item = factory.fileItemBuilder().setFieldName(field[0]).setFormField("field".equals(field[0])).get();
+            try (var os = item.getOutputStream()) {
+                os.write(field[1].getBytes(StandardCharsets.US_ASCII));
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Test
+    void testClose() throws IOException, InterruptedException, ExecutionException {
+        final var items = newItems();
+        final var first = items.get(0).getPath();
+        assertTrue(Files.exists(first));
+        final var result = new UploadResult<>(items, null);
+        assertEquals(items, result);
+        assertEquals(Arrays.asList("file", "field"), new ArrayList<>(result.getParameterMap().keySet()));
+        assertEquals(Arrays.asList(items.get(0), items.get(2)), result.getParameterMap().get("file"));
+        assertThrows(UnsupportedOperationException.class, () -> result.add(items.get(0)));
+        assertThrows(UnsupportedOperationException.class, () -> result.getParameterMap().get("file").clear());
+        assertFalse(result.isClosed());
+        assertFalse(result.getFreedBytes().isDone());
+        result.close();
+        assertTrue(result.isClosed());
+        assertFalse(Files.exists(first));
+        assertEquals(10 + 3 + 11, result.getFreedBytes().get().longValue());
+        // Closing again does nothing.
+        result.close();
+    }
+
+    @Test
+    void testCloseAsync() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final var executor = Executors.newSingleThreadExecutor();
+        try {
+            final var items = newItems();
+            final var result = new UploadResult<>(items, executor);
+            result.close();
+            assertEquals(24, result.getFreedBytes().get(10, TimeUnit.SECONDS).longValue());
+            assertFalse(Files.exists(items.get(2).getPath()));
+        } finally {
+            executor.shutdown();
+        }
+        // A rejecting executor falls back to deleting the items on the closing thread.
+        final var items = newItems();
+        final var result = new UploadResult<>(items, executor);
+        result.close();
+        assertEquals(24, result.getFreedBytes().get().longValue());
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.commons.fileupload2.jakarta.servlet6;
 
+import org.apache.commons.fileupload2.core.BatchingFileCleaningTracker;
 import org.apache.commons.io.FileCleaningTracker;
 
 import jakarta.servlet.ServletContext;
@@ -60,7 +61,8 @@ public class JakartaFileCleaner implements ServletContextListener {
     }
 
     /**
-     * Called when the web application is being destroyed. Calls {@link FileCleaningTracker#exitWhenFinished()}.
+     * Called when the web application is being destroyed. Calls {@link FileCleaningTracker#exitWhenFinished()}, which deletes the files, that are queued for
+     * deletion, and lets the trackers thread terminate, once the remaining tracked files have been deleted.
      *
      * @param sce The servlet context, used for calling {@link #getFileCleaningTracker(ServletContext)}.
      */
@@ -70,12 +72,13 @@ public class JakartaFileCleaner implements ServletContextListener {
     }
 
     /**
-     * Called when the web application is initialized. Does nothing.
+     * Called when the web application is initialized. Installs a {@link BatchingFileCleaningTracker}, which deletes the temporary files in batches,
+     * asynchronously.
      *
      * @param sce The servlet context, used for calling {@link #setFileCleaningTracker(ServletContext, FileCleaningTracker)}.
      */
     @Override
     public void contextInitialized(final ServletContextEvent sce) {
-        setFileCleaningTracker(sce.getServletContext(), new FileCleaningTracker());
+        setFileCleaningTracker(sce.getServletContext(), new BatchingFileCleaningTracker());
     }
 }
@@ -20,6 +20,7 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.apache.commons.fileupload2.core.BatchingFileCleaningTracker;
 import org.apache.commons.io.FileCleaningTracker;
 
 /**
@@ -60,7 +61,8 @@ public class JavaxFileCleaner implements ServletContextListener {
     }
 
     /**
-     * Called when the web application is being destroyed. Calls {@link FileCleaningTracker#exitWhenFinished()}.
+     * Called when the web application is being destroyed. Calls {@link FileCleaningTracker#exitWhenFinished()}, which deletes the files, that are queued for
+     * deletion, and lets the trackers thread terminate, once the remaining tracked files have been deleted.
      *
      * @param sce The servlet context, used for calling {@link #getFileCleaningTracker(ServletContext)}.
      */
@@ -70,13 +72,14 @@ public class JavaxFileCleaner implements ServletContextListener {
     }
 
     /**
-     * Called when the web application is initialized. Does nothing.
+     * Called when the web application is initialized. Installs a {@link BatchingFileCleaningTracker}, which deletes the temporary files in batches,
+     * asynchronously.
      *
      * @param sce The servlet context, used for calling {@link #setFileCleaningTracker(ServletContext, FileCleaningTracker)}.
      */
     @Override
     public void contextInitialized(final ServletContextEvent sce) {
-        setFileCleaningTracker(sce.getServletContext(), new FileCleaningTracker());
+        setFileCleaningTracker(sce.getServletContext(), new BatchingFileCleaningTracker());
     }
 
 }
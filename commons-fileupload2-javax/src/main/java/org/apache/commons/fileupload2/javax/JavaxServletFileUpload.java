@@ -27,6 +27,8 @@ import org.apache.commons.fileupload2.core.FileItem;
 import org.apache.commons.fileupload2.core.FileItemFactory;
 import org.apache.commons.fileupload2.core.FileItemInputIterator;
 import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.LazyParameterMap;
+import org.apache.commons.fileupload2.core.UploadResult;
 
 /**
  * High level API for processing file uploads.
@@ -87,6 +89,20 @@ public class JavaxServletFileUpload<I extends FileItem<I>, F extends FileItemFac
         return super.getItemIterator(new JavaxServletRequestContext(request));
     }
 
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into a {@link LazyParameterMap},
+     * which parses only as far, as necessary for answering a query, and deletes all items, when it is closed.
+     *
+     * @param request The servlet request to be parsed.
+     * @return A map of {@code FileItem} instances, which are parsed from the request on demand.
+     * @throws FileUploadException if there are problems reading/parsing the request.
+     * @throws IOException         An I/O error occurred.
+     * @since 2.0.0
+     */
+    public LazyParameterMap<I> parseLazyParameterMap(final HttpServletRequest request) throws IOException {
+        return parseLazyParameterMap(new JavaxServletRequestContext(request));
+    }
+
     /**
      * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream.
      *
@@ -111,4 +127,17 @@ public class JavaxServletFileUpload<I extends FileItem<I>, F extends FileItemFac
         return parseRequest(new JavaxServletRequestContext(request));
     }
 
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into an {@link UploadResult},
+     * which deletes all items, when it is closed.
+     *
+     * @param request The servlet request to be parsed.
+     * @return The items parsed from the request, in the order that they were transmitted.
+     * @throws FileUploadException if there are problems reading/parsing the request or storing files.
+     * @since 2.0.0
+     */
+    public UploadResult<I> parseUploadResult(final HttpServletRequest request) throws FileUploadException {
+        return parseUploadResult(new JavaxServletRequestContext(request));
+    }
+
 }
@@ -28,6 +28,8 @@ import org.apache.commons.fileupload2.core.FileItem;
 import org.apache.commons.fileupload2.core.FileItemFactory;
 import org.apache.commons.fileupload2.core.FileItemInputIterator;
 import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.core.LazyParameterMap;
+import org.apache.commons.fileupload2.core.UploadResult;
 import org.apache.commons.fileupload2.javax.JavaxServletFileUpload;
 
 /**
@@ -89,6 +91,20 @@ public class JavaxPortletFileUpload<I extends FileItem<I>, F extends FileItemFac
         return super.getItemIterator(new JavaxPortletRequestContext(request));
     }
 
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into a {@link LazyParameterMap},
+     * which parses only as far, as necessary for answering a query, and deletes all items, when it is closed.
+     *
+     * @param request The portlet request to be parsed.
+     * @return A map of {@code FileItem} instances, which are parsed from the request on demand.
+     * @throws FileUploadException if there are problems reading/parsing the request.
+     * @throws IOException         An I/O error occurred.
+     * @since 2.0.0
+     */
+    public LazyParameterMap<I> parseLazyParameterMap(final ActionRequest request) throws IOException {
+        return parseLazyParameterMap(new JavaxPortletRequestContext(request));
+    }
+
     /**
      * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream.
      *
@@ -112,4 +128,17 @@ public class JavaxPortletFileUpload<I extends FileItem<I>, F extends FileItemFac
     public List<I> parseRequest(final ActionRequest request) throws FileUploadException {
         return parseRequest(new JavaxPortletRequestContext(request));
     }
+
+    /**
+     * Parses an <a href="https://www.ietf.org/rfc/rfc1867.txt">RFC 1867</a> compliant {@code multipart/form-data} stream into an {@link UploadResult},
+     * which deletes all items, when it is closed.
+     *
+     * @param request The portlet request to be parsed.
+     * @return The items parsed from the request, in the order that they were transmitted.
+     * @throws FileUploadException if there are problems reading/parsing the request or storing files.
+     * @since 2.0.0
+     */
+    public UploadResult<I> parseUploadResult(final ActionRequest request) throws FileUploadException {
+        return parseUploadResult(new JavaxPortletRequestContext(request));
+    }
 }